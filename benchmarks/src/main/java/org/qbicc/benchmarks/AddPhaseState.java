@@ -0,0 +1,52 @@
+package org.qbicc.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.qbicc.driver.Phase;
+import org.qbicc.type.definition.MethodBody;
+import org.qbicc.type.definition.element.MethodElement;
+
+/**
+ * A compilation of the sample program paused at the end of the {@code ADD} phase, shared by the benchmarks of a trial.
+ * The compiler's {@code ADD} basic block builder chain is still installed, so method bodies are built the same way
+ * as when they were first reached.
+ */
+@State(Scope.Benchmark)
+public class AddPhaseState {
+    private PausedCompilation compilation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        compilation = PausedCompilation.start(Phase.ADD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        compilation.close();
+    }
+
+    /**
+     * Find a method which was reached by the compilation.
+     *
+     * @param method the method, given as the internal class name and the method name separated by {@code #}
+     * @return the method element (not {@code null})
+     */
+    public MethodElement findMethod(String method) {
+        return compilation.findMethod(method);
+    }
+
+    /**
+     * Build a new body for the given method, without caching it on the element.
+     *
+     * @param element the method element (must not be {@code null})
+     * @return the new method body (not {@code null})
+     */
+    public static MethodBody parseMethodBody(MethodElement element) {
+        return PausedCompilation.parseMethodBody(element);
+    }
+}
@@ -0,0 +1,55 @@
+package org.qbicc.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.qbicc.context.ClassContext;
+import org.qbicc.type.definition.DefinedTypeDefinition;
+import org.qbicc.type.definition.classfile.ClassFile;
+
+/**
+ * Parse a class file and build its defined type, without defining it in the class context.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ClassParsingBenchmark {
+    @Param({
+        "java/lang/String",
+        "java/util/HashMap",
+        "java/util/concurrent/ConcurrentHashMap",
+        "java/lang/invoke/MethodHandles$Lookup",
+    })
+    public String className;
+
+    private ByteBuffer classBytes;
+
+    @Setup
+    public void setUp(CompilerState state) throws IOException {
+        classBytes = state.readClass(className);
+    }
+
+    @Benchmark
+    public DefinedTypeDefinition parse(CompilerState state) {
+        ClassContext classContext = state.getClassContext();
+        ClassFile classFile = ClassFile.of(classContext, classBytes.duplicate());
+        DefinedTypeDefinition.Builder builder = classContext.newTypeBuilder();
+        classFile.accept(builder);
+        return builder.build();
+    }
+}
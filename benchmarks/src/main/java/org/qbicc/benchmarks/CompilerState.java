@@ -0,0 +1,177 @@
+package org.qbicc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.qbicc.context.ClassContext;
+import org.qbicc.context.CompilationContext;
+import org.qbicc.context.Diagnostic;
+import org.qbicc.driver.BaseDiagnosticContext;
+import org.qbicc.driver.Driver;
+import org.qbicc.machine.arch.Platform;
+import org.qbicc.machine.object.ObjectFileProvider;
+import org.qbicc.machine.tool.CToolChain;
+import org.qbicc.tool.llvm.LlvmToolChain;
+import org.qbicc.type.TypeSystem;
+
+/**
+ * A bare compilation context over the real class library, shared by the class parsing benchmarks of a trial.  No
+ * hooks or builder factories are registered, because parsing a class file does not need them.
+ * <p>
+ * The boot module path is given by the {@code qbicc.benchmarks.boot-module-path} system property as a list of paths
+ * separated by the platform path separator.  If it is not given, the class library and runtime artifacts in the local
+ * Maven repository are used.
+ */
+@State(Scope.Benchmark)
+public class CompilerState {
+    private static final String BOOT_MODULE_PATH_PROPERTY = "qbicc.benchmarks.boot-module-path";
+    private static final String VERSIONS_RESOURCE = "benchmarks.properties";
+
+    private List<Path> bootModulePath;
+    private Path outputDirectory;
+    private Driver driver;
+    private CompilationContext compilationContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Platform platform = Platform.HOST_PLATFORM;
+        ClassLoader classLoader = CompilerState.class.getClassLoader();
+        BaseDiagnosticContext initialContext = new BaseDiagnosticContext();
+        Driver.Builder builder = Driver.builder();
+        builder.setInitialContext(initialContext);
+        builder.setTargetPlatform(platform);
+        bootModulePath = getBootModulePath();
+        builder.addBootClassPathElements(bootModulePath);
+        outputDirectory = Files.createTempDirectory("qbicc-benchmarks");
+        builder.setOutputDirectory(outputDirectory);
+        builder.setObjectFileProvider(ObjectFileProvider.findProvider(platform.getObjectType(), classLoader)
+            .orElseThrow(() -> new IllegalStateException("No object file provider found for " + platform.getObjectType())));
+        Iterator<CToolChain> toolChains = CToolChain.findAllCToolChains(platform, t -> true, classLoader).iterator();
+        if (! toolChains.hasNext()) {
+            throw new IllegalStateException("No working C compiler found");
+        }
+        builder.setToolChain(toolChains.next());
+        Iterator<LlvmToolChain> llvmToolChains = LlvmToolChain.findAllLlvmToolChains(platform, t -> true, classLoader).iterator();
+        if (! llvmToolChains.hasNext()) {
+            throw new IllegalStateException("No working LLVM tool chain found");
+        }
+        builder.setLlvmToolChain(llvmToolChains.next());
+        builder.setTypeSystem(TypeSystem.builder().build());
+        // the interpreter is not needed to parse classes and methods
+        builder.setVmFactory(cc -> null);
+        driver = builder.build();
+        if (initialContext.errors() > 0) {
+            StringBuilder b = new StringBuilder("Failed to set up the compilation context:");
+            for (Diagnostic diagnostic : initialContext.getDiagnostics()) {
+                b.append(System.lineSeparator()).append(diagnostic);
+            }
+            throw new IllegalStateException(b.toString());
+        }
+        compilationContext = driver.getCompilationContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        driver.close();
+        deleteDirectory(outputDirectory);
+    }
+
+    /**
+     * Delete a directory and everything in it.
+     *
+     * @param directory the directory (must not be {@code null})
+     * @throws IOException if the directory could not be deleted
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    public CompilationContext getCompilationContext() {
+        return compilationContext;
+    }
+
+    public ClassContext getClassContext() {
+        return compilationContext.getBootstrapClassContext();
+    }
+
+    /**
+     * Read the bytes of a class from the boot module path.
+     *
+     * @param internalName the internal name of the class (must not be {@code null})
+     * @return the class bytes (not {@code null})
+     * @throws IOException if the class could not be read
+     */
+    public ByteBuffer readClass(String internalName) throws IOException {
+        String fileName = internalName + ".class";
+        for (Path path : bootModulePath) {
+            if (Files.isDirectory(path)) {
+                Path classPath = path.resolve(fileName);
+                if (Files.exists(classPath)) {
+                    return ByteBuffer.wrap(Files.readAllBytes(classPath));
+                }
+            } else {
+                try (JarFile jarFile = new JarFile(path.toFile())) {
+                    JarEntry entry = jarFile.getJarEntry(fileName);
+                    if (entry != null) {
+                        return ByteBuffer.wrap(jarFile.getInputStream(entry).readAllBytes());
+                    }
+                }
+            }
+        }
+        throw new IOException("Class " + internalName + " was not found on the boot module path");
+    }
+
+    static List<Path> getBootModulePath() {
+        String property = System.getProperty(BOOT_MODULE_PATH_PROPERTY);
+        List<Path> paths = new ArrayList<>();
+        if (property != null && ! property.isBlank()) {
+            for (String item : property.split(File.pathSeparator)) {
+                paths.add(Path.of(item));
+            }
+            return paths;
+        }
+        Properties versions = new Properties();
+        try (InputStream is = CompilerState.class.getResourceAsStream(VERSIONS_RESOURCE)) {
+            if (is == null) {
+                throw new IllegalStateException("Resource " + VERSIONS_RESOURCE + " was not found");
+            }
+            versions.load(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String qbiccVersion = versions.getProperty("qbicc.version");
+        String classLibraryVersion = versions.getProperty("qbicc.class-library.version");
+        Path repository = Path.of(System.getProperty("user.home"), ".m2", "repository", "org", "qbicc");
+        paths.add(repository.resolve(Path.of("rt", "qbicc-rt-java.base", classLibraryVersion, "qbicc-rt-java.base-" + classLibraryVersion + ".jar")));
+        for (String artifact : List.of("qbicc-runtime-api", "qbicc-runtime-main", "qbicc-runtime-unwind", "qbicc-runtime-posix", "qbicc-runtime-linux", "qbicc-runtime-gc-nogc")) {
+            paths.add(repository.resolve(Path.of(artifact, qbiccVersion, artifact + "-" + qbiccVersion + ".jar")));
+        }
+        return paths;
+    }
+}
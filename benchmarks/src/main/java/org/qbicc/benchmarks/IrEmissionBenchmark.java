@@ -0,0 +1,56 @@
+package org.qbicc.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.qbicc.benchmarks.sample.SampleProgram;
+import org.qbicc.context.CompilationContext;
+import org.qbicc.driver.Phase;
+import org.qbicc.plugin.llvm.LLVMGenerator;
+
+/**
+ * Generate the LLVM modules of a lowered program.  The {@linkplain SampleProgram sample program} is compiled once per
+ * trial and paused at the end of the {@code GENERATE} phase, before its modules are compiled and linked, and each
+ * operation generates and writes the LLVM module of every one of its program modules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IrEmissionBenchmark {
+    private PausedCompilation compilation;
+    private CompilationContext compilationContext;
+    private LLVMGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        compilation = PausedCompilation.start(Phase.GENERATE);
+        compilationContext = compilation.getCompilationContext();
+        generator = new LLVMGenerator(0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        compilation.close();
+    }
+
+    @Benchmark
+    public void generate() {
+        // the module paths are recorded again each time, but the paused compilation never compiles or links them
+        generator.accept(compilationContext);
+    }
+}
@@ -0,0 +1,49 @@
+package org.qbicc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.qbicc.type.definition.MethodBody;
+import org.qbicc.type.definition.element.MethodElement;
+
+/**
+ * Parse the bytecode of a method into a graph through the compiler's {@code ADD} basic block builder chain.  The
+ * methods are reached by the sample program, so that the chain sees them as it does during a real compilation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MethodParsingBenchmark {
+    @Param({
+        "java/util/HashMap#putVal",
+        "java/util/concurrent/ConcurrentHashMap#putVal",
+        "java/lang/Integer#parseInt",
+        "java/util/ArrayList#removeIf",
+    })
+    public String method;
+
+    private MethodElement element;
+
+    @Setup
+    public void setUp(AddPhaseState state) {
+        element = state.findMethod(method);
+    }
+
+    @Benchmark
+    public MethodBody parse() {
+        return AddPhaseState.parseMethodBody(element);
+    }
+}
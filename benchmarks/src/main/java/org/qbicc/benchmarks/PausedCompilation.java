@@ -0,0 +1,213 @@
+package org.qbicc.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.qbicc.benchmarks.sample.SampleProgram;
+import org.qbicc.context.CompilationContext;
+import org.qbicc.context.Diagnostic;
+import org.qbicc.context.DiagnosticContext;
+import org.qbicc.driver.Phase;
+import org.qbicc.main.Main;
+import org.qbicc.type.definition.DefinedTypeDefinition;
+import org.qbicc.type.definition.LoadedTypeDefinition;
+import org.qbicc.type.definition.MethodBody;
+import org.qbicc.type.definition.element.MethodElement;
+
+/**
+ * A compilation of the {@linkplain SampleProgram sample program} which is paused after a phase, so that benchmarks can
+ * use its compilation context in the state that the compiler's own hooks see.  The compilation runs on its own thread
+ * through the usual {@link Main} builder, and is paused by the {@link PausingDriverPlugin} until it is closed; the
+ * remaining phases are then skipped.
+ */
+final class PausedCompilation implements Closeable {
+    private final Phase phase;
+    private final Path applicationDirectory;
+    private final Path outputDirectory;
+    private final CompletableFuture<CompilationContext> paused = new CompletableFuture<>();
+    private final CountDownLatch resumed = new CountDownLatch(1);
+    private final Thread thread;
+
+    private PausedCompilation(Phase phase, Path applicationDirectory, Path outputDirectory) {
+        this.phase = phase;
+        this.applicationDirectory = applicationDirectory;
+        this.outputDirectory = outputDirectory;
+        thread = new Thread(this::run, "qbicc-benchmarks-compilation");
+    }
+
+    /**
+     * Compile the sample program up to the end of the given phase.
+     *
+     * @param phase the phase after which the compilation is paused (must not be {@code null})
+     * @return the paused compilation (not {@code null})
+     * @throws IOException if the sample program could not be set up
+     */
+    static PausedCompilation start(Phase phase) throws IOException {
+        Path applicationDirectory = Files.createTempDirectory("qbicc-benchmarks-app");
+        Path outputDirectory = Files.createTempDirectory("qbicc-benchmarks-output");
+        // the sample program and its nested classes
+        for (Class<?> clazz : SampleProgram.class.getNestMembers()) {
+            String classFile = clazz.getName().replace('.', '/') + ".class";
+            Path classPath = applicationDirectory.resolve(classFile);
+            Files.createDirectories(classPath.getParent());
+            try (InputStream is = PausedCompilation.class.getClassLoader().getResourceAsStream(classFile)) {
+                if (is == null) {
+                    throw new IOException("Class file " + classFile + " was not found");
+                }
+                Files.copy(is, classPath);
+            }
+        }
+        PausedCompilation pausedCompilation = new PausedCompilation(phase, applicationDirectory, outputDirectory);
+        pausedCompilation.thread.start();
+        try {
+            pausedCompilation.getCompilationContext();
+        } catch (RuntimeException e) {
+            pausedCompilation.close();
+            throw e;
+        }
+        return pausedCompilation;
+    }
+
+    Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Get the compilation context, waiting for the compilation to reach the pause if needed.
+     *
+     * @return the compilation context (not {@code null})
+     */
+    CompilationContext getCompilationContext() {
+        boolean intr = false;
+        try {
+            for (;;) try {
+                return paused.get();
+            } catch (InterruptedException e) {
+                intr = true;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Find a method of the sample program, or of the class library, which was reached by the compilation.
+     *
+     * @param method the method, given as the internal class name and the method name separated by {@code #}
+     * @return the method element (not {@code null})
+     */
+    MethodElement findMethod(String method) {
+        CompilationContext compilationContext = getCompilationContext();
+        int idx = method.indexOf('#');
+        String className = method.substring(0, idx);
+        String methodName = method.substring(idx + 1);
+        DefinedTypeDefinition definedType = compilationContext.getBootstrapClassContext().findDefinedType(className);
+        if (definedType == null) {
+            throw new IllegalArgumentException("Class " + className + " was not found");
+        }
+        LoadedTypeDefinition loadedType = definedType.load();
+        int methodIdx = loadedType.findMethodIndex(m -> m.getName().equals(methodName) && m.hasMethodBodyFactory() && compilationContext.wasEnqueued(m));
+        if (methodIdx == -1) {
+            throw new IllegalArgumentException("Method " + method + " was not found or was not reached from the sample program");
+        }
+        return loadedType.getMethod(methodIdx);
+    }
+
+    /**
+     * Build a new body for the given method through the current basic block builder chain, without caching it on
+     * the element.  The method must have been reached by the compilation, so that building its body again does not
+     * reach anything new.
+     *
+     * @param element the method element (must not be {@code null})
+     * @return the new method body (not {@code null})
+     */
+    static MethodBody parseMethodBody(MethodElement element) {
+        return element.getMethodBodyFactory().createMethodBody(element.getMethodBodyFactoryIndex(), element);
+    }
+
+    /**
+     * Resume and finish the compilation, skipping the remaining phases, and delete its files.
+     *
+     * @throws IOException if the files could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        resumed.countDown();
+        boolean intr = false;
+        try {
+            for (;;) try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                intr = true;
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        CompilerState.deleteDirectory(outputDirectory);
+        CompilerState.deleteDirectory(applicationDirectory);
+    }
+
+    void pause(CompilationContext compilationContext) {
+        paused.complete(compilationContext);
+        boolean intr = false;
+        try {
+            for (;;) try {
+                resumed.await();
+                break;
+            } catch (InterruptedException e) {
+                intr = true;
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // stop the driver from running the remaining hooks and phases
+        compilationContext.error("Compilation stopped after the %s phase by the benchmark", phase);
+    }
+
+    private void run() {
+        List<Path> bootModulePath = new ArrayList<>(CompilerState.getBootModulePath());
+        bootModulePath.add(applicationDirectory);
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        PausingDriverPlugin.setCurrent(this);
+        try {
+            DiagnosticContext diagnosticContext = Main.builder()
+                .addBootModulePaths(bootModulePath)
+                .setOutputPath(outputDirectory)
+                .setMainClass(SampleProgram.class.getName())
+                .setDiagnosticsHandler(items -> items.forEach(diagnostics::add))
+                .build()
+                .call();
+            if (! paused.isDone()) {
+                StringBuilder b = new StringBuilder("Failed to compile the sample program up to the end of the " + phase + " phase");
+                if (diagnosticContext.errors() > 0) {
+                    b.append(':');
+                    for (Diagnostic diagnostic : diagnostics) {
+                        b.append(System.lineSeparator()).append(diagnostic);
+                    }
+                }
+                paused.completeExceptionally(new IllegalStateException(b.toString()));
+            }
+        } catch (Throwable t) {
+            paused.completeExceptionally(t);
+        } finally {
+            PausingDriverPlugin.setCurrent(null);
+        }
+    }
+}
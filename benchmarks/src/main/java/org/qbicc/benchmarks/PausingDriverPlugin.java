@@ -0,0 +1,33 @@
+package org.qbicc.benchmarks;
+
+import org.qbicc.driver.Driver;
+import org.qbicc.driver.Phase;
+import org.qbicc.driver.plugin.DriverPlugin;
+
+/**
+ * A driver plugin which pauses a compilation started by {@link PausedCompilation}.  The pause is a post-hook of the
+ * requested phase; since plugins are loaded before the compiler's own hooks are added, it runs ahead of the other
+ * post-hooks of that phase.  Compilations which are not started by {@link PausedCompilation} are not affected.
+ */
+public final class PausingDriverPlugin implements DriverPlugin {
+    private static final ThreadLocal<PausedCompilation> CURRENT = new ThreadLocal<>();
+
+    public PausingDriverPlugin() {}
+
+    static void setCurrent(PausedCompilation pausedCompilation) {
+        if (pausedCompilation == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(pausedCompilation);
+        }
+    }
+
+    @Override
+    public void accept(Driver.Builder driverBuilder) {
+        PausedCompilation pausedCompilation = CURRENT.get();
+        if (pausedCompilation != null) {
+            Phase phase = pausedCompilation.getPhase();
+            driverBuilder.addPostHook(phase, pausedCompilation::pause);
+        }
+    }
+}
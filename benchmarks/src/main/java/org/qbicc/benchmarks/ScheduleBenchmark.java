@@ -0,0 +1,48 @@
+package org.qbicc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.qbicc.graph.BasicBlock;
+import org.qbicc.graph.schedule.Schedule;
+
+/**
+ * Schedule the graph of a method parsed through the compiler's {@code ADD} basic block builder chain.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScheduleBenchmark {
+    @Param({
+        "java/util/HashMap#putVal",
+        "java/util/concurrent/ConcurrentHashMap#putVal",
+        "java/lang/Integer#parseInt",
+        "java/util/ArrayList#removeIf",
+    })
+    public String method;
+
+    private BasicBlock entryBlock;
+
+    @Setup
+    public void setUp(AddPhaseState state) {
+        entryBlock = AddPhaseState.parseMethodBody(state.findMethod(method)).getEntryBlock();
+    }
+
+    @Benchmark
+    public Schedule schedule() {
+        return Schedule.forMethod(entryBlock);
+    }
+}
@@ -0,0 +1,52 @@
+package org.qbicc.benchmarks.sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A small program which is compiled by the compiler benchmarks.  It counts the words of a text and prints the most
+ * frequent ones, so that it exercises collections, strings, and the console.  The methods that the benchmarks parse
+ * must be reached from here.
+ */
+public final class SampleProgram {
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog and the dog sleeps while the fox runs";
+
+    private SampleProgram() {}
+
+    public static void main(String[] args) {
+        int minimum = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Integer> lengths = new ConcurrentHashMap<>();
+        for (String word : TEXT.split(" ")) {
+            Integer count = counts.get(word);
+            counts.put(word, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+            lengths.put(word, Integer.valueOf(word.length()));
+        }
+        ArrayList<String> words = new ArrayList<>(counts.keySet());
+        words.removeIf(new Rare(counts, minimum));
+        Collections.sort(words);
+        StringBuilder b = new StringBuilder();
+        for (String word : words) {
+            b.append(word).append(" (").append(lengths.get(word).intValue()).append("): ").append(counts.get(word).intValue()).append('\n');
+        }
+        System.out.print(b);
+    }
+
+    static final class Rare implements Predicate<String> {
+        private final Map<String, Integer> counts;
+        private final int minimum;
+
+        Rare(Map<String, Integer> counts, int minimum) {
+            this.counts = counts;
+            this.minimum = minimum;
+        }
+
+        public boolean test(String word) {
+            return counts.get(word).intValue() < minimum;
+        }
+    }
+}
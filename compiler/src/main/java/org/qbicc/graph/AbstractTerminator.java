@@ -16,8 +16,11 @@ abstract class AbstractTerminator extends AbstractNode implements Terminator {
     @Override
     public Value getOutboundValue(PhiValue phi) {
         Value value = outboundValues.get(phi);
+        if (value != null) {
+            return value;
+        }
         LiteralFactory lf = getElement().getEnclosingType().getContext().getLiteralFactory();
-        return value != null ? value : lf.undefinedLiteralOfType(phi.getType());
+        return lf.undefinedLiteralOfType(phi.getType());
     }
 
     @Override
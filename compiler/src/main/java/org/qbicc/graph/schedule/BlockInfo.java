@@ -12,6 +12,8 @@ final class BlockInfo {
     final int index;
     int dominator;
     int domDepth = -1;
+    // the number of natural loops which contain this block
+    int loopDepth;
 
     // dominator finder fields
     final BitSet pred = new BitSet();
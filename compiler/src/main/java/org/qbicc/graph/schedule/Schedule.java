@@ -1,6 +1,8 @@
 package org.qbicc.graph.schedule;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -48,9 +50,6 @@ public interface Schedule {
      * @return a schedule for the entry block of the method
      */
     static Schedule forMethod(BasicBlock entryBlock) {
-        // Simplified algorithm which simply finds *any* valid schedule.
-        // todo: Find an optimized schedule.
-
         int[] indexHolder = new int[] { 2 };
         Map<BasicBlock, BlockInfo> blockInfos = new HashMap<>();
         // 1. First, assign numeric indices for each block
@@ -68,10 +67,14 @@ public interface Schedule {
         for (BlockInfo block : allBlocks) {
             block.findDomDepths(allBlocks);
         }
+        // 4. Find the loop nesting depth of each block.
+        findLoopDepths(allBlocks);
 
-        // now, use the dominator depths to calculate the simplest possible schedule.
+        // 5. Use the dominator depths to find the earliest block of each node.
         Map<Node, BlockInfo> scheduledNodes = new LinkedHashMap<>();
         scheduleEarly(root, blockInfos, scheduledNodes, entryBlock);
+        // 6. Move each floating node to the block between its earliest and latest block with the shallowest loop nesting.
+        scheduleLate(allBlocks, scheduledNodes);
         Map<Node, BasicBlock> finalMapping = new HashMap<>(scheduledNodes.size());
         Map<BasicBlock, List<Node>> blockToNodesMap = new HashMap<>(allBlocks.length);
         for (Map.Entry<Node, BlockInfo> entry : scheduledNodes.entrySet()) {
@@ -93,6 +96,59 @@ public interface Schedule {
         };
     }
 
+    /**
+     * Compute the loop nesting depth of each block from the natural loops of the method.  An edge is a back edge if its
+     * target dominates its source, and the body of the loop with that header consists of the header and every block
+     * which reaches the source of one of its back edges without passing through the header.  Back edges with the same
+     * header form a single loop.  Cycles without a dominating header (irreducible loops) are not counted.
+     *
+     * @param allBlocks the block information, by zero-based index
+     */
+    private static void findLoopDepths(BlockInfo[] allBlocks) {
+        ArrayDeque<BlockInfo> work = new ArrayDeque<>();
+        BitSet body = new BitSet(allBlocks.length);
+        for (BlockInfo header : allBlocks) {
+            body.clear();
+            // the header is a member, and the search for members stops there
+            body.set(header.index - 1);
+            boolean loop = false;
+            BitSet pred = header.pred;
+            for (int i = pred.nextSetBit(0); i != -1; i = pred.nextSetBit(i + 1)) {
+                BlockInfo source = allBlocks[i];
+                if (dominates(allBlocks, header, source)) {
+                    loop = true;
+                    if (! body.get(i)) {
+                        body.set(i);
+                        work.add(source);
+                    }
+                }
+            }
+            if (! loop) {
+                continue;
+            }
+            BlockInfo member;
+            while ((member = work.poll()) != null) {
+                BitSet memberPred = member.pred;
+                for (int i = memberPred.nextSetBit(0); i != -1; i = memberPred.nextSetBit(i + 1)) {
+                    if (! body.get(i)) {
+                        body.set(i);
+                        work.add(allBlocks[i]);
+                    }
+                }
+            }
+            for (int i = body.nextSetBit(0); i != -1; i = body.nextSetBit(i + 1)) {
+                allBlocks[i].loopDepth ++;
+            }
+        }
+    }
+
+    private static boolean dominates(BlockInfo[] allBlocks, BlockInfo a, BlockInfo b) {
+        while (b.domDepth > a.domDepth) {
+            b = allBlocks[b.dominator - 1];
+        }
+        return a == b;
+    }
+
     private static void scheduleEarly(BlockInfo root, Map<BasicBlock, BlockInfo> blockInfos, Map<Node, BlockInfo> scheduledNodes, BasicBlock block) {
         Terminator terminator = block.getTerminator();
         if (! scheduledNodes.containsKey(terminator)) {
@@ -161,6 +217,100 @@ public interface Schedule {
         }
     }
 
+    /**
+     * Move every floating node from its earliest block to the block with the shallowest loop nesting on the
+     * dominator tree path between its earliest block and the latest block which dominates all of its uses.  Of blocks
+     * with equal loop nesting, the latest is chosen.  This takes loop-invariant values out of loops, and sinks values
+     * which are only used on some paths into the branches which use them.
+     * <p>
+     * Pinned and ordered nodes are not moved.
+     *
+     * @param allBlocks the block information, by zero-based index
+     * @param scheduledNodes the early schedule, which is updated in place
+     */
+    private static void scheduleLate(BlockInfo[] allBlocks, Map<Node, BlockInfo> scheduledNodes) {
+        Map<Node, List<Node>> users = new HashMap<>(scheduledNodes.size());
+        for (Node node : scheduledNodes.keySet()) {
+            addUses(scheduledNodes, users, node, node);
+            if (node instanceof Terminator) {
+                // phi inputs are used at the end of the incoming block
+                for (Value value : ((Terminator) node).getOutboundValues().values()) {
+                    addUse(scheduledNodes, users, node, value);
+                }
+            }
+        }
+        Node[] nodes = scheduledNodes.keySet().toArray(Node[]::new);
+        // a floating node is always scheduled after its dependencies, so in reverse order its users are placed before it
+        for (int i = nodes.length - 1; i >= 0; i --) {
+            Node node = nodes[i];
+            if (node instanceof PinnedNode || node instanceof OrderedNode) {
+                continue;
+            }
+            List<Node> nodeUsers = users.get(node);
+            if (nodeUsers == null) {
+                continue;
+            }
+            BlockInfo late = null;
+            for (Node user : nodeUsers) {
+                BlockInfo userBlock = scheduledNodes.get(user);
+                late = late == null ? userBlock : findCommonDominator(allBlocks, late, userBlock);
+            }
+            scheduledNodes.put(node, selectBlock(allBlocks, scheduledNodes.get(node), late));
+        }
+    }
+
+    private static void addUses(Map<Node, BlockInfo> scheduledNodes, Map<Node, List<Node>> users, Node user, Node node) {
+        if (node.hasValueHandleDependency()) {
+            addUse(scheduledNodes, users, user, node.getValueHandle());
+        }
+        int cnt = node.getValueDependencyCount();
+        for (int i = 0; i < cnt; i ++) {
+            addUse(scheduledNodes, users, user, node.getValueDependency(i));
+        }
+        if (node instanceof OrderedNode) {
+            addUse(scheduledNodes, users, user, ((OrderedNode) node).getDependency());
+        }
+    }
+
+    private static void addUse(Map<Node, BlockInfo> scheduledNodes, Map<Node, List<Node>> users, Node user, Node dependency) {
+        if (scheduledNodes.containsKey(dependency)) {
+            users.computeIfAbsent(dependency, k -> new ArrayList<>()).add(user);
+        } else if (dependency instanceof Unschedulable) {
+            // unscheduled nodes are materialized at each use, so their dependencies are used there too
+            addUses(scheduledNodes, users, user, dependency);
+        }
+    }
+
+    private static BlockInfo findCommonDominator(BlockInfo[] allBlocks, BlockInfo a, BlockInfo b) {
+        while (a.domDepth > b.domDepth) {
+            a = allBlocks[a.dominator - 1];
+        }
+        while (b.domDepth > a.domDepth) {
+            b = allBlocks[b.dominator - 1];
+        }
+        while (a != b) {
+            a = allBlocks[a.dominator - 1];
+            b = allBlocks[b.dominator - 1];
+        }
+        return a;
+    }
+
+    private static BlockInfo selectBlock(BlockInfo[] allBlocks, BlockInfo early, BlockInfo late) {
+        BlockInfo selected = late;
+        int selectedDepth = late.loopDepth;
+        BlockInfo current = late;
+        while (current.domDepth > early.domDepth) {
+            current = allBlocks[current.dominator - 1];
+            int depth = current.loopDepth;
+            if (depth < selectedDepth) {
+                selected = current;
+                selectedDepth = depth;
+            }
+        }
+        // the earliest block should always dominate the uses; if it does not, keep the early schedule
+        return current == early ? selected : early;
+    }
+
     private static BlockInfo scheduleToPinnedBlock(final BlockInfo root, final Map<BasicBlock, BlockInfo> blockInfos, final Map<Node, BlockInfo> scheduledNodes, final Node node, final BasicBlock pinnedBlock) {
         BlockInfo selected = blockInfos.get(pinnedBlock);
         if (selected == null) {
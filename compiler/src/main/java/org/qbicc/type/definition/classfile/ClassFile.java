@@ -1,7 +1,6 @@
 package org.qbicc.type.definition.classfile;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import org.qbicc.context.ClassContext;
 import org.qbicc.type.definition.ClassFileUtil;
@@ -625,8 +624,17 @@ public interface ClassFile extends FieldResolver,
     void accept(DefinedTypeDefinition.Builder builder) throws ClassFormatException;
 
     static ClassFile of(final ClassContext ctxt, ByteBuffer orig) {
-        orig.order(ByteOrder.BIG_ENDIAN);
-        ByteBuffer buffer = orig.duplicate();
-        return new ClassFileImpl(ctxt, buffer);
+        return of(ctxt, ClassFileScan.of(orig));
+    }
+
+    /**
+     * Create a class file from a scan, which may already have been used by another class context.
+     *
+     * @param ctxt the class context (must not be {@code null})
+     * @param scan the class file scan (must not be {@code null})
+     * @return the class file (not {@code null})
+     */
+    static ClassFile of(final ClassContext ctxt, ClassFileScan scan) {
+        return new ClassFileImpl(ctxt, scan);
     }
 }
@@ -3,7 +3,6 @@ package org.qbicc.type.definition.classfile;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.List;
 
@@ -23,7 +22,6 @@ import org.qbicc.type.ValueType;
 import org.qbicc.type.annotation.Annotation;
 import org.qbicc.type.annotation.type.TypeAnnotationList;
 import org.qbicc.type.definition.ClassFileUtil;
-import org.qbicc.type.definition.DefineFailedException;
 import org.qbicc.type.definition.DefinedTypeDefinition;
 import org.qbicc.type.definition.EnclosedClassResolver;
 import org.qbicc.type.definition.EnclosingClassResolver;
@@ -84,137 +82,19 @@ final class ClassFileImpl extends AbstractBufferBacked implements ClassFile, Enc
     private final ClassContext ctxt;
     private final String sourceFile;
 
-    ClassFileImpl(final ClassContext ctxt, final ByteBuffer buffer) {
-        super(buffer);
+    ClassFileImpl(final ClassContext ctxt, final ClassFileScan scan) {
+        super(scan.buffer.duplicate());
         this.ctxt = ctxt;
         literalFactory = ctxt.getLiteralFactory();
-        // scan the file to build up offset tables
-        ByteBuffer scanBuf = buffer.duplicate();
-        // do some basic pieces of verification
-        if (scanBuf.order() != ByteOrder.BIG_ENDIAN) {
-            throw new DefineFailedException("Wrong byte buffer order");
-        }
-        int magic = scanBuf.getInt();
-        if (magic != 0xcafebabe) {
-            throw new DefineFailedException("Bad magic number");
-        }
-        int minor = scanBuf.getShort() & 0xffff;
-        int major = scanBuf.getShort() & 0xffff;
-        // todo fix up
-        if (major < 45 || major == 45 && minor < 3 || major > 55 || major == 55 && minor > 0) {
-            throw new DefineFailedException("Unsupported class version " + major + "." + minor);
-        }
-        int cpCount = (scanBuf.getShort() & 0xffff);
-        // one extra slot because the constant pool is one-based, so just leave a hole at the beginning
-        int[] cpOffsets = new int[cpCount];
-        for (int i = 1; i < cpCount; i ++) {
-            cpOffsets[i] = scanBuf.position();
-            int tag = scanBuf.get() & 0xff;
-            switch (tag) {
-                case ClassFile.CONSTANT_Utf8: {
-                    int size = scanBuf.getShort() & 0xffff;
-                    scanBuf.position(scanBuf.position() + size);
-                    break;
-                }
-                case ClassFile.CONSTANT_Integer:
-                case ClassFile.CONSTANT_Float:
-                case ClassFile.CONSTANT_Fieldref:
-                case ClassFile.CONSTANT_Methodref:
-                case ClassFile.CONSTANT_InterfaceMethodref:
-                case ClassFile.CONSTANT_NameAndType:
-                case ClassFile.CONSTANT_Dynamic:
-                case ClassFile.CONSTANT_InvokeDynamic: {
-                    scanBuf.position(scanBuf.position() + 4);
-                    break;
-                }
-                case ClassFile.CONSTANT_Class:
-                case ClassFile.CONSTANT_String:
-                case ClassFile.CONSTANT_MethodType:
-                case ClassFile.CONSTANT_Module:
-                case ClassFile.CONSTANT_Package: {
-                    scanBuf.position(scanBuf.position() + 2);
-                    break;
-                }
-                case ClassFile.CONSTANT_Long:
-                case ClassFile.CONSTANT_Double: {
-                    scanBuf.position(scanBuf.position() + 8);
-                    i++; // two slots
-                    break;
-                }
-                case ClassFile.CONSTANT_MethodHandle: {
-                    scanBuf.position(scanBuf.position() + 3);
-                    break;
-                }
-                default: {
-                    throw new DefineFailedException("Unknown constant pool tag " + Integer.toHexString(tag) + " at index " + i);
-                }
-            }
-        }
-        StringBuilder b = new StringBuilder(64);
-        int access = scanBuf.getShort() & 0xffff;
-        int thisClassIdx = scanBuf.getShort() & 0xffff;
-        int superClassIdx = scanBuf.getShort() & 0xffff;
-        int interfacesCount = scanBuf.getShort() & 0xffff;
-        int interfacesOffset = scanBuf.position();
-        for (int i = 0; i < interfacesCount; i ++) {
-            scanBuf.getShort();
-        }
-        int fieldsCnt = scanBuf.getShort() & 0xffff;
-        int[] fieldOffsets = new int[fieldsCnt];
-        int[][] fieldAttributeOffsets = new int[fieldsCnt][];
-        for (int i = 0; i < fieldsCnt; i ++) {
-            fieldOffsets[i] = scanBuf.position();
-            int fieldAccess = scanBuf.getShort() & 0xffff;
-            scanBuf.getShort(); // name index
-            scanBuf.getShort(); // descriptor index
-            // skip attributes
-            int attrCnt = scanBuf.getShort() & 0xffff;
-            fieldAttributeOffsets[i] = new int[attrCnt];
-            for (int j = 0; j < attrCnt; j ++) {
-                fieldAttributeOffsets[i][j] = scanBuf.position();
-                scanBuf.getShort(); // name index
-                int size = scanBuf.getInt();
-                scanBuf.position(scanBuf.position() + size);
-            }
-        }
-        int methodsCnt = scanBuf.getShort() & 0xffff;
-        int[] methodOffsets = new int[methodsCnt];
-        int[][] methodAttributeOffsets = new int[methodsCnt][];
-        for (int i = 0; i < methodsCnt; i ++) {
-            methodOffsets[i] = scanBuf.position();
-            int methodAccess = scanBuf.getShort() & 0xffff;
-            scanBuf.getShort(); // name index
-            scanBuf.getShort(); // descriptor index
-            // skip attributes - except for code (for now)
-            int attrCnt = scanBuf.getShort() & 0xffff;
-            methodAttributeOffsets[i] = new int[attrCnt];
-            for (int j = 0; j < attrCnt; j ++) {
-                methodAttributeOffsets[i][j] = scanBuf.position();
-                scanBuf.getShort(); // name index
-                int size = scanBuf.getInt();
-                scanBuf.position(scanBuf.position() + size);
-            }
-        }
-        int attrCnt = scanBuf.getShort() & 0xffff;
-        int[] attributeOffsets = new int[attrCnt];
-        for (int i = 0; i < attrCnt; i ++) {
-            attributeOffsets[i] = scanBuf.position();
-            scanBuf.getShort(); // name index
-            int size = scanBuf.getInt();
-            scanBuf.position(scanBuf.position() + size);
-        }
-        if (scanBuf.hasRemaining()) {
-            throw new DefineFailedException("Extra data at end of class file");
-        }
-
-        this.interfacesOffset = interfacesOffset;
-        this.fieldOffsets = fieldOffsets;
-        this.fieldAttributeOffsets = fieldAttributeOffsets;
-        this.methodOffsets = methodOffsets;
-        this.methodAttributeOffsets = methodAttributeOffsets;
-        this.attributeOffsets = attributeOffsets;
-        this.cpOffsets = cpOffsets;
-        strings = new String[cpOffsets.length];
+        interfacesOffset = scan.interfacesOffset;
+        fieldOffsets = scan.fieldOffsets;
+        fieldAttributeOffsets = scan.fieldAttributeOffsets;
+        methodOffsets = scan.methodOffsets;
+        methodAttributeOffsets = scan.methodAttributeOffsets;
+        attributeOffsets = scan.attributeOffsets;
+        cpOffsets = scan.cpOffsets;
+        // the decoded strings do not depend on the class context, so they are shared with other class files of the scan
+        strings = scan.strings;
         literals = new Literal[cpOffsets.length];
         descriptors = new Descriptor[cpOffsets.length];
         // read globally-relevant attributes
@@ -45,6 +45,13 @@ public interface ExecutableElement extends MemberElement {
 
     void replaceMethodBody(MethodBody replacement);
 
+    /**
+     * Release the body which was replaced by the current body, so that it (and its schedule) can be collected once
+     * it is no longer needed.  After this method is called, {@link #getPreviousMethodBody()} returns {@code null}
+     * until the body is replaced again.
+     */
+    void releasePreviousMethodBody();
+
     FunctionType getType();
 
     MethodDescriptor getDescriptor();
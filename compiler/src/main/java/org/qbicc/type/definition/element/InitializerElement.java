@@ -83,6 +83,10 @@ public final class InitializerElement extends BasicElement implements Executable
         this.methodBody = replacement;
     }
 
+    public void releasePreviousMethodBody() {
+        previousMethodBody = null;
+    }
+
     public FunctionType getType() {
         ClassContext classContext = getEnclosingType().getContext();
         TypeSystem ts = classContext.getTypeSystem();
@@ -134,6 +134,10 @@ public abstract class InvokableElement extends AnnotatedElement implements Execu
         this.methodBody = replacement;
     }
 
+    public void releasePreviousMethodBody() {
+        previousMethodBody = null;
+    }
+
     public MethodDescriptor getDescriptor() {
         return descriptor;
     }
@@ -0,0 +1,164 @@
+package org.qbicc.graph.schedule;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.qbicc.graph.BasicBlock;
+import org.qbicc.graph.BasicBlockBuilder;
+import org.qbicc.graph.BlockLabel;
+import org.qbicc.graph.ParameterValue;
+import org.qbicc.graph.PhiValue;
+import org.qbicc.graph.Value;
+import org.qbicc.graph.literal.LiteralFactory;
+import org.qbicc.type.SignedIntegerType;
+import org.qbicc.type.TypeSystem;
+
+/**
+ * Tests for the placement of floating nodes by {@link Schedule#forMethod(BasicBlock)}.
+ */
+public class ScheduleTests {
+
+    private LiteralFactory lf;
+    private SignedIntegerType s32;
+    private BasicBlockBuilder bbb;
+    private ParameterValue p;
+    private ParameterValue q;
+
+    @BeforeEach
+    public void setUp() {
+        TypeSystem ts = TypeSystem.builder().build();
+        lf = LiteralFactory.create(ts);
+        s32 = ts.getSignedInteger32Type();
+        bbb = BasicBlockBuilder.simpleBuilder(ts, null);
+        bbb.setFirstBuilder(bbb);
+        p = bbb.parameter(s32, "p", 0);
+        q = bbb.parameter(s32, "q", 1);
+        bbb.startMethod(List.of(p, q));
+    }
+
+    @Test
+    public void testHoistOutOfLoop() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel header = new BlockLabel();
+        BlockLabel body = new BlockLabel();
+        BlockLabel exit = new BlockLabel();
+        bbb.begin(entry);
+        BasicBlock entryBlock = bbb.goto_(header);
+        bbb.begin(header);
+        PhiValue i = bbb.phi(s32, header);
+        bbb.if_(bbb.isLt(i, p), body, exit);
+        bbb.begin(body);
+        // loop invariant, but only used in the loop
+        Value invariant = bbb.multiply(p, q);
+        Value next = bbb.add(i, invariant);
+        BasicBlock bodyBlock = bbb.goto_(header);
+        bbb.begin(exit);
+        bbb.return_(i);
+        i.setValueForBlock(null, null, entryBlock, lf.literalOf(s32, 0));
+        i.setValueForBlock(null, null, bodyBlock, next);
+        bbb.finish();
+
+        Schedule schedule = Schedule.forMethod(entryBlock);
+        assertSame(entryBlock, schedule.getBlockForNode(invariant));
+        assertSame(bodyBlock, schedule.getBlockForNode(next));
+    }
+
+    @Test
+    public void testHoistOutOfBranchInLoop() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel header = new BlockLabel();
+        BlockLabel body = new BlockLabel();
+        BlockLabel arm1 = new BlockLabel();
+        BlockLabel arm2 = new BlockLabel();
+        BlockLabel join = new BlockLabel();
+        BlockLabel exit = new BlockLabel();
+        bbb.begin(entry);
+        BasicBlock entryBlock = bbb.goto_(header);
+        bbb.begin(header);
+        PhiValue i = bbb.phi(s32, header);
+        bbb.if_(bbb.isLt(i, p), body, exit);
+        bbb.begin(body);
+        bbb.if_(bbb.isLt(i, q), arm1, arm2);
+        // each arm is only reachable through the loop, and each uses a different loop invariant value
+        bbb.begin(arm1);
+        Value invariant1 = bbb.multiply(p, q);
+        Value next1 = bbb.add(i, invariant1);
+        BasicBlock arm1Block = bbb.goto_(join);
+        bbb.begin(arm2);
+        Value invariant2 = bbb.sub(p, q);
+        Value next2 = bbb.add(i, invariant2);
+        BasicBlock arm2Block = bbb.goto_(join);
+        bbb.begin(join);
+        PhiValue next = bbb.phi(s32, join);
+        BasicBlock joinBlock = bbb.goto_(header);
+        bbb.begin(exit);
+        bbb.return_(i);
+        next.setValueForBlock(null, null, arm1Block, next1);
+        next.setValueForBlock(null, null, arm2Block, next2);
+        i.setValueForBlock(null, null, entryBlock, lf.literalOf(s32, 0));
+        i.setValueForBlock(null, null, joinBlock, next);
+        bbb.finish();
+
+        Schedule schedule = Schedule.forMethod(entryBlock);
+        assertSame(entryBlock, schedule.getBlockForNode(invariant1));
+        assertSame(entryBlock, schedule.getBlockForNode(invariant2));
+        assertSame(arm1Block, schedule.getBlockForNode(next1));
+        assertSame(arm2Block, schedule.getBlockForNode(next2));
+    }
+
+    @Test
+    public void testSinkIntoBranch() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel used = new BlockLabel();
+        BlockLabel unused = new BlockLabel();
+        bbb.begin(entry);
+        Value value = bbb.multiply(p, q);
+        BasicBlock entryBlock = bbb.if_(bbb.isLt(p, q), used, unused);
+        bbb.begin(used);
+        BasicBlock usedBlock = bbb.return_(value);
+        bbb.begin(unused);
+        bbb.return_(p);
+        bbb.finish();
+
+        Schedule schedule = Schedule.forMethod(entryBlock);
+        assertSame(usedBlock, schedule.getBlockForNode(value));
+    }
+
+    @Test
+    public void testSinkIntoBranchInLoop() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel header = new BlockLabel();
+        BlockLabel body = new BlockLabel();
+        BlockLabel used = new BlockLabel();
+        BlockLabel join = new BlockLabel();
+        BlockLabel exit = new BlockLabel();
+        bbb.begin(entry);
+        BasicBlock entryBlock = bbb.goto_(header);
+        bbb.begin(header);
+        PhiValue i = bbb.phi(s32, header);
+        bbb.if_(bbb.isLt(i, p), body, exit);
+        bbb.begin(body);
+        // varies with each iteration, but is only used on one path through the loop
+        Value value = bbb.multiply(i, q);
+        BasicBlock bodyBlock = bbb.if_(bbb.isLt(i, q), used, join);
+        bbb.begin(used);
+        Value sum = bbb.add(i, value);
+        BasicBlock usedBlock = bbb.goto_(join);
+        bbb.begin(join);
+        PhiValue next = bbb.phi(s32, join);
+        BasicBlock joinBlock = bbb.goto_(header);
+        bbb.begin(exit);
+        bbb.return_(i);
+        next.setValueForBlock(null, null, bodyBlock, i);
+        next.setValueForBlock(null, null, usedBlock, sum);
+        i.setValueForBlock(null, null, entryBlock, lf.literalOf(s32, 0));
+        i.setValueForBlock(null, null, joinBlock, next);
+        bbb.finish();
+
+        Schedule schedule = Schedule.forMethod(entryBlock);
+        assertSame(usedBlock, schedule.getBlockForNode(value));
+    }
+}
@@ -0,0 +1,55 @@
+package org.qbicc.type.definition.classfile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.qbicc.context.ClassContext;
+import org.qbicc.type.definition.DefineFailedException;
+import org.qbicc.type.generic.TestClassContext;
+
+/**
+ * Tests for class files which share a scan.
+ */
+public class ClassFileScanTests {
+
+    static ByteBuffer readOwnClass() throws IOException {
+        String name = ClassFileScanTests.class.getName().replace('.', '/') + ".class";
+        try (InputStream is = ClassFileScanTests.class.getClassLoader().getResourceAsStream(name)) {
+            assertNotNull(is);
+            return ByteBuffer.wrap(is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testSharedScan() throws IOException {
+        ClassFileScan scan = ClassFileScan.of(readOwnClass());
+        ClassContext ctxt1 = new TestClassContext();
+        ClassContext ctxt2 = new TestClassContext();
+        ClassFile classFile1 = ClassFile.of(ctxt1, scan);
+        ClassFile classFile2 = ClassFile.of(ctxt2, scan);
+        assertSame(ctxt1, classFile1.getClassContext());
+        assertSame(ctxt2, classFile2.getClassContext());
+        assertEquals("org/qbicc/type/definition/classfile/ClassFileScanTests", classFile1.getName());
+        assertEquals(classFile1.getName(), classFile2.getName());
+        assertEquals(classFile1.getConstantCount(), classFile2.getConstantCount());
+        assertEquals(classFile1.getMethodCount(), classFile2.getMethodCount());
+        for (int i = 1; i < classFile1.getConstantCount(); i ++) {
+            if (classFile1.getConstantType(i) == ClassFile.CONSTANT_Utf8) {
+                // decoded once for both class files
+                assertSame(classFile1.getUtf8Constant(i), classFile2.getUtf8Constant(i));
+            }
+        }
+        // each class file reads its own view of the bytes
+        assertNotSame(classFile1.getBackingBuffer(), classFile2.getBackingBuffer());
+    }
+
+    @Test
+    public void testBadMagic() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbf, 0, 0, 0, 55 });
+        assertThrows(DefineFailedException.class, () -> ClassFileScan.of(buffer));
+    }
+}
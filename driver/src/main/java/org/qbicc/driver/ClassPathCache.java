@@ -0,0 +1,120 @@
+package org.qbicc.driver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.logging.Logger;
+import org.qbicc.type.definition.classfile.ClassFileScan;
+
+/**
+ * A cache of opened boot class path archives, which allows successive drivers in the same process to share the
+ * mapped and indexed archives rather than reopening them for every compilation.  An archive is reopened if its file
+ * has been modified since it was cached.  Directories are never cached, since their contents may change at any time.
+ * <p>
+ * The {@linkplain ClassFileScan scans} of the class files which are loaded from a cached archive are kept along with
+ * it, so that successive compilations do not read, inflate, and scan the same class files again.
+ * <p>
+ * Drivers which use a cache do not close the cached elements; they are closed when the cache is closed.
+ */
+public final class ClassPathCache implements Closeable {
+    private static final Logger log = Logger.getLogger("org.qbicc.driver.classpath");
+
+    // guarded by this
+    private final Map<Path, Cached> elements = new HashMap<>();
+    // cached element to the scans of its class files, by resource name
+    private final ConcurrentHashMap<ClassPathElement, ConcurrentHashMap<String, ClassFileScan>> classFileScans = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new instance.
+     */
+    public ClassPathCache() {}
+
+    synchronized ClassPathElement get(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        long size = Files.size(key);
+        Cached cached = elements.get(key);
+        if (cached != null) {
+            if (cached.modified.equals(modified) && cached.size == size) {
+                return cached.element;
+            }
+            log.debugf("Reopening modified boot class path element \"%s\"", key);
+            classFileScans.remove(cached.element);
+            closeQuietly(cached.element);
+        }
+        ClassPathElement element = ClassPathElement.open(key);
+        elements.put(key, new Cached(element, modified, size));
+        classFileScans.put(element, new ConcurrentHashMap<>());
+        return element;
+    }
+
+    /**
+     * Get the scan of a class file of the given element, scanning it if it was not scanned before.
+     *
+     * @param element the class path element (must not be {@code null})
+     * @param name the class file resource name (must not be {@code null})
+     * @return the scan, or {@code null} if the element has no such resource
+     * @throws IOException if the resource could not be read
+     */
+    ClassFileScan getClassFileScan(ClassPathElement element, String name) throws IOException {
+        ConcurrentHashMap<String, ClassFileScan> scans = classFileScans.get(element);
+        if (scans == null) {
+            // not owned by this cache
+            return scanClassFile(element, name);
+        }
+        ClassFileScan scan = scans.get(name);
+        if (scan == null) {
+            scan = scanClassFile(element, name);
+            if (scan == null) {
+                return null;
+            }
+            ClassFileScan appearing = scans.putIfAbsent(name, scan);
+            if (appearing != null) {
+                scan = appearing;
+            }
+        }
+        return scan;
+    }
+
+    static ClassFileScan scanClassFile(ClassPathElement element, String name) throws IOException {
+        try (ClassPathElement.Resource resource = element.getResource(name)) {
+            ByteBuffer buffer = resource.getBuffer();
+            return buffer == null ? null : ClassFileScan.of(buffer);
+        }
+    }
+
+    public synchronized void close() {
+        for (Cached cached : elements.values()) {
+            closeQuietly(cached.element);
+        }
+        elements.clear();
+        classFileScans.clear();
+    }
+
+    private static void closeQuietly(ClassPathElement element) {
+        try {
+            element.close();
+        } catch (IOException e) {
+            log.debugf(e, "Failed to close boot class path element \"%s\"", element.getName());
+        }
+    }
+
+    static final class Cached {
+        final ClassPathElement element;
+        final FileTime modified;
+        final long size;
+
+        Cached(final ClassPathElement element, final FileTime modified, final long size) {
+            this.element = element;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
@@ -3,14 +3,42 @@ package org.qbicc.driver;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+import org.jboss.logging.Logger;
 
 abstract class ClassPathElement implements Closeable {
     ClassPathElement() {}
 
+    /**
+     * Open the directory, JAR, or JMOD at the given path.  Archives are mapped if possible.
+     *
+     * @param path the path to open (must not be {@code null})
+     * @return the class path element (not {@code null})
+     * @throws IOException if the path could not be opened
+     */
+    static ClassPathElement open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryClassPathElement(path);
+        }
+        try {
+            return MappedJarClassPathElement.open(path);
+        } catch (IOException e) {
+            Logger.getLogger("org.qbicc.driver").debugf(e, "Failed to map boot class path JAR \"%s\", falling back to JarFile", path);
+            return new JarFileClassPathElement(new JarFile(path.toFile(), true, ZipFile.OPEN_READ));
+        }
+    }
+
     abstract String getName();
 
     abstract Resource getResource(String name) throws IOException;
 
+    abstract void forEachResourceName(Consumer<String> consumer) throws IOException;
+
     static abstract class Resource implements Closeable {
         Resource() {}
 
@@ -2,9 +2,7 @@ package org.qbicc.driver;
 
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -69,7 +67,7 @@ final class CompilationContextImpl implements CompilationContext {
     private final ConcurrentMap<VmClassLoader, ClassContext> classLoaderContexts = new ConcurrentHashMap<>();
     volatile Set<ExecutableElement> allowedSet = null;
     final Set<ExecutableElement> queued = ConcurrentHashMap.newKeySet();
-    final Queue<ExecutableElement> queue = new ArrayDeque<>();
+    final ElementQueue queue = new ElementQueue();
     final Set<ExecutableElement> entryPoints = ConcurrentHashMap.newKeySet();
     final ClassContext bootstrapClassContext;
     private final ConcurrentMap<DefinedTypeDefinition, ProgramModule> programModules = new ConcurrentHashMap<>();
@@ -298,10 +296,7 @@ final class CompilationContextImpl implements CompilationContext {
             throw new IllegalStateException("Cannot reach previously unreachable element: " + element);
         }
         if (queued.add(element)) {
-            synchronized (queue) {
-                queue.add(element);
-                queue.notify();
-            }
+            queue.add(element);
         }
     }
 
@@ -315,9 +310,7 @@ final class CompilationContextImpl implements CompilationContext {
     }
 
     public ExecutableElement dequeue() {
-        synchronized (queue) {
-            return queue.poll();
-        }
+        return queue.poll();
     }
 
     void lockEnqueuedSet() {
@@ -328,6 +321,15 @@ final class CompilationContextImpl implements CompilationContext {
         queued.clear();
     }
 
+    void releasePreviousMethodBodies() {
+        Set<ExecutableElement> allowedSet = this.allowedSet;
+        if (allowedSet != null) {
+            for (ExecutableElement element : allowedSet) {
+                element.releasePreviousMethodBody();
+            }
+        }
+    }
+
     public void registerEntryPoint(final ExecutableElement method) {
         enqueue(method);
         entryPoints.add(method);
@@ -608,6 +610,7 @@ final class CompilationContextImpl implements CompilationContext {
     private int state;
     private int activeThreads;
     private int threadAcks;
+    private volatile int threadCount;
     private Consumer<CompilationContext> task;
     private volatile BiConsumer<Consumer<CompilationContext>, CompilationContext> taskRunner = Consumer::accept;
 
@@ -755,55 +758,29 @@ final class CompilationContextImpl implements CompilationContext {
         return copier;
     }
 
-    int waiting;
-
-    void processQueue(Consumer<ExecutableElement> consumer) {
-        synchronized (this) {
-            waiting = 0;
-        }
-        runParallelTask(ctxt -> {
-            ExecutableElement element;
-            for (;;) {
-                synchronized (queue) {
-                    element = queue.poll();
-                    if (element == null) {
-                        waiting++;
-                        if (waiting == activeThreads) {
-                            // no elements left! let everyone know
-                            queue.notifyAll();
-                            return;
-                        }
-                        for (;;) {
-                            try {
-                                queue.wait();
-                            } catch (InterruptedException ignored) {
-                                // safe to ignore
-                            }
-                            element = queue.poll();
-                            if (element != null) {
-                                break;
-                            }
-                            if (waiting == activeThreads) {
-                                // awoken from sleep to exit
-                                return;
-                            }
-                        }
-                        waiting--;
-                    }
-                }
-                try {
-                    consumer.accept(element);
-                } catch (Throwable e) {
-                    log.error("An exception was thrown from a queue processing task", e);
-                    error(element, "Exception while processing queue task for element: %s", e);
-                }
+    List<ElementQueue.WorkerStatistics> processQueue(Consumer<ExecutableElement> consumer) {
+        queue.startRound(threadCount);
+        runParallelTask(ctxt -> queue.process(element -> {
+            try {
+                consumer.accept(element);
+            } catch (Throwable e) {
+                log.error("An exception was thrown from a queue processing task", e);
+                error(element, "Exception while processing queue task for element: %s", e);
             }
-        });
+        }));
+        List<ElementQueue.WorkerStatistics> statistics = queue.finishRound();
+        if (log.isDebugEnabled()) {
+            for (ElementQueue.WorkerStatistics item : statistics) {
+                log.debugf("Queue processing statistics for %s", item);
+            }
+        }
+        return statistics;
     }
 
     void startThreads(final int threadCnt, final long stackSize) {
         ThreadGroup threadGroup = new ThreadGroup("qbicc compiler thread group");
         Thread[] threads = new Thread[threadCnt];
+        threadCount = threadCnt;
         for (int i = 0; i < threadCnt; i ++) {
             threads[i] = new Thread(threadGroup, threadTask, "qbicc compiler thread " + (i + 1) + "/" + threadCnt, stackSize, false);
         }
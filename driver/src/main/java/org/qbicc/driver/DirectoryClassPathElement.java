@@ -7,6 +7,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 final class DirectoryClassPathElement extends ClassPathElement {
     private final Path baseDir;
@@ -24,6 +26,12 @@ final class DirectoryClassPathElement extends ClassPathElement {
         return ! Files.exists(resourcePath) ? NON_EXISTENT : new Resource(FileChannel.open(resourcePath, Set.of(StandardOpenOption.READ)));
     }
 
+    void forEachResourceName(final Consumer<String> consumer) throws IOException {
+        try (Stream<Path> stream = Files.walk(baseDir)) {
+            stream.filter(Files::isRegularFile).map(path -> baseDir.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/")).forEach(consumer);
+        }
+    }
+
     public void close() {
         // no operation
     }
@@ -2,6 +2,10 @@ package org.qbicc.driver;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,8 +20,6 @@ import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
-import java.util.jar.JarFile;
-import java.util.zip.ZipFile;
 
 import io.smallrye.common.constraint.Assert;
 import org.jboss.logging.Logger;
@@ -38,7 +40,12 @@ import org.qbicc.interpreter.Vm;
 import org.qbicc.interpreter.VmObject;
 import org.qbicc.machine.arch.Platform;
 import org.qbicc.machine.object.ObjectFileProvider;
+import org.qbicc.machine.probe.CProbeCache;
 import org.qbicc.machine.tool.CToolChain;
+import org.qbicc.plugin.metrics.CountMetric;
+import org.qbicc.plugin.metrics.MemorySizeMetric;
+import org.qbicc.plugin.metrics.Metrics;
+import org.qbicc.plugin.metrics.Timer;
 import org.qbicc.tool.llvm.LlvmToolChain;
 import org.qbicc.type.TypeSystem;
 import org.qbicc.type.definition.DefinedTypeDefinition;
@@ -47,6 +54,7 @@ import org.qbicc.type.definition.LoadedTypeDefinition;
 import org.qbicc.type.definition.ModuleDefinition;
 import org.qbicc.type.definition.NativeMethodConfigurator;
 import org.qbicc.type.definition.classfile.ClassFile;
+import org.qbicc.type.definition.classfile.ClassFileScan;
 import org.qbicc.type.definition.element.ExecutableElement;
 
 /**
@@ -60,6 +68,7 @@ public class Driver implements Closeable {
     public static final AttachmentKey<CToolChain> C_TOOL_CHAIN_KEY = new AttachmentKey<>();
     public static final AttachmentKey<LlvmToolChain> LLVM_TOOL_KEY = new AttachmentKey<>();
     public static final AttachmentKey<ObjectFileProvider> OBJ_PROVIDER_TOOL_KEY = new AttachmentKey<>();
+    public static final AttachmentKey<CProbeCache> C_PROBE_CACHE_KEY = new AttachmentKey<>();
 
     final BaseDiagnosticContext initialContext;
     final CompilationContextImpl compilationContext;
@@ -90,6 +99,10 @@ public class Driver implements Closeable {
     final List<Consumer<? super CompilationContext>> postGenerateHooks;
     final Map<String, BootModule> bootModules;
     final List<ClassPathElement> bootClassPath;
+    final List<ClassPathElement> ownedClassPath;
+    final ClassPathCache classPathCache;
+    // class file name to the boot class path elements which contain it, in class path order
+    final Map<String, List<ClassPathElement>> bootClassIndex;
     final Path outputDir;
     final float threadsPerCpu;
     final long stackSize;
@@ -118,6 +131,9 @@ public class Driver implements Closeable {
         initialContext.putAttachment(C_TOOL_CHAIN_KEY, Assert.checkNotNullParam("builder.toolChain", builder.toolChain));
         initialContext.putAttachment(LLVM_TOOL_KEY, Assert.checkNotNullParam("builder.llvmToolChain", builder.llvmToolChain));
         initialContext.putAttachment(OBJ_PROVIDER_TOOL_KEY, Assert.checkNotNullParam("builder.objectFileProvider", builder.objectFileProvider));
+        if (builder.probeCache != null) {
+            initialContext.putAttachment(C_PROBE_CACHE_KEY, builder.probeCache);
+        }
         // type system
         final TypeSystem typeSystem = builder.typeSystem;
         final LiteralFactory literalFactory = LiteralFactory.create(typeSystem);
@@ -125,18 +141,21 @@ public class Driver implements Closeable {
         // boot modules
         Map<String, BootModule> bootModules = new HashMap<>();
         List<ClassPathElement> bootClassPath = new ArrayList<>();
+        // elements from the class path cache are owned by the cache
+        List<ClassPathElement> ownedClassPath = new ArrayList<>();
+        ClassPathCache classPathCache = builder.classPathCache;
         for (Path path : builder.bootClassPathElements) {
             // open all bootstrap JARs (MR bootstrap JARs not supported)
             ClassPathElement element;
-            if (Files.isDirectory(path)) {
-                element = new DirectoryClassPathElement(path);
-            } else {
-                try {
-                    element = new JarFileClassPathElement(new JarFile(path.toFile(), true, ZipFile.OPEN_READ));
-                } catch (Exception e) {
-                    initialContext.error("Failed to open boot class path JAR \"%s\": %s", path, e);
-                    continue;
-                }
+            boolean cached = classPathCache != null && ! Files.isDirectory(path);
+            try {
+                element = cached ? classPathCache.get(path) : ClassPathElement.open(path);
+            } catch (Exception e) {
+                initialContext.error("Failed to open boot class path element \"%s\": %s", path, e);
+                continue;
+            }
+            if (! cached) {
+                ownedClassPath.add(element);
             }
             bootClassPath.add(element);
             try (ClassPathElement.Resource moduleInfo = element.getResource(MODULE_INFO)) {
@@ -157,6 +176,24 @@ public class Driver implements Closeable {
         }
         this.bootModules = bootModules;
         this.bootClassPath = bootClassPath;
+        this.ownedClassPath = ownedClassPath;
+        this.classPathCache = classPathCache;
+        Map<String, List<ClassPathElement>> bootClassIndex = new HashMap<>();
+        for (ClassPathElement element : bootClassPath) {
+            try {
+                element.forEachResourceName(name -> {
+                    if (name.endsWith(".class")) {
+                        List<ClassPathElement> elements = bootClassIndex.computeIfAbsent(name, n -> new ArrayList<>(1));
+                        if (! elements.contains(element)) {
+                            elements.add(element);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                initialContext.error("Failed to index class path element \"%s\": %s", element.getName(), e);
+            }
+        }
+        this.bootClassIndex = bootClassIndex;
 
         // ADD phase
         addTaskWrapperFactories = List.copyOf(builder.taskWrapperFactories.getOrDefault(Phase.ADD, List.of()));
@@ -264,24 +301,25 @@ public class Driver implements Closeable {
 
     private DefinedTypeDefinition defaultFinder(ClassContext classContext, String name) {
         String fileName = name + ".class";
-        ByteBuffer buffer;
-        for (ClassPathElement element : bootClassPath) {
-            try (ClassPathElement.Resource resource = element.getResource(fileName)) {
-                buffer = resource.getBuffer();
-                if (buffer == null) {
-                    // non existent
+        // the elements which contain the class, in class path order
+        List<ClassPathElement> elements = bootClassIndex.getOrDefault(fileName, List.of());
+        for (ClassPathElement element : elements) {
+            try {
+                ClassFileScan scan = classPathCache == null ? ClassPathCache.scanClassFile(element, fileName) : classPathCache.getClassFileScan(element, fileName);
+                if (scan == null) {
+                    // removed since the index was built
                     continue;
                 }
-                ClassFile classFile = ClassFile.of(classContext, buffer);
+                ClassFile classFile = ClassFile.of(classContext, scan);
                 DefinedTypeDefinition.Builder builder = classContext.newTypeBuilder();
                 classFile.accept(builder);
                 DefinedTypeDefinition def = builder.build();
                 classContext.defineClass(name, def);
                 return def;
             } catch (Exception e) {
+                // try the next element which contains the class, if any
                 log.warnf(e, "An exception was thrown while loading class \"%s\" from the bootstrap loader", name);
-                classContext.getCompilationContext().warning("Failed to load class \"%s\" from the bootstrap loader due to an exception: %s", name, e);
-                return null;
+                classContext.getCompilationContext().warning("Failed to load class \"%s\" from \"%s\" in the bootstrap loader due to an exception: %s", name, element.getName(), e);
             }
         }
         return null;
@@ -342,6 +380,7 @@ public class Driver implements Closeable {
 
     boolean execute0() {
         CompilationContextImpl compilationContext = this.compilationContext;
+        resetHeapPeaks();
 
         // ADD phase
 
@@ -354,7 +393,7 @@ public class Driver implements Closeable {
 
         for (Consumer<? super CompilationContext> hook : preAddHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.ADD, "pre-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a pre-add hook", e);
                 compilationContext.error(e, "Pre-add hook failed: %s", e);
@@ -385,15 +424,17 @@ public class Driver implements Closeable {
         }
 
         MDC.put("phase", "ADD");
-        compilationContext.processQueue(element -> {
+        List<Timer> addHandlerTimers = getElementHandlerTimers(Phase.ADD, addElementHandlers);
+        List<ElementQueue.WorkerStatistics> addStatistics = compilationContext.processQueue(element -> {
             MDC.put("phase", "ADD");
-            for (Consumer<ExecutableElement> handler : addElementHandlers) try {
-                handler.accept(element);
+            for (int i = 0; i < addElementHandlers.size(); i ++) try {
+                addHandlerTimers.get(i).acceptTimed(addElementHandlers.get(i), element);
             } catch (Exception e) {
                 log.error("An exception was thrown in an element handler", e);
                 compilationContext.error(element, "Element handler threw an exception: %s", e);
             }
         });
+        recordQueueStatistics(Phase.ADD, addStatistics);
 
         if (compilationContext.errors() > 0) {
             // bail out
@@ -404,7 +445,7 @@ public class Driver implements Closeable {
 
         for (Consumer<? super CompilationContext> hook : postAddHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.ADD, "post-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a post-add hook", e);
                 compilationContext.error("Post-add hook failed: %s", e);
@@ -422,6 +463,8 @@ public class Driver implements Closeable {
 
         compilationContext.clearEnqueuedSet();
         compilationContext.cyclePhaseAttachments();
+        // the previous bodies are the ADD bodies, which are still needed for inlining during ANALYZE
+        recordHeapUsage(Phase.ADD);
 
         // ANALYZE phase
 
@@ -438,7 +481,7 @@ public class Driver implements Closeable {
         MDC.put("phase", "ANALYZE");
         for (Consumer<? super CompilationContext> hook : preAnalyzeHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.ANALYZE, "pre-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a pre-analyze hook", e);
                 compilationContext.error("Pre-analyze hook failed: %s", e);
@@ -455,15 +498,17 @@ public class Driver implements Closeable {
             compilationContext.enqueue(entryPoint);
         }
 
-        compilationContext.processQueue(element -> {
+        List<Timer> analyzeHandlerTimers = getElementHandlerTimers(Phase.ANALYZE, analyzeElementHandlers);
+        List<ElementQueue.WorkerStatistics> analyzeStatistics = compilationContext.processQueue(element -> {
             MDC.put("phase", "ANALYZE");
-            for (Consumer<ExecutableElement> handler : analyzeElementHandlers) try {
-                handler.accept(element);
+            for (int i = 0; i < analyzeElementHandlers.size(); i ++) try {
+                analyzeHandlerTimers.get(i).acceptTimed(analyzeElementHandlers.get(i), element);
             } catch (Exception e) {
                 log.error("An exception was thrown in an element handler", e);
                 compilationContext.error(element, "Element handler threw an exception: %s", e);
             }
         });
+        recordQueueStatistics(Phase.ANALYZE, analyzeStatistics);
 
         if (compilationContext.errors() > 0) {
             // bail out
@@ -474,7 +519,7 @@ public class Driver implements Closeable {
 
         for (Consumer<? super CompilationContext> hook : postAnalyzeHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.ANALYZE, "post-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a post-analyze hook", e);
                 compilationContext.error("Post-analyze hook failed: %s", e);
@@ -487,6 +532,9 @@ public class Driver implements Closeable {
 
         compilationContext.clearEnqueuedSet();
         compilationContext.cyclePhaseAttachments();
+        // every reachable element now has its ANALYZE body, so the ADD bodies can go
+        compilationContext.releasePreviousMethodBodies();
+        recordHeapUsage(Phase.ANALYZE);
 
         // LOWER phase
 
@@ -503,7 +551,7 @@ public class Driver implements Closeable {
         MDC.put("phase", "LOWER");
         for (Consumer<? super CompilationContext> hook : preLowerHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.LOWER, "pre-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a pre-lower hook", e);
                 compilationContext.error("Pre-lower hook failed: %s", e);
@@ -520,15 +568,17 @@ public class Driver implements Closeable {
             compilationContext.enqueue(entryPoint);
         }
 
-        compilationContext.processQueue(element -> {
+        List<Timer> lowerHandlerTimers = getElementHandlerTimers(Phase.LOWER, lowerElementHandlers);
+        List<ElementQueue.WorkerStatistics> lowerStatistics = compilationContext.processQueue(element -> {
             MDC.put("phase", "LOWER");
-            for (Consumer<ExecutableElement> handler : lowerElementHandlers) try {
-                handler.accept(element);
+            for (int i = 0; i < lowerElementHandlers.size(); i ++) try {
+                lowerHandlerTimers.get(i).acceptTimed(lowerElementHandlers.get(i), element);
             } catch (Exception e) {
                 log.error("An exception was thrown in an element handler", e);
                 compilationContext.error(element, "Element handler threw an exception: %s", e);
             }
         });
+        recordQueueStatistics(Phase.LOWER, lowerStatistics);
 
         if (compilationContext.errors() > 0) {
             // bail out
@@ -539,7 +589,7 @@ public class Driver implements Closeable {
 
         for (Consumer<? super CompilationContext> hook : postLowerHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.LOWER, "post-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a post-lower hook", e);
                 compilationContext.error("Post-lower hook failed: %s", e);
@@ -551,6 +601,8 @@ public class Driver implements Closeable {
         }
 
         compilationContext.cyclePhaseAttachments();
+        compilationContext.releasePreviousMethodBodies();
+        recordHeapUsage(Phase.LOWER);
 
         // GENERATE phase
 
@@ -566,7 +618,7 @@ public class Driver implements Closeable {
         MDC.put("phase", "GENERATE");
         for (Consumer<? super CompilationContext> hook : preGenerateHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.GENERATE, "pre-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a pre-generate hook", e);
                 compilationContext.error("Pre-generate hook failed: %s", e);
@@ -581,7 +633,7 @@ public class Driver implements Closeable {
 
         for (Consumer<? super CompilationContext> hook : postGenerateHooks) {
             try {
-                hook.accept(compilationContext);
+                getHookTimer(Phase.GENERATE, "post-hooks", hook).acceptTimed(hook, compilationContext);
             } catch (Exception e) {
                 log.error("An exception was thrown in a post-generate hook " + hook.getClass().getName(), e);
                 compilationContext.error("Post-generate hook failed: %s", e);
@@ -592,11 +644,72 @@ public class Driver implements Closeable {
             }
         }
 
+        recordHeapUsage(Phase.GENERATE);
+
         return compilationContext.errors() == 0;
     }
 
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private void recordHeapUsage(Phase phase) {
+        // the peak is the sum of the peaks of each heap pool since the previous phase, which bounds the actual peak
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                MemoryUsage usage = pool.getPeakUsage();
+                if (usage != null) {
+                    peak += usage.getUsed();
+                }
+                pool.resetPeakUsage();
+            }
+        }
+        MemorySizeMetric metric = Metrics.get(compilationContext).getOrCreateRootMemorySizeMetric("heap").getOrAddChild(phase.toString());
+        metric.getOrAddChild("peak").add(peak);
+        metric.getOrAddChild("end").add(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    private Timer getHookTimer(Phase phase, String kind, Object hook) {
+        return Metrics.get(compilationContext).getOrCreateRootTimer("phases").getOrAddChild(phase.toString(), kind, getMetricName(hook));
+    }
+
+    private List<Timer> getElementHandlerTimers(Phase phase, List<Consumer<ExecutableElement>> handlers) {
+        // resolve the timers up front so that the per-element cost is just the timing itself
+        Timer parent = Metrics.get(compilationContext).getOrCreateRootTimer("phases").getOrAddChild(phase.toString(), "element-handlers");
+        List<Timer> timers = new ArrayList<>(handlers.size());
+        for (Consumer<ExecutableElement> handler : handlers) {
+            timers.add(parent.getOrAddChild(getMetricName(handler)));
+        }
+        return timers;
+    }
+
+    private static String getMetricName(Object task) {
+        String name = task.getClass().getName();
+        // lambda class names carry a unique suffix which is meaningless in a report
+        int idx = name.indexOf("$$Lambda");
+        return idx == -1 ? name : name.substring(0, idx) + " (lambda)";
+    }
+
+    private void recordQueueStatistics(Phase phase, List<ElementQueue.WorkerStatistics> statistics) {
+        Metrics metrics = Metrics.get(compilationContext);
+        String phaseName = phase.toString();
+        CountMetric processed = metrics.getOrCreateRootCountMetric("queue-processed").getOrAddChild(phaseName);
+        CountMetric steals = metrics.getOrCreateRootCountMetric("queue-steals").getOrAddChild(phaseName);
+        CountMetric idles = metrics.getOrCreateRootCountMetric("queue-idles").getOrAddChild(phaseName);
+        for (ElementQueue.WorkerStatistics item : statistics) {
+            processed.getOrAddChild(item.getThreadName()).add(item.getProcessed());
+            steals.getOrAddChild(item.getThreadName()).add(item.getSteals());
+            idles.getOrAddChild(item.getThreadName()).add(item.getIdles());
+        }
+    }
+
     public void close() {
-        for (ClassPathElement element : bootClassPath) {
+        for (ClassPathElement element : ownedClassPath) {
             try {
                 element.close();
             } catch (IOException e) {
@@ -638,6 +751,8 @@ public class Driver implements Closeable {
         CToolChain toolChain;
         LlvmToolChain llvmToolChain;
         ObjectFileProvider objectFileProvider;
+        CProbeCache probeCache;
+        ClassPathCache classPathCache;
 
         float threadsPerCpu = 2.0f;
         // 16 MB is the default stack size
@@ -801,6 +916,30 @@ public class Driver implements Closeable {
             return this;
         }
 
+        public CProbeCache getProbeCache() {
+            return probeCache;
+        }
+
+        public Builder setProbeCache(final CProbeCache probeCache) {
+            this.probeCache = probeCache;
+            return this;
+        }
+
+        public ClassPathCache getClassPathCache() {
+            return classPathCache;
+        }
+
+        /**
+         * Set the cache from which boot class path archives are taken, so that they may be shared with other drivers.
+         *
+         * @param classPathCache the class path cache, or {@code null} to open (and close) the archives in this driver
+         * @return this builder
+         */
+        public Builder setClassPathCache(final ClassPathCache classPathCache) {
+            this.classPathCache = classPathCache;
+            return this;
+        }
+
         public float getThreadsPerCpu() {
             return threadsPerCpu;
         }
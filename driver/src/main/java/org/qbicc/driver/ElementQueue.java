@@ -0,0 +1,310 @@
+package org.qbicc.driver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.qbicc.type.definition.element.ExecutableElement;
+
+/**
+ * A work-stealing queue of executable elements.
+ * <p>
+ * Each compiler thread which participates in a {@linkplain #process processing round} owns a deque.  Elements
+ * enqueued by a participating thread are pushed on to the head of its own deque and are processed in LIFO order
+ * by that thread; idle threads steal from the tail of other threads' deques.  Elements enqueued by any other thread
+ * (for example, entry points registered before a phase starts) go into a shared submission queue.
+ * <p>
+ * Termination is detected using a count of pending elements, which is incremented when an element is enqueued
+ * and decremented only after the element has been fully processed.  Since new elements can only be produced by
+ * processing existing elements, a pending count of zero means that there is no more work, and all threads may exit.
+ * Threads which find no work park on a monitor which is only touched on the idle path.
+ */
+final class ElementQueue {
+    private final ConcurrentLinkedDeque<ExecutableElement> submissions = new ConcurrentLinkedDeque<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong signals = new AtomicLong();
+    private final AtomicInteger sleepers = new AtomicInteger();
+    private final ThreadLocal<Worker> currentWorker = new ThreadLocal<>();
+    private final Object idleLock = new Object();
+    private volatile Round round;
+
+    ElementQueue() {}
+
+    /**
+     * Add an element to the queue.  The element is added to the calling thread's deque if the calling thread is
+     * participating in the current round, otherwise it is added to the submission queue.
+     *
+     * @param element the element to add (must not be {@code null})
+     */
+    void add(ExecutableElement element) {
+        pending.incrementAndGet();
+        Worker worker = currentWorker.get();
+        if (worker != null) {
+            worker.deque.addFirst(element);
+        } else {
+            submissions.addLast(element);
+        }
+        if (sleepers.get() > 0) {
+            synchronized (idleLock) {
+                signals.incrementAndGet();
+                idleLock.notify();
+            }
+        }
+    }
+
+    /**
+     * Remove and return any available element without processing it.  Because the removed element is never
+     * processed, it no longer counts towards termination.
+     *
+     * @return the element, or {@code null} if none is immediately available
+     */
+    ExecutableElement poll() {
+        ExecutableElement element = submissions.pollFirst();
+        if (element == null) {
+            Round round = this.round;
+            if (round != null) {
+                element = round.stealAny(null);
+            }
+        }
+        if (element != null && pending.decrementAndGet() == 0) {
+            wakeAll();
+        }
+        return element;
+    }
+
+    /**
+     * Prepare a new processing round for the given number of threads.  Must be called before any thread
+     * calls {@link #process}.
+     *
+     * @param threadCnt the maximum number of participating threads
+     */
+    void startRound(int threadCnt) {
+        round = new Round(threadCnt);
+    }
+
+    /**
+     * Finish the current processing round, returning the statistics of each participating thread.  Must be called
+     * after every participating thread has returned from {@link #process}.
+     *
+     * @return the per-thread statistics (not {@code null})
+     */
+    List<WorkerStatistics> finishRound() {
+        Round round = this.round;
+        this.round = null;
+        if (round == null) {
+            return List.of();
+        }
+        List<WorkerStatistics> list = new ArrayList<>(round.workers.length());
+        for (int i = 0; i < round.workers.length(); i ++) {
+            Worker worker = round.workers.get(i);
+            if (worker != null) {
+                list.add(new WorkerStatistics(worker.name, worker.processed, worker.steals, worker.idles));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Process elements on the calling thread until there are no pending elements left.
+     *
+     * @param consumer the element consumer, which must not throw an exception
+     */
+    void process(Consumer<ExecutableElement> consumer) {
+        Round round = this.round;
+        if (round == null) {
+            throw new IllegalStateException("No processing round is active");
+        }
+        Worker worker = round.register(Thread.currentThread().getName());
+        currentWorker.set(worker);
+        try {
+            ExecutableElement element;
+            for (;;) {
+                element = findWork(round, worker);
+                if (element == null) {
+                    element = idle(round, worker);
+                    if (element == null) {
+                        // no more work
+                        return;
+                    }
+                }
+                try {
+                    consumer.accept(element);
+                } finally {
+                    worker.processed ++;
+                    if (pending.decrementAndGet() == 0) {
+                        wakeAll();
+                    }
+                }
+            }
+        } finally {
+            currentWorker.remove();
+        }
+    }
+
+    private ExecutableElement findWork(Round round, Worker worker) {
+        ExecutableElement element = worker.deque.pollFirst();
+        if (element == null) {
+            element = submissions.pollFirst();
+            if (element == null) {
+                element = round.stealAny(worker);
+                if (element != null) {
+                    worker.steals ++;
+                }
+            }
+        }
+        return element;
+    }
+
+    private ExecutableElement idle(Round round, Worker worker) {
+        boolean intr = false;
+        // register as a sleeper *before* the final check for work, so that a concurrent add either sees us or we see its element
+        sleepers.incrementAndGet();
+        try {
+            for (;;) {
+                long seq = signals.get();
+                ExecutableElement element = findWork(round, worker);
+                if (element != null) {
+                    return element;
+                }
+                if (pending.get() == 0) {
+                    return null;
+                }
+                worker.idles ++;
+                synchronized (idleLock) {
+                    while (signals.get() == seq && pending.get() != 0) {
+                        try {
+                            idleLock.wait();
+                        } catch (InterruptedException e) {
+                            intr = true;
+                        }
+                    }
+                }
+            }
+        } finally {
+            sleepers.decrementAndGet();
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void wakeAll() {
+        synchronized (idleLock) {
+            signals.incrementAndGet();
+            idleLock.notifyAll();
+        }
+    }
+
+    static final class Round {
+        private final AtomicReferenceArray<Worker> workers;
+        private final AtomicInteger registered = new AtomicInteger();
+
+        Round(int threadCnt) {
+            workers = new AtomicReferenceArray<>(Math.max(1, threadCnt));
+        }
+
+        Worker register(String name) {
+            int idx = registered.getAndIncrement();
+            if (idx >= workers.length()) {
+                throw new IllegalStateException("Too many threads in processing round");
+            }
+            Worker worker = new Worker(name);
+            workers.set(idx, worker);
+            return worker;
+        }
+
+        ExecutableElement stealAny(Worker thief) {
+            int cnt = Math.min(registered.get(), workers.length());
+            if (cnt == 0) {
+                return null;
+            }
+            // start at a random victim to spread out contention between thieves
+            int start = ThreadLocalRandom.current().nextInt(cnt);
+            for (int i = 0; i < cnt; i ++) {
+                Worker victim = workers.get((start + i) % cnt);
+                if (victim != null && victim != thief) {
+                    ExecutableElement element = victim.deque.pollLast();
+                    if (element != null) {
+                        return element;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Worker {
+        final ConcurrentLinkedDeque<ExecutableElement> deque = new ConcurrentLinkedDeque<>();
+        final String name;
+        // these fields are only written by the owning thread, and only read after the round is joined
+        long processed;
+        long steals;
+        long idles;
+
+        Worker(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The work statistics of a single thread for a single processing round.
+     */
+    static final class WorkerStatistics {
+        private final String threadName;
+        private final long processed;
+        private final long steals;
+        private final long idles;
+
+        WorkerStatistics(String threadName, long processed, long steals, long idles) {
+            this.threadName = threadName;
+            this.processed = processed;
+            this.steals = steals;
+            this.idles = idles;
+        }
+
+        /**
+         * Get the name of the thread.
+         *
+         * @return the thread name
+         */
+        String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * Get the number of elements processed by the thread.
+         *
+         * @return the number of processed elements
+         */
+        long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * Get the number of elements that the thread stole from other threads.
+         *
+         * @return the number of stolen elements
+         */
+        long getSteals() {
+            return steals;
+        }
+
+        /**
+         * Get the number of times that the thread parked because no work was available.
+         *
+         * @return the number of idle periods
+         */
+        long getIdles() {
+            return idles;
+        }
+
+        public String toString() {
+            return threadName + ": processed " + processed + ", stolen " + steals + ", idle " + idles;
+        }
+    }
+}
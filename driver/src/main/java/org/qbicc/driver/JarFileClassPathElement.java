@@ -3,6 +3,7 @@ package org.qbicc.driver;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -22,6 +23,10 @@ final class JarFileClassPathElement extends ClassPathElement {
         return jarEntry == null ? NON_EXISTENT : new Resource(jarEntry);
     }
 
+    void forEachResourceName(final Consumer<String> consumer) {
+        jarFile.stream().map(JarEntry::getName).forEach(consumer);
+    }
+
     public void close() throws IOException {
         jarFile.close();
     }
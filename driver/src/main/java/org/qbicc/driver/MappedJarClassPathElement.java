@@ -0,0 +1,219 @@
+package org.qbicc.driver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A class path element which maps a JAR or JMOD file into memory and reads its central directory once, up front.
+ * Stored entries are returned as slices of the mapping without copying, and deflated entries are inflated directly
+ * from the mapping into a buffer of exactly the uncompressed size.
+ * <p>
+ * Multi-release JARs, ZIP64 archives, and encrypted entries are not supported; opening such a file fails, so
+ * that the caller may fall back to a {@link JarFileClassPathElement}.
+ */
+final class MappedJarClassPathElement extends ClassPathElement {
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int LOC_HDR = 30;
+    private static final int CEN_HDR = 46;
+    private static final int END_HDR = 22;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final String JMOD_CLASSES = "classes/";
+
+    // inflaters hold native memory, so reuse one per thread rather than one per entry
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final String name;
+    private final MappedByteBuffer mapped;
+    private final Map<String, Entry> entries;
+
+    private MappedJarClassPathElement(final String name, final MappedByteBuffer mapped, final String prefix) throws IOException {
+        this.name = name;
+        this.mapped = mapped;
+        this.entries = readCentralDirectory(prefix);
+        if (isMultiRelease()) {
+            throw new IOException("Multi-release JARs are not supported");
+        }
+    }
+
+    /**
+     * Open and index the given JAR or JMOD file.
+     *
+     * @param path the path of the file (must not be {@code null})
+     * @return the class path element (not {@code null})
+     * @throws IOException if the file could not be read or is not a supported archive
+     */
+    static MappedJarClassPathElement open(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archive is too large to map");
+            }
+            // the mapping remains valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        String prefix = path.getFileName().toString().endsWith(".jmod") ? JMOD_CLASSES : "";
+        return new MappedJarClassPathElement(path.toString(), mapped, prefix);
+    }
+
+    private Map<String, Entry> readCentralDirectory(String prefix) throws IOException {
+        ByteBuffer buf = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEnd(buf);
+        int total = buf.getShort(end + 10) & 0xffff;
+        long cenSize = buf.getInt(end + 12) & 0xffffffffL;
+        long cenOffset = buf.getInt(end + 16) & 0xffffffffL;
+        if (total == 0xffff || cenSize == 0xffffffffL || cenOffset == 0xffffffffL) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        // JMOD files (and self-extracting archives) have a header before the first entry which offsets are relative to
+        long base = end - cenSize - cenOffset;
+        if (base < 0) {
+            throw new IOException("Invalid central directory offset");
+        }
+        Map<String, Entry> entries = new HashMap<>(total * 4 / 3 + 1);
+        int pos = (int) (base + cenOffset);
+        for (int i = 0; i < total; i ++) {
+            if (pos + CEN_HDR > end || buf.getInt(pos) != CEN_SIG) {
+                throw new IOException("Invalid central directory entry");
+            }
+            int flags = buf.getShort(pos + 8) & 0xffff;
+            int method = buf.getShort(pos + 10) & 0xffff;
+            long compressedSize = buf.getInt(pos + 20) & 0xffffffffL;
+            long size = buf.getInt(pos + 24) & 0xffffffffL;
+            int nameLen = buf.getShort(pos + 28) & 0xffff;
+            int extraLen = buf.getShort(pos + 30) & 0xffff;
+            int commentLen = buf.getShort(pos + 32) & 0xffff;
+            long offset = buf.getInt(pos + 42) & 0xffffffffL;
+            String entryName = readName(buf, pos + CEN_HDR, nameLen);
+            pos += CEN_HDR + nameLen + extraLen + commentLen;
+            if (entryName.endsWith("/")) {
+                // directory
+                continue;
+            }
+            if (! entryName.startsWith(prefix)) {
+                continue;
+            }
+            if ((flags & 1) != 0) {
+                throw new IOException("Encrypted entry \"" + entryName + "\" is not supported");
+            }
+            if (method != STORED && method != DEFLATED) {
+                throw new IOException("Entry \"" + entryName + "\" has unsupported compression method " + method);
+            }
+            if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE || base + offset + LOC_HDR > end) {
+                throw new IOException("Entry \"" + entryName + "\" is too large or has an invalid offset");
+            }
+            entries.putIfAbsent(entryName.substring(prefix.length()), new Entry((int) (base + offset), method, (int) compressedSize, (int) size));
+        }
+        return entries;
+    }
+
+    private boolean isMultiRelease() throws IOException {
+        Entry manifestEntry = entries.get(JarFile.MANIFEST_NAME);
+        if (manifestEntry == null) {
+            return false;
+        }
+        ByteBuffer buffer = manifestEntry.getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        Manifest manifest = new Manifest(new ByteArrayInputStream(bytes));
+        return Boolean.parseBoolean(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+    }
+
+    private static int findEnd(ByteBuffer buf) throws IOException {
+        int limit = buf.limit();
+        // the end record is followed by a comment of up to 64K
+        int min = Math.max(0, limit - END_HDR - 0xffff);
+        for (int pos = limit - END_HDR; pos >= min; pos --) {
+            if (buf.getInt(pos) == END_SIG && pos + END_HDR + (buf.getShort(pos + 20) & 0xffff) == limit) {
+                return pos;
+            }
+        }
+        throw new IOException("No end of central directory record found");
+    }
+
+    private static String readName(ByteBuffer buf, int pos, int len) {
+        byte[] bytes = new byte[len];
+        buf.duplicate().position(pos).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ClassPathElement.Resource getResource(final String name) {
+        Entry entry = entries.get(name);
+        return entry == null ? NON_EXISTENT : entry;
+    }
+
+    void forEachResourceName(final Consumer<String> consumer) {
+        entries.keySet().forEach(consumer);
+    }
+
+    public void close() {
+        // the mapping is released when it is collected
+    }
+
+    final class Entry extends ClassPathElement.Resource {
+        private final int offset;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+
+        Entry(final int offset, final int method, final int compressedSize, final int size) {
+            this.offset = offset;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        ByteBuffer getBuffer() throws IOException {
+            ByteBuffer buf = mapped.duplicate();
+            if (buf.order(ByteOrder.LITTLE_ENDIAN).getInt(offset) != LOC_SIG) {
+                throw new IOException("Invalid local header for entry in " + name);
+            }
+            int start = offset + LOC_HDR + (buf.getShort(offset + 26) & 0xffff) + (buf.getShort(offset + 28) & 0xffff);
+            buf.order(ByteOrder.BIG_ENDIAN).position(start).limit(start + compressedSize);
+            if (method == STORED) {
+                return buf.slice();
+            }
+            Inflater inflater = INFLATERS.get();
+            try {
+                inflater.setInput(buf);
+                ByteBuffer result = ByteBuffer.allocate(size);
+                while (result.hasRemaining()) {
+                    if (inflater.inflate(result) == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated entry in " + name);
+                    }
+                }
+                return result.flip();
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt entry in " + name, e);
+            } finally {
+                inflater.reset();
+            }
+        }
+
+        public void close() {
+            // no operation
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * An empty program, whose run time is the start-up and shut-down cost which is subtracted from each benchmark.
+ */
+public class Baseline {
+    public static void main(String[] args) {
+    }
+}
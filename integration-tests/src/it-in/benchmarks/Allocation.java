@@ -0,0 +1,30 @@
+/**
+ * Allocate small objects.  The count is kept low enough that the build without a garbage collector does not run
+ * out of memory.
+ */
+public class Allocation {
+    static final long OPERATIONS = 2_000_000L;
+    static volatile long sink;
+    // retain the most recent objects so that the allocations cannot be elided
+    static final Node[] ring = new Node[64];
+
+    static final class Node {
+        final long value;
+
+        Node(long value) {
+            this.value = value;
+        }
+    }
+
+    public static void main(String[] args) {
+        Node[] ring = Allocation.ring;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            ring[(int) (i & 63)] = new Node(i);
+        }
+        long sum = 0;
+        for (Node node : ring) {
+            sum += node.value;
+        }
+        sink = sum;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copy arrays of primitives and references.
+ */
+public class ArrayCopy {
+    static final long OPERATIONS = 2_000_000L;
+    static volatile long sink;
+
+    static final int[] ints = new int[1024];
+    static final int[] intsCopy = new int[1024];
+    static final Object[] objects = new Object[256];
+    static final Object[] objectsCopy = new Object[256];
+
+    public static void main(String[] args) {
+        for (int i = 0; i < ints.length; i ++) {
+            ints[i] = i;
+        }
+        for (int i = 0; i < objects.length; i ++) {
+            objects[i] = ints;
+        }
+        long sum = 0;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            int offset = (int) (i & 15);
+            System.arraycopy(ints, offset, intsCopy, 0, ints.length - offset);
+            System.arraycopy(objects, 0, objectsCopy, 0, objects.length);
+            sum += intsCopy[1];
+        }
+        sink = sum;
+    }
+}
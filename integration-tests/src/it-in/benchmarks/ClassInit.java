@@ -0,0 +1,31 @@
+/**
+ * Read the static fields of classes with static initializers, which must be checked for initialization.
+ */
+public class ClassInit {
+    static final long OPERATIONS = 100_000_000L;
+    static volatile long sink;
+
+    static final class First {
+        static int value = compute(3);
+    }
+
+    static final class Second {
+        static int value = compute(5);
+    }
+
+    static int compute(int seed) {
+        return seed * 7;
+    }
+
+    static int read(long i) {
+        return (i & 1) == 0 ? First.value : Second.value;
+    }
+
+    public static void main(String[] args) {
+        long sum = 0;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            sum += read(i);
+        }
+        sink = sum;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Throw an exception through two frames and catch it.  The exception is allocated once, so that only the throw
+ * and the unwinding are measured.
+ */
+public class Exceptions {
+    static final long OPERATIONS = 1_000_000L;
+    static volatile long sink;
+
+    static final class Signal extends RuntimeException {
+        Signal() {
+            super(null, null, false, false);
+        }
+    }
+
+    static final Signal SIGNAL = new Signal();
+
+    static int inner(long i) {
+        if ((i & 1) == 0) {
+            throw SIGNAL;
+        }
+        return 1;
+    }
+
+    static int outer(long i) {
+        return inner(i) + 1;
+    }
+
+    public static void main(String[] args) {
+        long sum = 0;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            try {
+                sum += outer(i);
+            } catch (Signal s) {
+                sum += 3;
+            }
+        }
+        sink = sum;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Test and cast objects of mixed types against class and interface types.
+ */
+public class InstanceOfCheckCast {
+    static final long OPERATIONS = 100_000_000L;
+    static volatile long sink;
+
+    interface Weighted {
+        int weight();
+    }
+
+    static class Base {
+        int id() {
+            return 1;
+        }
+    }
+
+    static class Derived extends Base implements Weighted {
+        public int weight() {
+            return 2;
+        }
+    }
+
+    static final class Leaf extends Derived {
+        int id() {
+            return 3;
+        }
+    }
+
+    static final Object[] objects = { new Base(), new Derived(), new Leaf(), new int[1], new Object() };
+
+    public static void main(String[] args) {
+        Object[] objects = InstanceOfCheckCast.objects;
+        long sum = 0;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            Object o = objects[(int) (i % 5)];
+            if (o instanceof Weighted) {
+                sum += ((Weighted) o).weight();
+            }
+            if (o instanceof Base) {
+                sum += ((Base) o).id();
+            }
+            if (o instanceof int[]) {
+                sum += ((int[]) o).length;
+            }
+        }
+        sink = sum;
+    }
+}
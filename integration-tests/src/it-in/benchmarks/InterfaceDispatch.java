@@ -0,0 +1,72 @@
+/**
+ * Call an interface method on a megamorphic receiver.  The call site has five receiver classes, which is more than
+ * can be devirtualized by guarding on the receiver type, so every call is dispatched through the interface tables.
+ */
+public class InterfaceDispatch {
+    static final long OPERATIONS = 100_000_000L;
+    static volatile long sink;
+
+    interface Op {
+        int apply(int value);
+    }
+
+    interface Named {
+        String name();
+    }
+
+    static final class Increment implements Named, Op {
+        public String name() {
+            return "inc";
+        }
+
+        public int apply(int value) {
+            return value + 1;
+        }
+    }
+
+    static final class Double implements Op {
+        public int apply(int value) {
+            return value << 1;
+        }
+    }
+
+    static final class Negate implements Op, Named {
+        public String name() {
+            return "neg";
+        }
+
+        public int apply(int value) {
+            return -value;
+        }
+    }
+
+    static final class Decrement implements Op {
+        public int apply(int value) {
+            return value - 1;
+        }
+    }
+
+    static final class Halve implements Named, Op {
+        public String name() {
+            return "half";
+        }
+
+        public int apply(int value) {
+            return value >> 1;
+        }
+    }
+
+    static final Op[] ops = {
+        new Increment(), new Double(), new Negate(), new Decrement(),
+        new Halve(), new Increment(), new Double(), new Decrement(),
+    };
+
+    public static void main(String[] args) {
+        Op[] ops = InterfaceDispatch.ops;
+        int value = 1;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            value = ops[(int) (i & 7)].apply(value) & 0xffff;
+        }
+        sink = value;
+    }
+}
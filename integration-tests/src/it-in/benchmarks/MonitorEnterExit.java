@@ -0,0 +1,23 @@
+/**
+ * Enter and exit an uncontended monitor.
+ */
+public class MonitorEnterExit {
+    static final long OPERATIONS = 50_000_000L;
+    static volatile long sink;
+    // shared so that the lock cannot be elided
+    static MonitorEnterExit instance = new MonitorEnterExit();
+
+    private long count;
+
+    synchronized void increment() {
+        count++;
+    }
+
+    public static void main(String[] args) {
+        MonitorEnterExit obj = instance;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            obj.increment();
+        }
+        sink = obj.count;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Call a virtual method on a megamorphic receiver.  The call site has five receiver classes, which is more than can
+ * be devirtualized by guarding on the receiver type, so every call is dispatched through the vtables.
+ */
+public class VirtualDispatch {
+    static final long OPERATIONS = 100_000_000L;
+    static volatile long sink;
+
+    abstract static class Shape {
+        abstract int sides();
+    }
+
+    static final class Triangle extends Shape {
+        int sides() {
+            return 3;
+        }
+    }
+
+    static final class Square extends Shape {
+        int sides() {
+            return 4;
+        }
+    }
+
+    static final class Pentagon extends Shape {
+        int sides() {
+            return 5;
+        }
+    }
+
+    static final class Hexagon extends Shape {
+        int sides() {
+            return 6;
+        }
+    }
+
+    static final class Octagon extends Shape {
+        int sides() {
+            return 8;
+        }
+    }
+
+    static final Shape[] shapes = {
+        new Triangle(), new Square(), new Pentagon(), new Hexagon(),
+        new Octagon(), new Square(), new Triangle(), new Hexagon(),
+    };
+
+    public static void main(String[] args) {
+        Shape[] shapes = VirtualDispatch.shapes;
+        long sum = 0;
+        for (long i = 0; i < OPERATIONS; i ++) {
+            sum += shapes[(int) (i & 7)].sides();
+        }
+        sink = sum;
+    }
+}
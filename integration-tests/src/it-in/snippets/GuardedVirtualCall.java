@@ -0,0 +1,57 @@
+import static org.qbicc.runtime.CNative.*;
+
+/**
+ * Virtual calls with few enough receiver classes to be guarded by type checks, where two of the receiver classes
+ * share the inherited implementation.
+ */
+public class GuardedVirtualCall {
+    static abstract class Shape {
+        int sides() { return 0; }
+    }
+
+    static class Circle extends Shape {
+    }
+
+    static class Ellipse extends Shape {
+    }
+
+    static class Square extends Shape {
+        int sides() { return 4; }
+    }
+
+    @extern
+    public static native int putchar(int arg);
+
+    static int countSides(Shape[] shapes) {
+        int total = 0;
+        for (int i = 0; i < shapes.length; i ++) {
+            total += shapes[i].sides();
+        }
+        return total;
+    }
+
+    static void reportSuccess() {
+        putchar('P');
+        putchar('A');
+        putchar('S');
+        putchar('S');
+        putchar('\n');
+    }
+
+    static void reportFailure() {
+        putchar('F');
+        putchar('A');
+        putchar('I');
+        putchar('L');
+        putchar('\n');
+    }
+
+    public static void main(String[] args) {
+        Shape[] shapes = { new Circle(), new Square(), new Ellipse(), new Square() };
+        if (countSides(shapes) == 8) {
+            reportSuccess();
+        } else {
+            reportFailure();
+        }
+    }
+}
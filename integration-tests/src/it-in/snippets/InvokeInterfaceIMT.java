@@ -0,0 +1,158 @@
+import static org.qbicc.runtime.CNative.*;
+
+/**
+ * Interface calls through the interface method tables.  The interface has more methods than a table has slots, so
+ * some of them share a slot, and calls to all but one of those are resolved by searching the itables instead.
+ */
+public class InvokeInterfaceIMT {
+    interface I {
+        int m0();
+        int m1();
+        int m2();
+        int m3();
+        int m4();
+        int m5();
+        int m6();
+        int m7();
+        int m8();
+        int m9();
+        int m10();
+        int m11();
+        int m12();
+        int m13();
+        int m14();
+        int m15();
+        int m16();
+    }
+
+    static class C0 implements I {
+        public int m0() { return 0; }
+        public int m1() { return 1; }
+        public int m2() { return 2; }
+        public int m3() { return 3; }
+        public int m4() { return 4; }
+        public int m5() { return 5; }
+        public int m6() { return 6; }
+        public int m7() { return 7; }
+        public int m8() { return 8; }
+        public int m9() { return 9; }
+        public int m10() { return 10; }
+        public int m11() { return 11; }
+        public int m12() { return 12; }
+        public int m13() { return 13; }
+        public int m14() { return 14; }
+        public int m15() { return 15; }
+        public int m16() { return 16; }
+    }
+
+    static class C1 implements I {
+        public int m0() { return 100; }
+        public int m1() { return 101; }
+        public int m2() { return 102; }
+        public int m3() { return 103; }
+        public int m4() { return 104; }
+        public int m5() { return 105; }
+        public int m6() { return 106; }
+        public int m7() { return 107; }
+        public int m8() { return 108; }
+        public int m9() { return 109; }
+        public int m10() { return 110; }
+        public int m11() { return 111; }
+        public int m12() { return 112; }
+        public int m13() { return 113; }
+        public int m14() { return 114; }
+        public int m15() { return 115; }
+        public int m16() { return 116; }
+    }
+
+    static class C2 implements I {
+        public int m0() { return 200; }
+        public int m1() { return 201; }
+        public int m2() { return 202; }
+        public int m3() { return 203; }
+        public int m4() { return 204; }
+        public int m5() { return 205; }
+        public int m6() { return 206; }
+        public int m7() { return 207; }
+        public int m8() { return 208; }
+        public int m9() { return 209; }
+        public int m10() { return 210; }
+        public int m11() { return 211; }
+        public int m12() { return 212; }
+        public int m13() { return 213; }
+        public int m14() { return 214; }
+        public int m15() { return 215; }
+        public int m16() { return 216; }
+    }
+
+    static class C3 implements I {
+        public int m0() { return 300; }
+        public int m1() { return 301; }
+        public int m2() { return 302; }
+        public int m3() { return 303; }
+        public int m4() { return 304; }
+        public int m5() { return 305; }
+        public int m6() { return 306; }
+        public int m7() { return 307; }
+        public int m8() { return 308; }
+        public int m9() { return 309; }
+        public int m10() { return 310; }
+        public int m11() { return 311; }
+        public int m12() { return 312; }
+        public int m13() { return 313; }
+        public int m14() { return 314; }
+        public int m15() { return 315; }
+        public int m16() { return 316; }
+    }
+
+    @extern
+    public static native int putchar(int arg);
+
+    static boolean check(I it, int base) {
+        return it.m0() == base + 0
+            && it.m1() == base + 1
+            && it.m2() == base + 2
+            && it.m3() == base + 3
+            && it.m4() == base + 4
+            && it.m5() == base + 5
+            && it.m6() == base + 6
+            && it.m7() == base + 7
+            && it.m8() == base + 8
+            && it.m9() == base + 9
+            && it.m10() == base + 10
+            && it.m11() == base + 11
+            && it.m12() == base + 12
+            && it.m13() == base + 13
+            && it.m14() == base + 14
+            && it.m15() == base + 15
+            && it.m16() == base + 16;
+    }
+
+    static void reportSuccess() {
+        putchar('P');
+        putchar('A');
+        putchar('S');
+        putchar('S');
+        putchar('\n');
+    }
+
+    static void reportFailure() {
+        putchar('F');
+        putchar('A');
+        putchar('I');
+        putchar('L');
+        putchar('\n');
+    }
+
+    public static void main(String[] args) {
+        // more receiver classes than calls are guarded for, so that the calls remain interface calls
+        I[] receivers = { new C0(), new C1(), new C2(), new C3() };
+        for (int i = 0; i < receivers.length; i ++) {
+            if (! check(receivers[i], i * 100)) {
+                reportFailure();
+                return;
+            }
+        }
+        reportSuccess();
+    }
+}
@@ -0,0 +1,179 @@
+import static org.qbicc.runtime.CNative.*;
+
+/**
+ * Object monitors under contention: threads which contend for a held lock, threads which wait until they are woken by
+ * {@code notify} or {@code notifyAll}, and threads which are interrupted before or while they wait.
+ */
+public class MonitorWait {
+    static final int THREADS = 4;
+    static final int INCREMENTS = 1000;
+
+    static final Object lock = new Object();
+    // all guarded by lock
+    static int count;
+    static int ready;
+    static int generation;
+    static int woken;
+    static int interrupted;
+
+    @extern
+    public static native int putchar(int arg);
+
+    static class Incrementer extends Thread {
+        public void run() {
+            for (int i = 0; i < INCREMENTS; i ++) {
+                synchronized (lock) {
+                    count ++;
+                }
+            }
+        }
+    }
+
+    static class Waiter extends Thread {
+        public void run() {
+            synchronized (lock) {
+                int seen = generation;
+                ready ++;
+                try {
+                    while (generation == seen) {
+                        lock.wait();
+                    }
+                    woken ++;
+                } catch (InterruptedException e) {
+                    if (! Thread.currentThread().isInterrupted()) {
+                        interrupted ++;
+                    }
+                }
+            }
+        }
+    }
+
+    static void awaitReady(int expected) {
+        for (;;) {
+            synchronized (lock) {
+                if (ready == expected) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static boolean testContendedEnter() throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        // start the threads while holding the lock, so that they contend for it
+        synchronized (lock) {
+            for (int i = 0; i < THREADS; i ++) {
+                threads[i] = new Incrementer();
+                threads[i].start();
+            }
+        }
+        for (int i = 0; i < THREADS; i ++) {
+            threads[i].join();
+        }
+        synchronized (lock) {
+            return count == THREADS * INCREMENTS;
+        }
+    }
+
+    static boolean testNotify() throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        synchronized (lock) {
+            ready = 0;
+            woken = 0;
+        }
+        for (int i = 0; i < THREADS; i ++) {
+            threads[i] = new Waiter();
+            threads[i].start();
+        }
+        awaitReady(THREADS);
+        // each notification wakes one waiter
+        for (int i = 0; i < THREADS; i ++) {
+            synchronized (lock) {
+                generation ++;
+                lock.notify();
+            }
+        }
+        for (int i = 0; i < THREADS; i ++) {
+            threads[i].join();
+        }
+        synchronized (lock) {
+            return woken == THREADS;
+        }
+    }
+
+    static boolean testNotifyAll() throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        synchronized (lock) {
+            ready = 0;
+            woken = 0;
+        }
+        for (int i = 0; i < THREADS; i ++) {
+            threads[i] = new Waiter();
+            threads[i].start();
+        }
+        awaitReady(THREADS);
+        synchronized (lock) {
+            generation ++;
+            lock.notifyAll();
+        }
+        for (int i = 0; i < THREADS; i ++) {
+            threads[i].join();
+        }
+        synchronized (lock) {
+            return woken == THREADS;
+        }
+    }
+
+    static boolean testInterruptWhileWaiting() throws InterruptedException {
+        synchronized (lock) {
+            ready = 0;
+            woken = 0;
+            interrupted = 0;
+        }
+        Thread thread = new Waiter();
+        thread.start();
+        awaitReady(1);
+        thread.interrupt();
+        thread.join();
+        synchronized (lock) {
+            return interrupted == 1 && woken == 0;
+        }
+    }
+
+    static boolean testInterruptBeforeWaiting() {
+        Thread.currentThread().interrupt();
+        synchronized (lock) {
+            try {
+                lock.wait();
+                return false;
+            } catch (InterruptedException e) {
+                // the interrupt status is cleared
+                return ! Thread.interrupted();
+            }
+        }
+    }
+
+    static void reportSuccess() {
+        putchar('P');
+        putchar('A');
+        putchar('S');
+        putchar('S');
+        putchar('\n');
+    }
+
+    static void reportFailure() {
+        putchar('F');
+        putchar('A');
+        putchar('I');
+        putchar('L');
+        putchar('\n');
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (testContendedEnter() && testNotify() && testNotifyAll() && testInterruptWhileWaiting() && testInterruptBeforeWaiting()) {
+            reportSuccess();
+        } else {
+            reportFailure();
+        }
+    }
+}
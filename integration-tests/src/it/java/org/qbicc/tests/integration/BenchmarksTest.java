@@ -0,0 +1,108 @@
+package org.qbicc.tests.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.qbicc.tests.integration.utils.TestConstants.BASE_DIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import org.qbicc.context.DiagnosticContext;
+import org.qbicc.tests.integration.utils.BenchmarkReport;
+import org.qbicc.tests.integration.utils.BenchmarksJUnitProvider;
+import org.qbicc.tests.integration.utils.HotSpot;
+import org.qbicc.tests.integration.utils.Javac;
+import org.qbicc.tests.integration.utils.NativeExecutable;
+import org.qbicc.tests.integration.utils.PropertyLookup;
+import org.qbicc.tests.integration.utils.Qbicc;
+
+/**
+ * All .java classes found in the benchmarks directory will be compiled
+ * and run both as native executables and on HotSpot. The best wall clock
+ * time of several runs of each, less the best time of an empty baseline
+ * program which accounts for process start-up, is reported as operations
+ * per second, in the log and in target/it/benchmarks/report.csv.
+ */
+@Tag("benchmarks")
+public class BenchmarksTest {
+
+    private static final Logger LOGGER = Logger.getLogger(BenchmarksTest.class.getName());
+
+    private static final int RUNS = Integer.parseInt(PropertyLookup.getProperty(new String[]{"QBICC_BENCHMARK_RUNS", "qbicc.benchmark.runs"}, "3"));
+
+    private static final Path TARGET_PATH = Path.of(".").resolve("target");
+
+    private static long baselineNativeNanos;
+    private static long baselineHotSpotNanos;
+
+    @BeforeAll
+    static void runBaseline() throws IOException {
+        Path baseline = Path.of(BASE_DIR, "integration-tests", "src", "it-in", "benchmark-baseline", "Baseline.java");
+        long[] nanos = compileAndRun(baseline, "Baseline");
+        baselineNativeNanos = nanos[0];
+        baselineHotSpotNanos = nanos[1];
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(BenchmarksJUnitProvider.class)
+    void compileAndRunBenchmark(final Path benchmark) throws IOException {
+        final String benchmarkName = benchmark.getFileName().toString().replace(".java", "");
+
+        long[] nanos = compileAndRun(benchmark, benchmarkName);
+        long operations = BenchmarkReport.readOperations(classOutputPath(benchmarkName), benchmarkName);
+
+        // a benchmark which is not measurably slower than the baseline is reported as taking one nanosecond
+        long nativeNanos = Math.max(1, nanos[0] - baselineNativeNanos);
+        long hotSpotNanos = Math.max(1, nanos[1] - baselineHotSpotNanos);
+
+        BenchmarkReport.record(TARGET_PATH.resolve("it/benchmarks/report.csv"), benchmarkName, operations, nativeNanos, hotSpotNanos, LOGGER);
+    }
+
+    private static Path classOutputPath(String programName) {
+        return TARGET_PATH.resolve("it/benchmarks").resolve(programName).resolve("classes");
+    }
+
+    /**
+     * Compile a program and run it both natively and on HotSpot.
+     *
+     * @return the best wall clock times in nanoseconds of the native executable and of HotSpot
+     */
+    private static long[] compileAndRun(Path program, String programName) throws IOException {
+        Path classOutputPath = classOutputPath(programName);
+        Path nativeOutputPath = TARGET_PATH.resolve("it/benchmarks").resolve(programName).resolve("native");
+        Path outputExecutable = nativeOutputPath.resolve("a.out");
+
+        // Build via javac
+        boolean compilationResult = Javac.compile(classOutputPath, program, LOGGER);
+
+        assertTrue(compilationResult, "Compilation should succeed.");
+
+        DiagnosticContext diagnosticContext = Qbicc.build(classOutputPath, nativeOutputPath, programName, LOGGER);
+
+        assertEquals(0, diagnosticContext.errors(), "Native image creation should generate no errors.");
+
+        long nativeNanos = Long.MAX_VALUE;
+        long hotSpotNanos = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            StringBuilder stdOut = new StringBuilder();
+            StringBuilder stdErr = new StringBuilder();
+            long start = System.nanoTime();
+            NativeExecutable.run(programName, outputExecutable, stdOut, stdErr, LOGGER);
+            nativeNanos = Math.min(nativeNanos, System.nanoTime() - start);
+            assertTrue(stdErr.toString().isBlank(), "Native image execution should produce no error. " + stdErr);
+
+            stdOut.setLength(0);
+            stdErr.setLength(0);
+            start = System.nanoTime();
+            HotSpot.run(programName, classOutputPath, programName, stdOut, stdErr, LOGGER);
+            hotSpotNanos = Math.min(hotSpotNanos, System.nanoTime() - start);
+            assertTrue(stdErr.toString().isBlank(), "HotSpot execution should produce no error. " + stdErr);
+        }
+        return new long[] { nativeNanos, hotSpotNanos };
+    }
+}
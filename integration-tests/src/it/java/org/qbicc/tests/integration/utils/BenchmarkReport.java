@@ -0,0 +1,48 @@
+package org.qbicc.tests.integration.utils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Computes and records the throughput of benchmark programs.
+ */
+public class BenchmarkReport {
+    private static final String HEADER = "benchmark,operations,native_ops_per_sec,hotspot_ops_per_sec,native_to_hotspot";
+
+    /**
+     * Read the number of operations performed by a benchmark program from its {@code OPERATIONS} field.
+     */
+    public static long readOperations(Path classPath, String mainClass) throws IOException {
+        URL[] urls = { classPath.toUri().toURL(), Path.of(TestConstants.QBICC_RUNTIME_API_JAR).toUri().toURL() };
+        try (URLClassLoader classLoader = new URLClassLoader(urls, BenchmarkReport.class.getClassLoader())) {
+            Field field = Class.forName(mainClass, false, classLoader).getDeclaredField("OPERATIONS");
+            field.setAccessible(true);
+            return field.getLong(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Benchmark " + mainClass + " has no readable OPERATIONS field", e);
+        }
+    }
+
+    /**
+     * Log the throughput of a benchmark, and append it to the report file.
+     */
+    public static synchronized void record(Path reportPath, String name, long operations, long nativeNanos, long hotSpotNanos, Logger logger) throws IOException {
+        double nativeOps = operations * 1e9 / nativeNanos;
+        double hotSpotOps = operations * 1e9 / hotSpotNanos;
+        String line = String.format(Locale.ROOT, "%s,%d,%.0f,%.0f,%.3f", name, operations, nativeOps, hotSpotOps, nativeOps / hotSpotOps);
+        logger.infof("Benchmark(%s): native %.0f ops/sec, HotSpot %.0f ops/sec (%.2fx)", name, nativeOps, hotSpotOps, nativeOps / hotSpotOps);
+        Files.createDirectories(reportPath.getParent());
+        if (!Files.exists(reportPath)) {
+            Files.writeString(reportPath, HEADER + System.lineSeparator());
+        }
+        Files.writeString(reportPath, line + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,38 @@
+package org.qbicc.tests.integration.utils;
+
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.qbicc.tests.integration.utils.TestConstants.BASE_DIR;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.ArgumentsProvider;
+
+/**
+ * Lists all .java files in the integration-tests/benchmarks directory.
+ * Each file is a benchmark program in the default package, which declares
+ * the number of operations it performs in a static {@code OPERATIONS} field.
+ */
+public class BenchmarksJUnitProvider implements ArgumentsProvider {
+    @Override
+    public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
+        final Path rootPath = FileSystems.getDefault()
+            .getPath(BASE_DIR, "integration-tests", "src", "it-in", "benchmarks");
+        try (Stream<Path> files = Files.list(rootPath)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".java"))
+                .sorted()
+                .map(Arguments::of)
+                .collect(Collectors.toList())
+                .stream();
+        } catch (IOException e) {
+            fail("There was an error loading benchmarks in " + rootPath + ". Aborting.", e);
+            return Stream.empty();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.qbicc.tests.integration.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.jboss.logging.Logger;
+import org.qbicc.machine.tool.process.InputSource;
+import org.qbicc.machine.tool.process.OutputDestination;
+
+/**
+ * Runs a program on the JVM which is running the tests, to get a baseline for the native executable.
+ */
+public class HotSpot {
+    public static void run(String name, Path classPath, String mainClass, StringBuilder stdOut, StringBuilder stdErr, Logger logger) throws IOException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        OutputDestination stdOutDest = OutputDestination.of(stdOut);
+        OutputDestination stdErrDest = OutputDestination.of(stdErr);
+        ProcessBuilder processBuilder = new ProcessBuilder(
+            java.toString(),
+            "-cp", classPath + File.pathSeparator + TestConstants.QBICC_RUNTIME_API_JAR,
+            mainClass);
+        OutputDestination process = OutputDestination.of(processBuilder, stdErrDest, stdOutDest);
+        InputSource.empty().transferTo(process);
+
+        if (!stdErr.toString().isBlank()) {
+            logger.warnf("HotSpot(" + name + ") standard error:%n%s", stdErr);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import io.smallrye.common.constraint.Assert;
@@ -53,11 +54,17 @@ public final class VmImpl implements Vm {
     private final VmClassLoaderImpl bootstrapClassLoader;
     private final AtomicBoolean initialized = new AtomicBoolean();
     private final Consumer<VmObject> manualInitializers;
+    private final AtomicInteger identityHashCodeSeed = new AtomicInteger();
 
     final MemoryImpl emptyMemory;
 
     boolean bootstrapComplete;
 
+    // object header
+    final int headerOffset;
+    final int headerSize;
+    final int identityHashCodeShift;
+
     // core classes
     final VmClassImpl objectClass;
     final VmClassClassImpl classClass;
@@ -141,6 +148,10 @@ public final class VmImpl implements Vm {
         LayoutInfo stringLayout = layout.getInstanceLayoutInfo(stringDef);
         stringCoderOffset = stringLayout.getMember(coderField).getOffset();
         stringValueOffset = stringLayout.getMember(valueField).getOffset();
+        FieldElement headerField = coreClasses.getObjectHeaderField();
+        headerOffset = layout.getInstanceLayoutInfo(headerField.getEnclosingType()).getMember(headerField).getOffset();
+        headerSize = (int) headerField.getType().getSize();
+        identityHashCodeShift = coreClasses.getIdentityHashCodeShift();
         threadClass = new VmThreadClassImpl(this, bcc.findDefinedType("java/lang/Thread").load(), null);
         throwableClass = new VmThrowableClassImpl(this, bcc.findDefinedType("java/lang/Throwable").load(), null);
 
@@ -286,6 +297,48 @@ public final class VmImpl implements Vm {
         throwableClass.initializeConstantStaticFields(); // Has constant String fields that can't be initialized when we first process the class
     }
 
+    /**
+     * Get the identity hash code of the given object, assigning one if needed.  The hash code is stored in the
+     * object header, so that it is retained when the object is serialized into the initial heap.
+     *
+     * @param object the object (must not be {@code null})
+     * @return the identity hash code
+     */
+    int identityHashCode(VmObjectImpl object) {
+        MemoryImpl memory = object.getMemory();
+        long mask = (1L << CoreClasses.IDENTITY_HASH_CODE_BITS) - 1;
+        for (;;) {
+            long header = headerSize == 8 ? memory.load64(headerOffset, MemoryAtomicityMode.MONOTONIC) : memory.load32(headerOffset, MemoryAtomicityMode.MONOTONIC) & 0xFFFF_FFFFL;
+            int hashCode = (int) ((header >>> identityHashCodeShift) & mask);
+            if (hashCode != 0) {
+                return hashCode;
+            }
+            do {
+                hashCode = (int) (mixIdentityHashCode(identityHashCodeSeed.getAndAdd(0x9E3779B9)) & mask);
+            } while (hashCode == 0);
+            long update = header | (long) hashCode << identityHashCodeShift;
+            if (headerSize == 8) {
+                if (memory.compareAndExchange64(headerOffset, header, update, MemoryAtomicityMode.MONOTONIC) == header) {
+                    return hashCode;
+                }
+            } else {
+                if (memory.compareAndExchange32(headerOffset, (int) header, (int) update, MemoryAtomicityMode.MONOTONIC) == (int) header) {
+                    return hashCode;
+                }
+            }
+        }
+    }
+
+    private static int mixIdentityHashCode(int x) {
+        // murmur3 finalizer
+        x ^= x >>> 16;
+        x *= 0x85EB_CA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2_AE35;
+        x ^= x >>> 16;
+        return x;
+    }
+
     VmClassLoaderImpl getBootstrapClassLoader() {
         return bootstrapClassLoader;
     }
@@ -319,6 +372,10 @@ public final class VmImpl implements Vm {
             VmClassImpl vmHelpersClass = bootstrapClassLoader.loadClass("org/qbicc/runtime/main/VMHelpers");
 
             vmHelpersClass.registerInvokable("get_class", (thread, target, args) -> ((VmObjectImpl) args.get(0)).getVmClass());
+            vmHelpersClass.registerInvokable("identity_hash_code", (thread, target, args) -> {
+                VmObjectImpl object = (VmObjectImpl) args.get(0);
+                return Integer.valueOf(object == null ? 0 : identityHashCode(object));
+            });
             vmHelpersClass.registerInvokable("classForName", (thread, target, args) -> {
                 VmClassLoaderImpl classLoader = (VmClassLoaderImpl) args.get(2);
                 if (classLoader == null) {
@@ -336,6 +393,11 @@ public final class VmImpl implements Vm {
 
             objectModelClass.registerInvokable("type_id_of", (thread, target, args) -> ((VmObjectImpl) args.get(0)).getObjectTypeId());
 
+            // Object
+            VmClassImpl objectClass = bootstrapClassLoader.loadClass("java/lang/Object");
+
+            objectClass.registerInvokable("hashCode", (thread, target, args) -> Integer.valueOf(identityHashCode((VmObjectImpl) target)));
+
             // Unsafe
             VmClassImpl unsafeClass = bootstrapClassLoader.loadClass("jdk/internal/misc/Unsafe");
 
@@ -18,7 +18,7 @@ public abstract class ElfHeader {
     final ArrayList<ElfSymbolTableEntry> staticSymbols = new ArrayList<>(0);
     final ArrayList<ElfSymbolTableEntry> dynamicSymbols = new ArrayList<>(0);
     final Map<String, ArrayList<ElfRelocationTableEntry>> relocationEntries = new HashMap<>();
-    final Map<String, ElfSymbolTableEntry> symbolCache = new HashMap<>();
+    Map<String, ElfSymbolTableEntry> symbolIndex;
     final MappedBitSet<Elf.Flag> flags;
 
     ElfHeader(final BinaryBuffer backingBuffer, final long flagsOffset) {
@@ -389,21 +389,39 @@ public abstract class ElfHeader {
     }
 
     public ElfSymbolTableEntry findSymbol(String symbolName) {
-        // todo: support SHT_HASH
-        ElfSymbolTableEntry entry = symbolCache.get(symbolName);
-        if (entry != null) {
-            return entry;
+        Map<String, ElfSymbolTableEntry> symbolIndex = this.symbolIndex;
+        if (symbolIndex == null) {
+            symbolIndex = this.symbolIndex = buildSymbolIndex();
+        }
+        return symbolIndex.get(symbolName);
+    }
+
+    /**
+     * Index every named entry of the static symbol table in one pass, so that each lookup is a single hash probe
+     * rather than a scan from the start of the table.  The {@code SHT_HASH} and {@code .gnu.hash} sections are not
+     * used because they only cover the dynamic symbol table, and relocatable objects do not have them.
+     *
+     * @return the index of symbol names to the first symbol table entry with that name
+     */
+    private Map<String, ElfSymbolTableEntry> buildSymbolIndex() {
+        final ElfSectionHeaderEntry symtab = getSectionHeaderTableEntry(Elf.Section.Type.Std.SYM_TAB);
+        if (symtab == null) {
+            return Map.of();
         }
-        int idx = 0;
-        for (;;) {
-            entry = getSymbolTableEntry(idx++, false);
+        final long entrySize = symtab.getFixedEntrySize();
+        final int cnt = entrySize == 0 ? 0 : (int) (symtab.getSize() / entrySize);
+        final Map<String, ElfSymbolTableEntry> index = new HashMap<>(cnt);
+        for (int i = 0; i < cnt; i ++) {
+            final ElfSymbolTableEntry entry = getSymbolTableEntry(i, false);
             if (entry == null) {
-                return null;
-            } else if (entry.nameEquals(symbolName)) {
-                symbolCache.put(entry.getName(), entry);
-                return entry;
+                break;
+            }
+            final String name = entry.getName();
+            if (name != null && ! name.isEmpty()) {
+                index.putIfAbsent(name, entry);
             }
         }
+        return index;
     }
 
     public ElfSymbolTableEntry findSymbol(int index) {
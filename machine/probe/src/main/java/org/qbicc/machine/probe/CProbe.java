@@ -59,6 +59,29 @@ public final class CProbe {
         return new Builder();
     }
 
+    /**
+     * Get a builder for a probe which begins with all of the steps of the given probe.
+     *
+     * @param prefix the probe whose steps are copied (must not be {@code null})
+     * @return the new builder (not {@code null})
+     */
+    static Builder builder(CProbe prefix) {
+        return new Builder(prefix);
+    }
+
+    /**
+     * Get the C source of this probe.
+     *
+     * @return the probe source (not {@code null})
+     */
+    public String getSource() {
+        StringBuilder b = new StringBuilder();
+        for (Step item : items) {
+            item.appendTo(b);
+        }
+        return b.toString();
+    }
+
     /**
      * Run the probe.
      *
@@ -69,12 +92,40 @@ public final class CProbe {
      * @throws IOException if communications with or execution of the compiler failed
      */
     public Result run(CToolChain toolChain, ObjectFileProvider objectFileProvider, DiagnosticContext errorReporter) throws IOException {
-        final CCompilerInvoker inv = toolChain.newCompilerInvoker();
-        StringBuilder b = new StringBuilder();
-        for (Step item : items) {
-            item.appendTo(b);
+        return run(toolChain, objectFileProvider, errorReporter, null);
+    }
+
+    /**
+     * Run the probe, or get its result from the given cache if the same probe was previously run successfully
+     * with the same tool chain.
+     *
+     * @param toolChain the C tool chain to use (must not be {@code null})
+     * @param objectFileProvider the object file provider to use (must not be {@code null})
+     * @param errorReporter the context to report errors to, or {@code null} to skip error reporting
+     * @param cache the probe result cache, or {@code null} to always run the probe
+     * @return the result, or {@code null} if the compilation failed
+     * @throws IOException if communications with or execution of the compiler failed
+     */
+    public Result run(CToolChain toolChain, ObjectFileProvider objectFileProvider, DiagnosticContext errorReporter, CProbeCache cache) throws IOException {
+        String source = getSource();
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = cache.computeKey(toolChain, objectFileProvider, source);
+            Result result = cache.get(cacheKey);
+            if (result != null) {
+                return result;
+            }
         }
-        inv.setSource(InputSource.from(b));
+        Result result = compile(toolChain, objectFileProvider, errorReporter, source);
+        if (result != null && cacheKey != null) {
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    private Result compile(CToolChain toolChain, ObjectFileProvider objectFileProvider, DiagnosticContext errorReporter, String source) throws IOException {
+        final CCompilerInvoker inv = toolChain.newCompilerInvoker();
+        inv.setSource(InputSource.from(source));
         final Path path = Files.createTempFile("qbicc-probe-", "." + objectFileProvider.getObjectType().objectSuffix());
         try (Closeable c = ProbeUtil.deleting(path)) {
             inv.setOutputPath(path);
@@ -162,6 +213,15 @@ public final class CProbe {
             include("<limits.h>");
         }
 
+        Builder(CProbe prefix) {
+            // the prefix already has the default includes
+            items.addAll(prefix.items);
+            types.addAll(prefix.types);
+            constants.addAll(prefix.constants);
+            constantTypes.putAll(prefix.constantTypes);
+            functions.addAll(prefix.functions);
+        }
+
         // top level steps
 
         public Builder include(String include) {
@@ -691,6 +751,35 @@ public final class CProbe {
         public ByteOrder getByteOrder() {
             return byteOrder;
         }
+
+        Map<Type, Type.Info> getTypeInfos() {
+            return typeInfos;
+        }
+
+        Map<String, Type.Info> getMemberInfos(Type type) {
+            return memberInfos.getOrDefault(type, Map.of());
+        }
+
+        Map<String, FunctionInfo> getFunctionInfos() {
+            return functionInfos;
+        }
+
+        Map<String, ConstantInfo> getConstantInfos() {
+            return constantInfos;
+        }
+
+        /**
+         * Get a result which contains only the given type and its members, along with any functions and constants
+         * of this result.
+         *
+         * @param type the type (must not be {@code null})
+         * @return the result for the type (not {@code null})
+         */
+        Result forType(Type type) {
+            Type.Info info = typeInfos.get(type);
+            Map<String, Type.Info> members = memberInfos.get(type);
+            return new Result(info == null ? Map.of() : Map.of(type, info), members == null ? Map.of() : Map.of(type, members), functionInfos, constantInfos, byteOrder);
+        }
     }
 
     public static final class ConstantInfo {
@@ -738,6 +827,22 @@ public final class CProbe {
             return symbol;
         }
 
+        boolean isSigned() {
+            return signed;
+        }
+
+        boolean isUnsigned() {
+            return unsigned;
+        }
+
+        boolean isFloating() {
+            return floating;
+        }
+
+        boolean isBool() {
+            return bool;
+        }
+
         public int getValueAsInt() {
             return (int) getValueAsUnsignedLong();
         }
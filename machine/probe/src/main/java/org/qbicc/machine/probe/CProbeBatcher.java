@@ -0,0 +1,209 @@
+package org.qbicc.machine.probe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.smallrye.common.constraint.Assert;
+import org.jboss.logging.Logger;
+import org.qbicc.context.DiagnosticContext;
+import org.qbicc.machine.object.ObjectFileProvider;
+import org.qbicc.machine.tool.CToolChain;
+
+/**
+ * A service which combines concurrent type probes into a single compilation.  Probes are grouped by their
+ * header, which is a probe containing only the includes and defines that the probed types depend on.
+ * <p>
+ * While a batch of a group is being compiled, new requests for that group accumulate; once the batch is complete,
+ * one of the waiting threads compiles all of the accumulated requests as the next batch.  If a batch fails to
+ * compile, each of its types is probed on its own so that errors are reported against the type which caused them.
+ * <p>
+ * Each request gets a result which contains only its own type, and results are cached by the probe of each single
+ * type, so that they can be found again regardless of which batch they were compiled in.
+ */
+public final class CProbeBatcher {
+    private static final Logger log = Logger.getLogger("org.qbicc.machine.probe.batch");
+
+    private final CToolChain toolChain;
+    private final ObjectFileProvider objectFileProvider;
+    private final DiagnosticContext errorReporter;
+    private final CProbeCache cache;
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param toolChain the C tool chain to use (must not be {@code null})
+     * @param objectFileProvider the object file provider to use (must not be {@code null})
+     * @param errorReporter the context to report errors to, or {@code null} to skip error reporting
+     * @param cache the probe result cache, or {@code null} to always run probes
+     */
+    public CProbeBatcher(final CToolChain toolChain, final ObjectFileProvider objectFileProvider, final DiagnosticContext errorReporter, final CProbeCache cache) {
+        this.toolChain = Assert.checkNotNullParam("toolChain", toolChain);
+        this.objectFileProvider = Assert.checkNotNullParam("objectFileProvider", objectFileProvider);
+        this.errorReporter = errorReporter;
+        this.cache = cache;
+    }
+
+    /**
+     * Probe a type, possibly along with other types which are concurrently probed with the same header.
+     *
+     * @param header the probe containing the includes and defines needed by the type (must not be {@code null})
+     * @param type the type to probe (must not be {@code null})
+     * @return a result which contains the type, or {@code null} if the compilation failed
+     * @throws IOException if communications with or execution of the compiler failed
+     */
+    public CProbe.Result probeType(CProbe header, CProbe.Type type) throws IOException {
+        Assert.checkNotNullParam("header", header);
+        Assert.checkNotNullParam("type", type);
+        CProbe single = CProbe.builder(header).probeType(type).build();
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = cache.computeKey(toolChain, objectFileProvider, single.getSource());
+            CProbe.Result result = cache.get(cacheKey);
+            if (result != null) {
+                return result;
+            }
+        }
+        Group group = groups.computeIfAbsent(header.getSource(), k -> new Group(header));
+        return group.probe(new Request(type, single, cacheKey));
+    }
+
+    final class Group {
+        private final CProbe header;
+        // all guarded by this
+        private List<Request> pending = new ArrayList<>();
+        private boolean running;
+
+        Group(final CProbe header) {
+            this.header = header;
+        }
+
+        CProbe.Result probe(Request request) throws IOException {
+            List<Request> batch;
+            boolean intr = false;
+            try {
+                synchronized (this) {
+                    pending.add(request);
+                    while (running && ! request.done) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            intr = true;
+                        }
+                    }
+                    if (request.done) {
+                        return request.getResult();
+                    }
+                    // our request has not been run by anyone else, so run it along with every other pending request
+                    running = true;
+                    batch = pending;
+                    pending = new ArrayList<>();
+                }
+            } finally {
+                if (intr) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                run(batch);
+            } catch (Throwable t) {
+                // let the waiting threads fail too, rather than finding no result
+                for (Request item : batch) {
+                    if (item.result == null && item.exception == null) {
+                        item.problem = t;
+                    }
+                }
+                throw t;
+            } finally {
+                synchronized (this) {
+                    running = false;
+                    for (Request item : batch) {
+                        item.done = true;
+                    }
+                    notifyAll();
+                }
+            }
+            return request.getResult();
+        }
+
+        private void run(List<Request> batch) {
+            Set<CProbe.Type> types = new LinkedHashSet<>();
+            for (Request item : batch) {
+                types.add(item.type);
+            }
+            if (types.size() == 1) {
+                runSingly(batch);
+                return;
+            }
+            CProbe.Builder builder = CProbe.builder(header);
+            for (CProbe.Type type : types) {
+                builder.probeType(type);
+            }
+            CProbe.Result result;
+            try {
+                // errors are reported when the types are probed singly
+                result = builder.build().run(toolChain, objectFileProvider, null);
+            } catch (IOException e) {
+                for (Request item : batch) {
+                    item.exception = e;
+                }
+                return;
+            }
+            if (result == null) {
+                log.debugf("Probe batch of %d types failed; probing each type separately", Integer.valueOf(types.size()));
+                runSingly(batch);
+                return;
+            }
+            log.debugf("Probed %d types in one batch", Integer.valueOf(types.size()));
+            for (Request item : batch) {
+                item.result = result.forType(item.type);
+                if (item.cacheKey != null) {
+                    cache.put(item.cacheKey, item.result);
+                }
+            }
+        }
+
+        private void runSingly(List<Request> batch) {
+            for (Request item : batch) {
+                try {
+                    item.result = item.single.run(toolChain, objectFileProvider, errorReporter, cache);
+                } catch (IOException e) {
+                    item.exception = e;
+                }
+            }
+        }
+    }
+
+    static final class Request {
+        final CProbe.Type type;
+        final CProbe single;
+        final String cacheKey;
+        // written by the running thread before done is set; read after done is observed
+        CProbe.Result result;
+        IOException exception;
+        Throwable problem;
+        boolean done;
+
+        Request(final CProbe.Type type, final CProbe single, final String cacheKey) {
+            this.type = type;
+            this.single = single;
+            this.cacheKey = cacheKey;
+        }
+
+        CProbe.Result getResult() throws IOException {
+            IOException exception = this.exception;
+            if (exception != null) {
+                throw new IOException(exception);
+            }
+            Throwable problem = this.problem;
+            if (problem != null) {
+                throw new IllegalStateException("Type probe failed in another thread", problem);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.qbicc.machine.probe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.smallrye.common.constraint.Assert;
+import org.jboss.logging.Logger;
+import org.qbicc.machine.object.ObjectFileProvider;
+import org.qbicc.machine.tool.CToolChain;
+
+/**
+ * A cache of probe results, which is persisted across builds.  Entries are keyed by a hash of the identity of the
+ * tool chain, the target platform, and the complete probe source, which includes all of the includes and defines
+ * of the probe.  Since the target headers are considered to be part of the tool chain, a change to the headers
+ * without a corresponding change in tool chain version requires the cache to be cleared.
+ * <p>
+ * Only successful results are cached, so that failed probes are always rerun and their diagnostics reported.
+ */
+public final class CProbeCache {
+    private static final Logger log = Logger.getLogger("org.qbicc.machine.probe.cache");
+
+    private static final int FORMAT_VERSION = 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path cacheDirectory;
+    private final ConcurrentHashMap<String, CProbe.Result> results = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param cacheDirectory the directory in which cache entries are stored (must not be {@code null})
+     */
+    public CProbeCache(final Path cacheDirectory) {
+        this.cacheDirectory = Assert.checkNotNullParam("cacheDirectory", cacheDirectory);
+    }
+
+    /**
+     * Compute the cache key of a probe.
+     *
+     * @param toolChain the C tool chain that would run the probe (must not be {@code null})
+     * @param objectFileProvider the object file provider that would read the probe output (must not be {@code null})
+     * @param source the probe source (must not be {@code null})
+     * @return the cache key (not {@code null})
+     */
+    String computeKey(CToolChain toolChain, ObjectFileProvider objectFileProvider, CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder b = new StringBuilder();
+        b.append(toolChain.getImplementationName()).append(' ').append(toolChain.getVersion()).append(';');
+        b.append(toolChain.getPlatform()).append(';');
+        b.append(objectFileProvider.getObjectType()).append(';');
+        b.append(source);
+        byte[] hash = digest.digest(b.toString().getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[hash.length << 1];
+        for (int i = 0; i < hash.length; i ++) {
+            chars[i << 1] = HEX[(hash[i] >> 4) & 0xf];
+            chars[(i << 1) + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Get the cached result for the given key, if any.
+     *
+     * @param key the cache key (must not be {@code null})
+     * @return the cached result, or {@code null} if there is none
+     */
+    CProbe.Result get(String key) {
+        CProbe.Result result = results.get(key);
+        if (result != null) {
+            return result;
+        }
+        Path entryPath = getEntryPath(key);
+        try (InputStream is = Files.newInputStream(entryPath)) {
+            result = read(new DataInputStream(new BufferedInputStream(is)));
+        } catch (NoSuchFileException e) {
+            log.debugf("Cache miss for probe %s", key);
+            return null;
+        } catch (IOException e) {
+            log.debugf(e, "Failed to read probe cache entry %s", entryPath);
+            return null;
+        }
+        log.debugf("Cache hit for probe %s", key);
+        CProbe.Result appearing = results.putIfAbsent(key, result);
+        return appearing != null ? appearing : result;
+    }
+
+    /**
+     * Store a successful result into the cache.  Failures to persist the result are logged and otherwise ignored.
+     *
+     * @param key the cache key (must not be {@code null})
+     * @param result the probe result (must not be {@code null})
+     */
+    void put(String key, CProbe.Result result) {
+        if (results.putIfAbsent(key, result) != null) {
+            return;
+        }
+        Path entryPath = getEntryPath(key);
+        Path tmpPath = null;
+        try {
+            Path parent = entryPath.getParent();
+            Files.createDirectories(parent);
+            // write to a temporary file first so that concurrent builds never observe a partial entry
+            tmpPath = Files.createTempFile(parent, key, ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmpPath)) {
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+                write(dos, result);
+                dos.flush();
+            }
+            try {
+                Files.move(tmpPath, entryPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmpPath = null;
+        } catch (IOException e) {
+            log.debugf(e, "Failed to store probe %s in cache", key);
+        } finally {
+            if (tmpPath != null) {
+                try {
+                    Files.deleteIfExists(tmpPath);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Path getEntryPath(String key) {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key + ".probe");
+    }
+
+    private static void write(DataOutputStream os, CProbe.Result result) throws IOException {
+        os.writeInt(FORMAT_VERSION);
+        os.writeBoolean(result.getByteOrder() == ByteOrder.BIG_ENDIAN);
+        Map<CProbe.Type, CProbe.Type.Info> typeInfos = result.getTypeInfos();
+        os.writeInt(typeInfos.size());
+        for (Map.Entry<CProbe.Type, CProbe.Type.Info> entry : typeInfos.entrySet()) {
+            CProbe.Type type = entry.getKey();
+            os.writeUTF(type.getName());
+            os.writeUTF(type.getQualifier().name());
+            os.writeInt(type.getMembers().size());
+            for (String member : type.getMembers()) {
+                os.writeUTF(member);
+            }
+            writeInfo(os, entry.getValue());
+            Map<String, CProbe.Type.Info> memberInfos = result.getMemberInfos(type);
+            os.writeInt(memberInfos.size());
+            for (Map.Entry<String, CProbe.Type.Info> memberEntry : memberInfos.entrySet()) {
+                os.writeUTF(memberEntry.getKey());
+                writeInfo(os, memberEntry.getValue());
+            }
+        }
+        Map<String, CProbe.FunctionInfo> functionInfos = result.getFunctionInfos();
+        os.writeInt(functionInfos.size());
+        for (Map.Entry<String, CProbe.FunctionInfo> entry : functionInfos.entrySet()) {
+            os.writeUTF(entry.getKey());
+            writeNullableString(os, entry.getValue().getResolvedName());
+        }
+        Map<String, CProbe.ConstantInfo> constantInfos = result.getConstantInfos();
+        os.writeInt(constantInfos.size());
+        for (Map.Entry<String, CProbe.ConstantInfo> entry : constantInfos.entrySet()) {
+            CProbe.ConstantInfo info = entry.getValue();
+            os.writeUTF(entry.getKey());
+            os.writeBoolean(info.isDefined());
+            byte[] value = info.getValue();
+            if (value == null) {
+                os.writeInt(-1);
+            } else {
+                os.writeInt(value.length);
+                os.write(value);
+            }
+            writeNullableString(os, info.getSymbol());
+            os.writeBoolean(info.isSigned());
+            os.writeBoolean(info.isUnsigned());
+            os.writeBoolean(info.isFloating());
+            os.writeBoolean(info.isBool());
+        }
+    }
+
+    private static CProbe.Result read(DataInputStream is) throws IOException {
+        if (is.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown probe cache entry format");
+        }
+        ByteOrder byteOrder = is.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        int cnt = is.readInt();
+        Map<CProbe.Type, CProbe.Type.Info> typeInfos = new HashMap<>(cnt);
+        Map<CProbe.Type, Map<String, CProbe.Type.Info>> memberInfos = new HashMap<>(cnt);
+        for (int i = 0; i < cnt; i ++) {
+            CProbe.Type.Builder typeBuilder = CProbe.Type.builder();
+            typeBuilder.setName(is.readUTF());
+            try {
+                typeBuilder.setQualifier(Qualifier.valueOf(is.readUTF()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e);
+            }
+            int memberCnt = is.readInt();
+            for (int j = 0; j < memberCnt; j ++) {
+                typeBuilder.addMember(is.readUTF());
+            }
+            CProbe.Type type = typeBuilder.build();
+            typeInfos.put(type, readInfo(is));
+            int memberInfoCnt = is.readInt();
+            Map<String, CProbe.Type.Info> memberInfo = new HashMap<>(memberInfoCnt);
+            for (int j = 0; j < memberInfoCnt; j ++) {
+                String memberName = is.readUTF();
+                memberInfo.put(memberName, readInfo(is));
+            }
+            memberInfos.put(type, memberInfo);
+        }
+        cnt = is.readInt();
+        Map<String, CProbe.FunctionInfo> functionInfos = new HashMap<>(cnt);
+        for (int i = 0; i < cnt; i ++) {
+            String name = is.readUTF();
+            functionInfos.put(name, new CProbe.FunctionInfo(readNullableString(is)));
+        }
+        cnt = is.readInt();
+        Map<String, CProbe.ConstantInfo> constantInfos = new HashMap<>(cnt);
+        for (int i = 0; i < cnt; i ++) {
+            String name = is.readUTF();
+            boolean defined = is.readBoolean();
+            int size = is.readInt();
+            byte[] value;
+            if (size == -1) {
+                value = null;
+            } else {
+                value = new byte[size];
+                is.readFully(value);
+            }
+            String symbol = readNullableString(is);
+            boolean signed = is.readBoolean();
+            boolean unsigned = is.readBoolean();
+            boolean floating = is.readBoolean();
+            boolean bool = is.readBoolean();
+            constantInfos.put(name, new CProbe.ConstantInfo(defined, value, symbol, byteOrder, signed, unsigned, floating, bool));
+        }
+        return new CProbe.Result(typeInfos, memberInfos, functionInfos, constantInfos, byteOrder);
+    }
+
+    private static void writeInfo(DataOutputStream os, CProbe.Type.Info info) throws IOException {
+        os.writeLong(info.getSize());
+        os.writeLong(info.getAlign());
+        os.writeLong(info.getOffset());
+        os.writeBoolean(info.isSigned());
+        os.writeBoolean(info.isUnsigned());
+        os.writeBoolean(info.isFloating());
+    }
+
+    private static CProbe.Type.Info readInfo(DataInputStream is) throws IOException {
+        long size = is.readLong();
+        long align = is.readLong();
+        long offset = is.readLong();
+        boolean signed = is.readBoolean();
+        boolean unsigned = is.readBoolean();
+        boolean floating = is.readBoolean();
+        return new CProbe.Type.Info(size, align, offset, signed, unsigned, floating);
+    }
+
+    private static void writeNullableString(DataOutputStream os, String str) throws IOException {
+        os.writeBoolean(str != null);
+        if (str != null) {
+            os.writeUTF(str);
+        }
+    }
+
+    private static String readNullableString(DataInputStream is) throws IOException {
+        return is.readBoolean() ? is.readUTF() : null;
+    }
+}
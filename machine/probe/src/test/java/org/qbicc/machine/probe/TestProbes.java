@@ -2,13 +2,22 @@ package org.qbicc.machine.probe;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.qbicc.machine.arch.ObjectType;
 import org.qbicc.machine.arch.Platform;
 import org.qbicc.machine.object.ObjectFileProvider;
+import org.qbicc.machine.tool.CCompilerInvoker;
 import org.qbicc.machine.tool.CToolChain;
+import org.qbicc.machine.tool.LinkerInvoker;
 import org.qbicc.machine.tool.ToolProvider;
 import org.qbicc.machine.tool.ToolUtil;
 import org.junit.jupiter.api.BeforeAll;
@@ -96,4 +105,127 @@ public class TestProbes {
         assertTrue(result.getConstantInfo("INT8_MAX").isDefined());
         assertEquals(Byte.MAX_VALUE, result.getConstantInfo("INT8_MAX").getValueAsInt());
     }
+
+    @Test
+    public void testCachedProbe() throws Exception {
+        final CProbe.Type int32_t = CProbe.Type.builder().setName("int32_t").build();
+        final CProbe probe = CProbe.builder().include("<stdint.h>").probeType(int32_t).probeConstant("INT8_MAX").build();
+        final Path cacheDir = Files.createTempDirectory("qbicc-probe-cache-");
+        final CProbe.Result result = probe.run(compiler, objectFileProvider, null, new CProbeCache(cacheDir));
+        assertNotNull(result);
+        try (Stream<Path> entries = Files.walk(cacheDir)) {
+            assertEquals(1, entries.filter(p -> p.toString().endsWith(".probe")).count());
+        }
+        // a new cache instance reads the result back from disk
+        final CProbe.Result cached = probe.run(compiler, objectFileProvider, null, new CProbeCache(cacheDir));
+        assertNotNull(cached);
+        assertNotSame(result, cached);
+        assertEquals(result.getTypeInfo(int32_t).getSize(), cached.getTypeInfo(int32_t).getSize());
+        assertEquals(result.getTypeInfo(int32_t).getAlign(), cached.getTypeInfo(int32_t).getAlign());
+        assertTrue(cached.getTypeInfo(int32_t).isSigned());
+        assertTrue(cached.getConstantInfo("INT8_MAX").isDefined());
+        assertEquals(Byte.MAX_VALUE, cached.getConstantInfo("INT8_MAX").getValueAsInt());
+        assertEquals(result.getByteOrder(), cached.getByteOrder());
+    }
+
+    @Test
+    public void testBatchedProbes() throws Exception {
+        final CProbe header = CProbe.builder().include("<stdint.h>").build();
+        final AtomicInteger compilations = new AtomicInteger();
+        final CountDownLatch firstCompilationStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstCompilation = new CountDownLatch(1);
+        final CountingToolChain toolChain = new CountingToolChain(compiler, compilations, firstCompilationStarted, releaseFirstCompilation);
+        final CProbeBatcher batcher = new CProbeBatcher(toolChain, objectFileProvider, null, null);
+        final String[] names = { "int8_t", "int16_t", "int32_t", "int64_t", "uint8_t", "uint16_t", "uint32_t", "uint64_t" };
+        final CProbe.Result[] results = new CProbe.Result[names.length];
+        final Thread[] threads = new Thread[names.length];
+        for (int i = 0; i < names.length; i ++) {
+            final int idx = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    results[idx] = batcher.probeType(header, CProbe.Type.builder().setName(names[idx]).build());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        // the first probe is compiled on its own, and its compilation is held until all of the others are pending
+        threads[0].start();
+        firstCompilationStarted.await();
+        for (int i = 1; i < names.length; i ++) {
+            threads[i].start();
+        }
+        for (int i = 1; i < names.length; i ++) {
+            // a pending request waits on its group until the running batch is complete
+            while (threads[i].getState() != Thread.State.WAITING) {
+                assertTrue(threads[i].isAlive());
+                Thread.sleep(1);
+            }
+        }
+        releaseFirstCompilation.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // the probes which arrived while the first one was compiled are compiled together
+        assertEquals(2, compilations.get());
+        for (int i = 0; i < names.length; i ++) {
+            assertNotNull(results[i]);
+            CProbe.Type.Info info = results[i].getTypeInfo(CProbe.Type.builder().setName(names[i]).build());
+            assertEquals(1L << (i & 3), info.getSize());
+            assertEquals(i < 4, info.isSigned());
+            // each result only contains the type which was probed
+            final CProbe.Result result = results[i];
+            final CProbe.Type other = CProbe.Type.builder().setName(names[(i + 1) % names.length]).build();
+            assertThrows(NoSuchElementException.class, () -> result.getTypeInfo(other));
+        }
+        // a type which does not exist fails to compile on its own, and has no result
+        assertNull(batcher.probeType(header, CProbe.Type.builder().setName("no_such_type_t").build()));
+    }
+
+    static final class CountingToolChain implements CToolChain {
+        private final CToolChain delegate;
+        private final AtomicInteger compilations;
+        private final CountDownLatch firstCompilationStarted;
+        private final CountDownLatch releaseFirstCompilation;
+
+        CountingToolChain(final CToolChain delegate, final AtomicInteger compilations, final CountDownLatch firstCompilationStarted, final CountDownLatch releaseFirstCompilation) {
+            this.delegate = delegate;
+            this.compilations = compilations;
+            this.firstCompilationStarted = firstCompilationStarted;
+            this.releaseFirstCompilation = releaseFirstCompilation;
+        }
+
+        public CCompilerInvoker newCompilerInvoker() {
+            if (compilations.incrementAndGet() == 1) {
+                firstCompilationStarted.countDown();
+                try {
+                    releaseFirstCompilation.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return delegate.newCompilerInvoker();
+        }
+
+        public LinkerInvoker newLinkerInvoker() {
+            return delegate.newLinkerInvoker();
+        }
+
+        public String getImplementationName() {
+            return delegate.getImplementationName();
+        }
+
+        public Platform getPlatform() {
+            return delegate.getPlatform();
+        }
+
+        public String getVersion() {
+            return delegate.getVersion();
+        }
+
+        public int compareVersionTo(final String version) {
+            return delegate.compareVersionTo(version);
+        }
+    }
 }
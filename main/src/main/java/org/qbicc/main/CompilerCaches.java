@@ -0,0 +1,97 @@
+package org.qbicc.main;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.qbicc.driver.ClassPathCache;
+import org.qbicc.machine.arch.Platform;
+import org.qbicc.machine.probe.CProbeCache;
+import org.qbicc.machine.tool.CToolChain;
+import org.qbicc.tool.llvm.LlvmToolChain;
+
+/**
+ * State which does not depend on the application being compiled, and which can therefore be kept across
+ * compilations in the same process: opened boot class path archives along with the scans of the class files loaded
+ * from them, probe caches, and discovered tool chains.
+ * <p>
+ * Defined types and type system state are not kept, because they are bound to the class contexts and the target of
+ * a single compilation.
+ * <p>
+ * Failed tool chain lookups are not cached, so that a tool chain which is installed later is found.
+ */
+final class CompilerCaches implements Closeable {
+    private final ClassPathCache classPathCache = new ClassPathCache();
+    private final ConcurrentHashMap<Path, CProbeCache> probeCaches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Platform, CToolChain> toolChains = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Platform, LlvmToolChain> llvmToolChains = new ConcurrentHashMap<>();
+
+    CompilerCaches() {}
+
+    ClassPathCache getClassPathCache() {
+        return classPathCache;
+    }
+
+    /**
+     * Get the probe cache for the given directory.  Sharing the cache instance allows results to be found in memory.
+     *
+     * @param cacheDirectory the cache directory, or {@code null} for none
+     * @return the probe cache, or {@code null} if {@code cacheDirectory} is {@code null}
+     */
+    CProbeCache getProbeCache(Path cacheDirectory) {
+        return cacheDirectory == null ? null : probeCaches.computeIfAbsent(cacheDirectory.toAbsolutePath().normalize(), CProbeCache::new);
+    }
+
+    /**
+     * Find the first working C tool chain for the given platform.
+     *
+     * @param platform the target platform (must not be {@code null})
+     * @return the tool chain, or {@code null} if none was found
+     */
+    CToolChain findToolChain(Platform platform) {
+        CToolChain toolChain = toolChains.get(platform);
+        if (toolChain == null) {
+            Iterator<CToolChain> iterator = CToolChain.findAllCToolChains(platform, t -> true, Main.class.getClassLoader()).iterator();
+            if (! iterator.hasNext()) {
+                return null;
+            }
+            toolChain = iterator.next();
+            CToolChain appearing = toolChains.putIfAbsent(platform, toolChain);
+            if (appearing != null) {
+                toolChain = appearing;
+            }
+        }
+        return toolChain;
+    }
+
+    /**
+     * Find the first LLVM tool chain of a supported version for the given platform.
+     *
+     * @param platform the target platform (must not be {@code null})
+     * @return the tool chain, or {@code null} if none was found
+     */
+    LlvmToolChain findLlvmToolChain(Platform platform) {
+        LlvmToolChain llvmToolChain = llvmToolChains.get(platform);
+        if (llvmToolChain == null) {
+            for (LlvmToolChain candidate : LlvmToolChain.findAllLlvmToolChains(platform, t -> true, Main.class.getClassLoader())) {
+                if (candidate.compareVersionTo("12") >= 0) {
+                    llvmToolChain = candidate;
+                    break;
+                }
+            }
+            if (llvmToolChain == null) {
+                return null;
+            }
+            LlvmToolChain appearing = llvmToolChains.putIfAbsent(platform, llvmToolChain);
+            if (appearing != null) {
+                llvmToolChain = appearing;
+            }
+        }
+        return llvmToolChain;
+    }
+
+    public void close() {
+        classPathCache.close();
+    }
+}
@@ -0,0 +1,284 @@
+package org.qbicc.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.jboss.logmanager.LogManager;
+import picocli.CommandLine;
+
+/**
+ * A long-lived compiler process which serves repeated compilations, so that successive builds skip JVM startup
+ * and reuse the opened boot class path archives, scanned class files, probe results, and tool chains (see
+ * {@link CompilerCaches}).  Types are still defined and resolved anew by each compilation, and logger levels which
+ * are changed by the options of a compilation are restored after it.  Compilations are run one at a time.
+ * <p>
+ * The daemon listens on a loopback socket.  Its port and a random token, which clients must present, are published
+ * in the daemon file, which is only readable by its owner.  Clients send their command line and working directory,
+ * and receive the diagnostic output followed by the exit code.  Log output remains in the daemon process.
+ */
+public final class CompilerDaemon {
+    private static final Logger log = Logger.getLogger("org.qbicc.main.daemon");
+
+    private static final int PROTOCOL_VERSION = 1;
+    private static final int STOP = -1;
+    private static final int FRAME_EXIT = 0;
+    private static final int FRAME_OUTPUT = 1;
+
+    private CompilerDaemon() {}
+
+    public static void main(String[] args) {
+        System.setProperty("java.util.logging.manager", LogManager.class.getName());
+        Options options = new Options();
+        CommandLine commandLine = new CommandLine(options);
+        try {
+            if (CommandLine.printHelpIfRequested(commandLine.parseArgs(args))) {
+                return;
+            }
+        } catch (CommandLine.ParameterException ex) {
+            System.err.println(ex.getMessage());
+            commandLine.usage(System.err);
+            System.exit(1);
+        }
+        Path daemonFile = options.daemonFile != null ? options.daemonFile : getDefaultDaemonFile();
+        try {
+            if (options.stop) {
+                stop(daemonFile);
+            } else {
+                serve(daemonFile, options.idleTimeout);
+            }
+        } catch (IOException e) {
+            System.err.printf("Compiler daemon failed: %s%n", e);
+            System.exit(1);
+        }
+    }
+
+    static Path getDefaultDaemonFile() {
+        return Path.of(System.getProperty("user.home"), ".qbicc", "daemon");
+    }
+
+    /**
+     * Run a compilation in the daemon.
+     *
+     * @param daemonFile the daemon file (must not be {@code null})
+     * @param args the command line arguments of the compilation (must not be {@code null})
+     * @param err the stream to which diagnostic output is copied (must not be {@code null})
+     * @return the exit code of the compilation
+     * @throws IOException if the daemon is not running or the connection failed
+     */
+    static int compile(Path daemonFile, String[] args, PrintStream err) throws IOException {
+        try (Socket socket = connect(daemonFile)) {
+            DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            os.writeInt(args.length);
+            os.writeUTF(Path.of("").toAbsolutePath().toString());
+            for (String arg : args) {
+                os.writeUTF(arg);
+            }
+            os.flush();
+            return readResponse(socket, err);
+        }
+    }
+
+    static void stop(Path daemonFile) throws IOException {
+        try (Socket socket = connect(daemonFile)) {
+            DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+            os.writeInt(STOP);
+            os.flush();
+            readResponse(socket, System.err);
+        }
+    }
+
+    private static Socket connect(Path daemonFile) throws IOException {
+        List<String> lines = Files.readAllLines(daemonFile, StandardCharsets.UTF_8);
+        if (lines.size() < 2) {
+            throw new IOException("Invalid daemon file " + daemonFile);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(lines.get(0));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid daemon file " + daemonFile, e);
+        }
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+            os.writeInt(PROTOCOL_VERSION);
+            os.writeUTF(lines.get(1));
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static int readResponse(Socket socket, PrintStream err) throws IOException {
+        DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        for (;;) {
+            int frame = is.readUnsignedByte();
+            if (frame == FRAME_EXIT) {
+                err.flush();
+                return is.readInt();
+            } else if (frame == FRAME_OUTPUT) {
+                byte[] bytes = new byte[is.readInt()];
+                is.readFully(bytes);
+                err.write(bytes);
+            } else {
+                throw new IOException("Unknown response frame " + frame);
+            }
+        }
+    }
+
+    static void serve(Path daemonFile, int idleTimeout) throws IOException {
+        String token = newToken();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, TimeUnit.SECONDS.toMillis(idleTimeout)));
+            writeDaemonFile(daemonFile, server.getLocalPort(), token);
+            log.infof("Compiler daemon listening on port %d", Integer.valueOf(server.getLocalPort()));
+            try (CompilerCaches caches = new CompilerCaches()) {
+                for (;;) {
+                    Socket socket;
+                    try {
+                        socket = server.accept();
+                    } catch (SocketTimeoutException e) {
+                        log.infof("Compiler daemon was idle for %d seconds; stopping", Integer.valueOf(idleTimeout));
+                        return;
+                    }
+                    try (socket) {
+                        if (! serve(socket, token, caches)) {
+                            log.info("Compiler daemon stopped by client");
+                            return;
+                        }
+                    } catch (IOException e) {
+                        log.debugf(e, "Compiler daemon client connection failed");
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(daemonFile);
+            }
+        }
+    }
+
+    private static boolean serve(Socket socket, String token, CompilerCaches caches) throws IOException {
+        DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        int version = is.readInt();
+        String clientToken = is.readUTF();
+        if (version != PROTOCOL_VERSION || ! MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Compiler daemon rejected a client with an unknown protocol version or token");
+            return true;
+        }
+        int argc = is.readInt();
+        if (argc == STOP) {
+            writeExit(os, 0);
+            return false;
+        }
+        Path workingDirectory = Path.of(is.readUTF());
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i ++) {
+            args[i] = is.readUTF();
+        }
+        PrintStream err = new PrintStream(new FrameOutputStream(os), true, StandardCharsets.UTF_8);
+        int exit;
+        try {
+            exit = Main.run(args, workingDirectory, err, caches);
+        } catch (Throwable t) {
+            t.printStackTrace(err);
+            exit = 1;
+        }
+        err.flush();
+        writeExit(os, exit);
+        return true;
+    }
+
+    private static void writeExit(DataOutputStream os, int exit) throws IOException {
+        os.writeByte(FRAME_EXIT);
+        os.writeInt(exit);
+        os.flush();
+    }
+
+    private static void writeDaemonFile(Path daemonFile, int port, String token) throws IOException {
+        Path parent = daemonFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmpPath;
+        try {
+            tmpPath = Files.createTempFile(parent, "daemon", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            tmpPath = Files.createTempFile(parent, "daemon", ".tmp");
+        }
+        Files.writeString(tmpPath, port + "\n" + token + "\n");
+        try {
+            Files.move(tmpPath, daemonFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, daemonFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder b = new StringBuilder(bytes.length << 1);
+        for (byte item : bytes) {
+            b.append(Character.forDigit((item >> 4) & 0xf, 16)).append(Character.forDigit(item & 0xf, 16));
+        }
+        return b.toString();
+    }
+
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream os;
+
+        FrameOutputStream(final DataOutputStream os) {
+            this.os = os;
+        }
+
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len > 0) {
+                synchronized (os) {
+                    os.writeByte(FRAME_OUTPUT);
+                    os.writeInt(len);
+                    os.write(b, off, len);
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (os) {
+                os.flush();
+            }
+        }
+    }
+
+    @CommandLine.Command(name = "qbicc-daemon", mixinStandardHelpOptions = true)
+    static final class Options {
+        @CommandLine.Option(names = "--daemon-file", description = "The file through which clients find the daemon")
+        Path daemonFile;
+
+        @CommandLine.Option(names = "--idle-timeout", defaultValue = "10800", description = "Stop after the given number of seconds without a compilation, or 0 to never stop")
+        int idleTimeout;
+
+        @CommandLine.Option(names = "--stop", description = "Stop the running daemon")
+        boolean stop;
+    }
+}
@@ -1,10 +1,15 @@
 package org.qbicc.main;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
@@ -31,6 +36,7 @@ import org.qbicc.interpreter.impl.VmImpl;
 import org.qbicc.machine.arch.Platform;
 import org.qbicc.machine.object.ObjectFileProvider;
 import org.qbicc.machine.probe.CProbe;
+import org.qbicc.machine.probe.CProbeCache;
 import org.qbicc.machine.tool.CToolChain;
 import org.qbicc.plugin.coreclasses.BasicInitializationBasicBlockBuilder;
 import org.qbicc.plugin.coreclasses.BasicInitializationManualInitializer;
@@ -63,6 +69,7 @@ import org.qbicc.plugin.lowering.LocalVariableLoweringBasicBlockBuilder;
 import org.qbicc.plugin.layout.ObjectAccessLoweringBuilder;
 import org.qbicc.plugin.linker.LinkStage;
 import org.qbicc.plugin.llvm.LLVMCompileStage;
+import org.qbicc.plugin.llvm.LLVMConfiguration;
 import org.qbicc.plugin.llvm.LLVMGenerator;
 import org.qbicc.plugin.lowering.BooleanAccessBasicBlockBuilder;
 import org.qbicc.plugin.lowering.FunctionLoweringElementHandler;
@@ -74,6 +81,7 @@ import org.qbicc.plugin.lowering.VMHelpersSetupHook;
 import org.qbicc.plugin.main_method.AddMainClassHook;
 import org.qbicc.plugin.main_method.MainMethod;
 import org.qbicc.plugin.methodinfo.MethodDataEmitter;
+import org.qbicc.plugin.metrics.Metrics;
 import org.qbicc.plugin.native_.ConstTypeResolver;
 import org.qbicc.plugin.native_.ConstantDefiningBasicBlockBuilder;
 import org.qbicc.plugin.native_.ExternExportTypeBuilder;
@@ -87,6 +95,7 @@ import org.qbicc.plugin.native_.PointerBasicBlockBuilder;
 import org.qbicc.plugin.native_.PointerTypeResolver;
 import org.qbicc.plugin.native_.StructMemberAccessBasicBlockBuilder;
 import org.qbicc.plugin.objectmonitor.ObjectMonitorBasicBlockBuilder;
+import org.qbicc.plugin.opt.GlobalValueNumberingBasicBlockBuilder;
 import org.qbicc.plugin.opt.GotoRemovingVisitor;
 import org.qbicc.plugin.opt.InitializedStaticFieldBasicBlockBuilder;
 import org.qbicc.plugin.opt.LocalMemoryTrackingBasicBlockBuilder;
@@ -131,10 +140,19 @@ public class Main implements Callable<DiagnosticContext> {
     private final boolean optMemoryTracking;
     private final boolean optPhis;
     private final boolean optGotos;
+    private final boolean optGvn;
     private final boolean optInlining;
     private final boolean initBuildTime;
     private final Platform platform;
     private final boolean smallTypeIds;
+    private final Path llvmCachePath;
+    private final Path probeCachePath;
+    private final boolean llvmStreaming;
+    private final boolean llvmEmitObjects;
+    private final int llvmPartitions;
+    private final Path metricsReportPath;
+    private final Path metricsJsonPath;
+    private final CompilerCaches caches;
 
     Main(Builder builder) {
         bootModulePath = List.copyOf(builder.bootModulePath);
@@ -149,24 +167,39 @@ public class Main implements Callable<DiagnosticContext> {
         optInlining = builder.optInlining;
         optPhis = builder.optPhis;
         optGotos = builder.optGotos;
+        optGvn = builder.optGvn;
         platform = builder.platform;
         initBuildTime = builder.initBuildTime;
         smallTypeIds = builder.smallTypeIds;
+        llvmCachePath = builder.llvmCachePath;
+        probeCachePath = builder.probeCachePath;
+        llvmStreaming = builder.llvmStreaming;
+        llvmEmitObjects = builder.llvmEmitObjects;
+        llvmPartitions = builder.llvmPartitions;
+        metricsReportPath = builder.metricsReportPath;
+        metricsJsonPath = builder.metricsJsonPath;
+        caches = builder.caches;
     }
 
     public DiagnosticContext call() {
         BaseDiagnosticContext ctxt = new BaseDiagnosticContext();
+        // without shared caches, the caches only live as long as this compilation
+        CompilerCaches caches = this.caches != null ? this.caches : new CompilerCaches();
         try {
-            call0(ctxt);
+            call0(ctxt, caches);
         } catch (Throwable t) {
             t.printStackTrace(System.err);
             ctxt.error(t, "Compilation failed due to an exception");
+        } finally {
+            if (caches != this.caches) {
+                caches.close();
+            }
         }
         diagnosticsHandler.accept(ctxt.getDiagnostics());
         return ctxt;
     }
 
-    DiagnosticContext call0(BaseDiagnosticContext initialContext) {
+    DiagnosticContext call0(BaseDiagnosticContext initialContext, CompilerCaches caches) {
         final Driver.Builder builder = Driver.builder();
         builder.setInitialContext(initialContext);
         boolean nogc = gc.equals("none");
@@ -174,6 +207,7 @@ public class Main implements Callable<DiagnosticContext> {
         if (errors == 0) {
             builder.setOutputDirectory(outputPath);
             builder.addBootClassPathElements(bootModulePath);
+            builder.setClassPathCache(caches.getClassPathCache());
             // first, probe the target platform
             Platform target = platform;
             builder.setTargetPlatform(target);
@@ -182,12 +216,13 @@ public class Main implements Callable<DiagnosticContext> {
                 initialContext.error("No object file provider found for %s", target.getObjectType());
             } else {
                 ObjectFileProvider objectFileProvider = optionalProvider.get();
-                Iterator<CToolChain> toolChains = CToolChain.findAllCToolChains(target, t -> true, Main.class.getClassLoader()).iterator();
-                if (! toolChains.hasNext()) {
+                CToolChain toolChain = caches.findToolChain(target);
+                if (toolChain == null) {
                     initialContext.error("No working C compiler found");
                 } else {
-                    CToolChain toolChain = toolChains.next();
                     builder.setToolChain(toolChain);
+                    CProbeCache probeCache = caches.getProbeCache(probeCachePath);
+                    builder.setProbeCache(probeCache);
                     // probe the basic system sizes
                     CProbe.Builder probeBuilder = CProbe.builder();
                     probeBuilder.include("<stdint.h>");
@@ -223,7 +258,7 @@ public class Main implements Callable<DiagnosticContext> {
                     // execute
                     CProbe probe = probeBuilder.build();
                     try {
-                        CProbe.Result probeResult = probe.run(toolChain, objectFileProvider, initialContext);
+                        CProbe.Result probeResult = probe.run(toolChain, objectFileProvider, initialContext, probeCache);
                         if (probeResult == null) {
                             initialContext.error("Type system probe compiler execution failed");
                         } else {
@@ -280,15 +315,7 @@ public class Main implements Callable<DiagnosticContext> {
                             }
                             errors = initialContext.errors();
                             if (errors == 0) {
-                                Iterator<LlvmToolChain> llvmTools = LlvmToolChain.findAllLlvmToolChains(target, t -> true, Main.class.getClassLoader()).iterator();
-                                LlvmToolChain llvmToolChain = null;
-                                while (llvmTools.hasNext()) {
-                                    llvmToolChain = llvmTools.next();
-                                    if (llvmToolChain.compareVersionTo("12") >= 0) {
-                                        break;
-                                    }
-                                    llvmToolChain = null;
-                                }
+                                LlvmToolChain llvmToolChain = caches.findLlvmToolChain(target);
                                 if (llvmToolChain == null) {
                                     initialContext.error("No working LLVM toolchain found");
                                     errors = initialContext.errors();
@@ -324,6 +351,10 @@ public class Main implements Callable<DiagnosticContext> {
                                 builder.addPreHook(Phase.ADD, CoreClasses::get);
                                 builder.addPreHook(Phase.ADD, ThrowExceptionHelper::get);
                                 builder.addPreHook(Phase.ADD, new VMHelpersSetupHook());
+                                if (nogc) {
+                                    // the NoGC helpers inject thread-local fields into Thread, so they must be loaded before any thread is created
+                                    builder.addPreHook(Phase.ADD, new NoGcSetupHook());
+                                }
                                 if (initBuildTime) {
                                     builder.addPreHook(Phase.ADD, compilationContext -> {
                                         Vm vm = compilationContext.getVm();
@@ -332,9 +363,6 @@ public class Main implements Callable<DiagnosticContext> {
                                     });
                                 }
                                 builder.addPreHook(Phase.ADD, new AddMainClassHook());
-                                if (nogc) {
-                                    builder.addPreHook(Phase.ADD, new NoGcSetupHook());
-                                }
                                 if (initBuildTime) {
                                     builder.addPreHook(Phase.ADD, RTAInfo::forceCoreClassesReachableBuildTimeInit);
                                 } else {
@@ -394,7 +422,7 @@ public class Main implements Callable<DiagnosticContext> {
                                     builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.TRANSFORM, InitializedStaticFieldBasicBlockBuilder::new);
                                 }
                                 builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.TRANSFORM, ThreadLocalBasicBlockBuilder::new);
-                                builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.TRANSFORM, DevirtualizingBasicBlockBuilder::new);
+                                builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.TRANSFORM, DevirtualizingBasicBlockBuilder::createForAnalyzePhase);
                                 if (optMemoryTracking) {
                                     builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.TRANSFORM, LocalMemoryTrackingBasicBlockBuilder::new);
                                 }
@@ -403,6 +431,9 @@ public class Main implements Callable<DiagnosticContext> {
                                 if (optInlining) {
                                     builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.OPTIMIZE, InliningBasicBlockBuilder::new);
                                 }
+                                if (optGvn) {
+                                    builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.OPTIMIZE, GlobalValueNumberingBasicBlockBuilder::new);
+                                }
                                 if (initBuildTime) {
                                     builder.addBuilderFactory(Phase.ANALYZE, BuilderStage.INTEGRITY, ReachabilityBlockBuilder::initForBuildTimeInit);
                                 } else {
@@ -429,7 +460,7 @@ public class Main implements Callable<DiagnosticContext> {
                                 builder.addCopyFactory(Phase.LOWER, ObjectLiteralSerializingVisitor::new);
 
                                 builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, ThrowLoweringBasicBlockBuilder::new);
-                                builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, DevirtualizingBasicBlockBuilder::new);
+                                builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, DevirtualizingBasicBlockBuilder::createForLowerPhase);
                                 if (nogc) {
                                     builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, NoGcBasicBlockBuilder::new);
                                 }
@@ -448,6 +479,9 @@ public class Main implements Callable<DiagnosticContext> {
                                 builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, ObjectMonitorBasicBlockBuilder::new);
                                 builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, LLVMCompatibleBasicBlockBuilder::new);
                                 builder.addBuilderFactory(Phase.LOWER, BuilderStage.OPTIMIZE, SimpleOptBasicBlockBuilder::new);
+                                if (optGvn) {
+                                    builder.addBuilderFactory(Phase.LOWER, BuilderStage.OPTIMIZE, GlobalValueNumberingBasicBlockBuilder::new);
+                                }
                                 if (optMemoryTracking) {
                                     builder.addBuilderFactory(Phase.LOWER, BuilderStage.TRANSFORM, LocalMemoryTrackingBasicBlockBuilder::new);
                                 }
@@ -455,20 +489,30 @@ public class Main implements Callable<DiagnosticContext> {
 
                                 builder.addPreHook(Phase.GENERATE, new SupersDisplayEmitter());
                                 builder.addPreHook(Phase.GENERATE, new DispatchTableEmitter());
-                                builder.addPreHook(Phase.GENERATE, new LLVMGenerator(isPie ? 2 : 0, isPie ? 2 : 0));
+                                LLVMConfiguration llvmConfiguration = LLVMConfiguration.builder()
+                                    .setPie(isPie)
+                                    .setCacheDirectory(llvmCachePath)
+                                    .setEmitObjects(llvmEmitObjects)
+                                    .build();
+                                LLVMCompileStage llvmCompileStage = new LLVMCompileStage(llvmConfiguration);
+                                builder.addPreHook(Phase.GENERATE, new LLVMGenerator(isPie ? 2 : 0, isPie ? 2 : 0, llvmPartitions, llvmStreaming ? llvmCompileStage : null));
 
                                 builder.addPostHook(Phase.GENERATE, new DotGenerator(Phase.GENERATE, graphGenConfig));
-                                builder.addPostHook(Phase.GENERATE, new LLVMCompileStage(isPie));
+                                builder.addPostHook(Phase.GENERATE, llvmCompileStage);
                                 builder.addPostHook(Phase.GENERATE, new MethodDataEmitter());
                                 builder.addPostHook(Phase.GENERATE, new StringPoolEmitter());
-                                builder.addPostHook(Phase.GENERATE, new LLVMDefaultModuleCompileStage(isPie));
+                                builder.addPostHook(Phase.GENERATE, new LLVMDefaultModuleCompileStage(llvmConfiguration));
                                 builder.addPostHook(Phase.GENERATE, new LinkStage(isPie));
 
                                 CompilationContext ctxt;
                                 try (Driver driver = builder.build()) {
                                     ctxt = driver.getCompilationContext();
                                     MainMethod.get(ctxt).setMainClass(mainClass);
-                                    driver.execute();
+                                    try {
+                                        driver.execute();
+                                    } finally {
+                                        writeMetrics(ctxt);
+                                    }
                                 }
                             }
                         }
@@ -481,13 +525,68 @@ public class Main implements Callable<DiagnosticContext> {
         return initialContext;
     }
 
+    private void writeMetrics(CompilationContext ctxt) {
+        if (metricsReportPath != null) {
+            writeMetrics(ctxt, metricsReportPath, Metrics.get(ctxt).formatAll(new StringBuilder()));
+        }
+        if (metricsJsonPath != null) {
+            writeMetrics(ctxt, metricsJsonPath, Metrics.get(ctxt).formatAllAsJson(new StringBuilder()).append(System.lineSeparator()));
+        }
+    }
+
+    private static void writeMetrics(CompilationContext ctxt, Path path, CharSequence report) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(path, report);
+        } catch (IOException e) {
+            ctxt.warning("Failed to write metrics report \"%s\": %s", path, e);
+        }
+    }
+
     public static void main(String[] args) {
         System.setProperty("java.util.logging.manager", LogManager.class.getName());
         CommandLineProcessor optionsProcessor = new CommandLineProcessor();
-        CmdResult result = optionsProcessor.process(args);
+        CmdResult result = optionsProcessor.process(args, System.out, System.err);
         if (result != CmdResult.CMD_RESULT_OK) {
             return;
         }
+        if (optionsProcessor.useDaemon) {
+            try {
+                System.exit(CompilerDaemon.compile(optionsProcessor.getDaemonFile(), args, System.err));
+            } catch (IOException e) {
+                System.err.printf("Compiler daemon is not available (%s); compiling in this process%n", e);
+            }
+        }
+        System.exit(run(optionsProcessor, System.err, null));
+    }
+
+    /**
+     * Run a compilation on behalf of a client of the compiler daemon.
+     *
+     * @param args the client's command line arguments (must not be {@code null})
+     * @param workingDirectory the client's working directory, against which relative paths are resolved (must not be {@code null})
+     * @param err the stream to which diagnostics are written (must not be {@code null})
+     * @param caches the caches which are shared between compilations (must not be {@code null})
+     * @return the exit code for the client
+     */
+    static int run(String[] args, Path workingDirectory, PrintStream err, CompilerCaches caches) {
+        CommandLineProcessor optionsProcessor = new CommandLineProcessor();
+        CmdResult result = optionsProcessor.process(args, err, err);
+        if (result != CmdResult.CMD_RESULT_OK) {
+            return result == CmdResult.CMD_RESULT_HELP ? 0 : 1;
+        }
+        try {
+            optionsProcessor.resolveAgainst(workingDirectory);
+            return run(optionsProcessor, err, caches);
+        } finally {
+            optionsProcessor.restoreLogLevels();
+        }
+    }
+
+    private static int run(CommandLineProcessor optionsProcessor, PrintStream err, CompilerCaches caches) {
         Builder mainBuilder = builder();
         mainBuilder.setBootModulePaths(optionsProcessor.bootPaths)
             .setOutputPath(optionsProcessor.outputPath)
@@ -495,7 +594,7 @@ public class Main implements Callable<DiagnosticContext> {
             .setDiagnosticsHandler(diagnostics -> {
                 for (Diagnostic diagnostic : diagnostics) {
                     try {
-                        diagnostic.appendTo(System.err);
+                        diagnostic.appendTo(err);
                     } catch (IOException e) {
                         // just give up
                         break;
@@ -508,9 +607,18 @@ public class Main implements Callable<DiagnosticContext> {
             .setOptInlining(optionsProcessor.optArgs.optInlining)
             .setOptGotos(optionsProcessor.optArgs.optGotos)
             .setOptPhis(optionsProcessor.optArgs.optPhis)
+            .setOptGvn(optionsProcessor.optArgs.optGvn)
             .setInitBuildTime(optionsProcessor.initBuildTime)
             .setSmallTypeIds(optionsProcessor.smallTypeIds)
-            .setGraphGenConfig(optionsProcessor.graphGenConfig);
+            .setGraphGenConfig(optionsProcessor.graphGenConfig)
+            .setLlvmCachePath(optionsProcessor.llvmCachePath)
+            .setProbeCachePath(optionsProcessor.probeCachePath)
+            .setLlvmStreaming(optionsProcessor.llvmStreaming)
+            .setLlvmEmitObjects(optionsProcessor.llvmEmitObjects)
+            .setLlvmPartitions(optionsProcessor.llvmPartitions)
+            .setMetricsReportPath(optionsProcessor.metricsReportPath)
+            .setMetricsJsonPath(optionsProcessor.metricsJsonPath)
+            .setCaches(caches);
         Platform platform = optionsProcessor.platform;
         if (platform != null) {
             mainBuilder.setPlatform(platform);
@@ -522,14 +630,14 @@ public class Main implements Callable<DiagnosticContext> {
         int warnings = context.warnings();
         if (errors > 0) {
             if (warnings > 0) {
-                System.err.printf("Compilation failed with %d error(s) and %d warning(s)%n", Integer.valueOf(errors), Integer.valueOf(warnings));
+                err.printf("Compilation failed with %d error(s) and %d warning(s)%n", Integer.valueOf(errors), Integer.valueOf(warnings));
             } else {
-                System.err.printf("Compilation failed with %d error(s)%n", Integer.valueOf(errors));
+                err.printf("Compilation failed with %d error(s)%n", Integer.valueOf(errors));
             }
         } else if (warnings > 0) {
-            System.err.printf("Compilation completed with %d warning(s)%n", Integer.valueOf(warnings));
+            err.printf("Compilation completed with %d warning(s)%n", Integer.valueOf(warnings));
         }
-        System.exit(errors == 0 ? 0 : 1);
+        return errors == 0 ? 0 : 1;
     }
 
     private enum CmdResult {
@@ -586,6 +694,33 @@ public class Main implements Callable<DiagnosticContext> {
         @CommandLine.Option(names = "--small-type-ids", negatable = true, defaultValue = "false", description = "Use narrow (16-bit) type ID values if true, wide (32-bit) type ID values if false")
         private boolean smallTypeIds;
 
+        @CommandLine.Option(names = "--llvm-cache-path", description = "Specify a directory in which compiled modules are cached between builds")
+        private Path llvmCachePath;
+
+        @CommandLine.Option(names = "--probe-cache-path", description = "Specify a directory in which C probe results are cached between builds")
+        private Path probeCachePath;
+
+        @CommandLine.Option(names = "--llvm-streaming", negatable = true, defaultValue = "false", description = "Compile each LLVM module as soon as it is generated")
+        private boolean llvmStreaming;
+
+        @CommandLine.Option(names = "--llvm-emit-objects", negatable = true, defaultValue = "false", description = "Emit object files directly from `llc` instead of assembling its output")
+        private boolean llvmEmitObjects;
+
+        @CommandLine.Option(names = "--llvm-partitions", defaultValue = "0", description = "Group classes into the given number of LLVM modules of balanced size, or 0 for one module per class")
+        private int llvmPartitions;
+
+        @CommandLine.Option(names = "--metrics-report", description = "Write a hierarchical report of build timings and counts to the given file when the build ends")
+        private Path metricsReportPath;
+
+        @CommandLine.Option(names = "--metrics-json", description = "Write the build timings and counts as JSON to the given file when the build ends")
+        private Path metricsJsonPath;
+
+        @CommandLine.Option(names = "--use-daemon", negatable = true, defaultValue = "false", description = "Run the compilation in the compiler daemon if it is running, reusing its opened boot class path archives, scanned class files, probe results, and tool chains")
+        private boolean useDaemon;
+
+        @CommandLine.Option(names = "--daemon-file", description = "The file through which the compiler daemon is found")
+        private Path daemonFile;
+
         @CommandLine.Parameters(index="0", arity="1", description = "Application main class")
         private String mainClass;
 
@@ -597,6 +732,9 @@ public class Main implements Callable<DiagnosticContext> {
 
         private GraphGenConfig graphGenConfig = new GraphGenConfig();
 
+        // logger name to its level before the options changed it (null if it was inherited)
+        private final Map<String, java.util.logging.Level> previousLogLevels = new HashMap<>();
+
         private static class GraphGenArgs {
             @CommandLine.Option(names = { "-g", "--gen-graph"}, required = true, description = "Enable generation of graphs")
             boolean genGraph;
@@ -622,43 +760,47 @@ public class Main implements Callable<DiagnosticContext> {
             boolean optPhis;
             @CommandLine.Option(names = "--opt-gotos", negatable = true, defaultValue = "true", description = "Enable/disable `goto` elimination")
             boolean optGotos;
+            @CommandLine.Option(names = "--opt-gvn", negatable = true, defaultValue = "true", description = "Enable/disable global value numbering")
+            boolean optGvn;
         }
 
-        public CmdResult process(String[] args) {
+        public CmdResult process(String[] args, PrintStream out, PrintStream err) {
             try {
-                ParseResult parseResult = new CommandLine(this).parseArgs(args);
+                CommandLine commandLine = new CommandLine(this);
+                commandLine.setOut(new PrintWriter(out, true));
+                ParseResult parseResult = commandLine.parseArgs(args);
                 if (CommandLine.printHelpIfRequested(parseResult)) {
                     return CmdResult.CMD_RESULT_HELP;
                 }
             } catch (ParameterException ex) { // command line arguments could not be parsed
-                System.err.println(ex.getMessage());
-                ex.getCommandLine().usage(System.err);
+                err.println(ex.getMessage());
+                ex.getCommandLine().usage(err);
                 return CmdResult.CMD_RESULT_ERROR;
             }
 
             if (debug) {
-                Logger.getLogger("").setLevel(Level.DEBUG);
+                enableDebugLogging("");
             }
             if (debugVTables) {
-                Logger.getLogger("org.qbicc.plugin.dispatch.tables").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.dispatch.tables");
             }
             if (dispatchStats) {
-                Logger.getLogger("org.qbicc.plugin.dispatch.stats").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.dispatch.stats");
             }
             if (debugRTA) {
-                Logger.getLogger("org.qbicc.plugin.reachability.rta").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.reachability.rta");
             }
             if (debugSupers) {
-                Logger.getLogger("org.qbicc.plugin.instanceofcheckcast.supers").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.instanceofcheckcast.supers");
             }
             if (debugDevirt) {
-                Logger.getLogger("org.qbicc.plugin.dispatch.devirt").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.dispatch.devirt");
             }
             if (methodDataStats) {
-                Logger.getLogger("org.qbicc.plugin.methodinfo.stats").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.methodinfo.stats");
             }
             if (stringPoolStats) {
-                Logger.getLogger("org.qbicc.plugin.stringpool.stats").setLevel(Level.DEBUG);
+                enableDebugLogging("org.qbicc.plugin.stringpool.stats");
             }
             if (outputPath == null) {
                 outputPath = Path.of(System.getProperty("java.io.tmpdir"), "qbicc-output-" + Integer.toHexString(ThreadLocalRandom.current().nextInt()));
@@ -679,6 +821,46 @@ public class Main implements Callable<DiagnosticContext> {
             }
             return CmdResult.CMD_RESULT_OK;
         }
+
+        private void enableDebugLogging(String loggerName) {
+            Logger logger = Logger.getLogger(loggerName);
+            if (! previousLogLevels.containsKey(loggerName)) {
+                previousLogLevels.put(loggerName, logger.getLevel());
+            }
+            logger.setLevel(Level.DEBUG);
+        }
+
+        /**
+         * Restore the levels of the loggers whose level was changed by the options, so that a compilation in the
+         * daemon does not change the logging of later compilations.
+         */
+        void restoreLogLevels() {
+            for (Map.Entry<String, java.util.logging.Level> entry : previousLogLevels.entrySet()) {
+                Logger.getLogger(entry.getKey()).setLevel(entry.getValue());
+            }
+            previousLogLevels.clear();
+        }
+
+        Path getDaemonFile() {
+            return daemonFile != null ? daemonFile : CompilerDaemon.getDefaultDaemonFile();
+        }
+
+        void resolveAgainst(Path workingDirectory) {
+            for (int i = 0; i < bootPaths.length; i ++) {
+                if (! bootPaths[i].isEmpty()) {
+                    bootPaths[i] = workingDirectory.resolve(bootPaths[i]).toString();
+                }
+            }
+            outputPath = resolve(workingDirectory, outputPath);
+            llvmCachePath = resolve(workingDirectory, llvmCachePath);
+            probeCachePath = resolve(workingDirectory, probeCachePath);
+            metricsReportPath = resolve(workingDirectory, metricsReportPath);
+            metricsJsonPath = resolve(workingDirectory, metricsJsonPath);
+        }
+
+        private static Path resolve(Path workingDirectory, Path path) {
+            return path == null ? null : workingDirectory.resolve(path);
+        }
     }
 
     public static Builder builder() {
@@ -698,9 +880,18 @@ public class Main implements Callable<DiagnosticContext> {
         private boolean optInlining = false;
         private boolean optPhis = true;
         private boolean optGotos = true;
+        private boolean optGvn = true;
         private GraphGenConfig graphGenConfig;
         private boolean initBuildTime = false;
         private boolean smallTypeIds = false;
+        private Path llvmCachePath;
+        private Path probeCachePath;
+        private boolean llvmStreaming = false;
+        private boolean llvmEmitObjects = false;
+        private int llvmPartitions = 0;
+        private Path metricsReportPath;
+        private Path metricsJsonPath;
+        private CompilerCaches caches;
 
         Builder() {}
 
@@ -786,6 +977,11 @@ public class Main implements Callable<DiagnosticContext> {
             return this;
         }
 
+        public Builder setOptGvn(boolean optGvn) {
+            this.optGvn = optGvn;
+            return this;
+        }
+
         public Builder setInitBuildTime(boolean initBuildTime) {
             this.initBuildTime = initBuildTime;
             return this;
@@ -796,6 +992,47 @@ public class Main implements Callable<DiagnosticContext> {
             return this;
         }
 
+        public Builder setLlvmCachePath(Path llvmCachePath) {
+            this.llvmCachePath = llvmCachePath;
+            return this;
+        }
+
+        public Builder setProbeCachePath(Path probeCachePath) {
+            this.probeCachePath = probeCachePath;
+            return this;
+        }
+
+        public Builder setLlvmStreaming(boolean llvmStreaming) {
+            this.llvmStreaming = llvmStreaming;
+            return this;
+        }
+
+        public Builder setLlvmEmitObjects(boolean llvmEmitObjects) {
+            this.llvmEmitObjects = llvmEmitObjects;
+            return this;
+        }
+
+        public Builder setLlvmPartitions(int llvmPartitions) {
+            Assert.checkMinimumParameter("llvmPartitions", 0, llvmPartitions);
+            this.llvmPartitions = llvmPartitions;
+            return this;
+        }
+
+        public Builder setMetricsReportPath(Path metricsReportPath) {
+            this.metricsReportPath = metricsReportPath;
+            return this;
+        }
+
+        public Builder setMetricsJsonPath(Path metricsJsonPath) {
+            this.metricsJsonPath = metricsJsonPath;
+            return this;
+        }
+
+        Builder setCaches(CompilerCaches caches) {
+            this.caches = caches;
+            return this;
+        }
+
         public Main build() {
             return new Main(this);
         }
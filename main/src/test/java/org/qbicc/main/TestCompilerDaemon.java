@@ -0,0 +1,121 @@
+package org.qbicc.main;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.jboss.logmanager.Level;
+import org.jboss.logmanager.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the compiler daemon protocol and for the isolation of the compilations it runs.
+ */
+public class TestCompilerDaemon {
+
+    @TempDir
+    Path tempDir;
+
+    Path daemonFile;
+    Thread daemon;
+
+    @BeforeEach
+    public void startDaemon() throws InterruptedException {
+        daemonFile = tempDir.resolve("daemon");
+        daemon = new Thread(() -> {
+            try {
+                CompilerDaemon.serve(daemonFile, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "compiler daemon");
+        daemon.start();
+        // the daemon file is published once the daemon is listening
+        while (! Files.exists(daemonFile)) {
+            assertTrue(daemon.isAlive());
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    public void stopDaemon() throws IOException, InterruptedException {
+        if (Files.exists(daemonFile)) {
+            CompilerDaemon.stop(daemonFile);
+        }
+        daemon.join(10_000);
+        assertFalse(daemon.isAlive());
+    }
+
+    static final class Output {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream stream = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+
+        public String toString() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testHelp() throws IOException {
+        Output output = new Output();
+        assertEquals(0, CompilerDaemon.compile(daemonFile, new String[] { "--help" }, output.stream));
+        assertTrue(output.toString().contains("--boot-module-path"), output::toString);
+    }
+
+    @Test
+    public void testInvalidOption() throws IOException {
+        Output output = new Output();
+        String[] args = { "--boot-module-path", tempDir.toString(), "--no-such-option", "hello.world.Main" };
+        assertEquals(1, CompilerDaemon.compile(daemonFile, args, output.stream));
+        assertTrue(output.toString().contains("--no-such-option"), output::toString);
+    }
+
+    @Test
+    public void testRejectedToken() throws IOException {
+        List<String> lines = Files.readAllLines(daemonFile, StandardCharsets.UTF_8);
+        Path badDaemonFile = tempDir.resolve("bad-daemon");
+        Files.writeString(badDaemonFile, lines.get(0) + "\n" + "0".repeat(lines.get(1).length()) + "\n");
+        assertThrows(IOException.class, () -> CompilerDaemon.compile(badDaemonFile, new String[] { "--help" }, new Output().stream));
+        // the daemon keeps serving
+        assertEquals(0, CompilerDaemon.compile(daemonFile, new String[] { "--help" }, new Output().stream));
+    }
+
+    @Test
+    public void testStop() throws IOException, InterruptedException {
+        CompilerDaemon.stop(daemonFile);
+        daemon.join(10_000);
+        assertFalse(daemon.isAlive());
+        assertFalse(Files.exists(daemonFile));
+    }
+
+    @Test
+    public void testLogLevelsRestored() throws IOException {
+        Logger rootLogger = Logger.getLogger("");
+        Logger rtaLogger = Logger.getLogger("org.qbicc.plugin.reachability.rta");
+        java.util.logging.Level rootLevel = rootLogger.getLevel();
+        java.util.logging.Level rtaLevel = rtaLogger.getLevel();
+        assertNotEquals(Level.DEBUG, rootLevel);
+        Output output = new Output();
+        String[] args = {
+            "--boot-module-path", tempDir.resolve("missing.jar").toString(),
+            "--output-path", tempDir.resolve("output").toString(),
+            "--debug",
+            "--debug-rta",
+            "hello.world.Main",
+        };
+        // the compilation fails, but the options have been applied
+        assertEquals(1, CompilerDaemon.compile(daemonFile, args, output.stream));
+        assertEquals(rootLevel, rootLogger.getLevel());
+        assertEquals(rtaLevel, rtaLogger.getLevel());
+    }
+}
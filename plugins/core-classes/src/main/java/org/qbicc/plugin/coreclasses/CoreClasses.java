@@ -38,6 +38,17 @@ public final class CoreClasses {
 
     private static final String INTERNAL_ARRAY = "internal_array";
 
+    /**
+     * The number of object header bits which hold the identity hash code.  An identity hash code of zero means
+     * that none has been assigned yet.
+     */
+    public static final int IDENTITY_HASH_CODE_BITS = 31;
+    /**
+     * The number of object header bits which hold the thin lock word.  A lock word of zero means that the object
+     * is not locked.
+     */
+    public static final int THIN_LOCK_BITS = 32;
+
     private static final InitializerResolver EMPTY_INIT = (index, enclosing) -> {
         InitializerElement.Builder builder = InitializerElement.builder();
         builder.setEnclosingType(enclosing);
@@ -47,6 +58,8 @@ public final class CoreClasses {
     private final CompilationContext ctxt;
 
     private final FieldElement objectHeaderField;
+    private final int identityHashCodeShift;
+    private final int thinLockShift;
     private final FieldElement objectTypeIdField;
     private final FieldElement objectNativeObjectMonitorField;
     private final FieldElement classTypeIdField;
@@ -81,6 +94,10 @@ public final class CoreClasses {
         LoadedTypeDefinition jlc = jlcDef.load();
         final TypeSystem ts = ctxt.getTypeSystem();
 
+        // reserve the identity hash code and thin lock bits before the header size is locked
+        identityHashCodeShift = HeaderBits.get(ctxt).reserveHeaderBits(IDENTITY_HASH_CODE_BITS);
+        thinLockShift = HeaderBits.get(ctxt).reserveHeaderBits(THIN_LOCK_BITS);
+
         // inject a field to hold the object header bits
         FieldElement.Builder builder = FieldElement.builder();
         builder.setModifiers(ClassFile.ACC_PRIVATE | ClassFile.ACC_VOLATILE | ClassFile.I_ACC_NO_REFLECT | ClassFile.I_ACC_NO_RESOLVE);
@@ -370,6 +387,26 @@ public final class CoreClasses {
         return objectHeaderField;
     }
 
+    /**
+     * Get the index of the lowest object header bit which holds the identity hash code.  The identity hash code
+     * occupies {@link #IDENTITY_HASH_CODE_BITS} bits.
+     *
+     * @return the shift of the identity hash code bits
+     */
+    public int getIdentityHashCodeShift() {
+        return identityHashCodeShift;
+    }
+
+    /**
+     * Get the index of the lowest object header bit which holds the thin lock word.  The thin lock word
+     * occupies {@link #THIN_LOCK_BITS} bits.
+     *
+     * @return the shift of the thin lock bits
+     */
+    public int getThinLockShift() {
+        return thinLockShift;
+    }
+
     /**
      * Get the object field which holds the run time type identifier.
      *
@@ -1,11 +1,18 @@
 package org.qbicc.plugin.dispatch;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.qbicc.context.CompilationContext;
 import org.qbicc.graph.*;
+import org.qbicc.plugin.reachability.RTAInfo;
 import org.qbicc.type.ClassObjectType;
 import org.qbicc.type.PhysicalObjectType;
 import org.qbicc.type.ReferenceType;
 import org.qbicc.type.ValueType;
+import org.qbicc.type.VoidType;
 import org.qbicc.type.definition.LoadedTypeDefinition;
 import org.qbicc.type.definition.element.MethodElement;
 import org.jboss.logging.Logger;
@@ -13,17 +20,50 @@ import org.jboss.logging.Logger;
 public class DevirtualizingBasicBlockBuilder extends DelegatingBasicBlockBuilder {
     private static final Logger log = Logger.getLogger("org.qbicc.plugin.dispatch.devirt");
 
+    // the largest number of receiver classes for which a call is dispatched by testing the receiver type
+    private static final int MAX_GUARDED_RECEIVERS = 3;
+
     private final CompilationContext ctxt;
+    private final RTAInfo rtaInfo;
+    // the analysis in progress, which is consulted to leave out receiver classes it has not instantiated, or null
+    private final RTAInfo guardInfo;
 
     public DevirtualizingBasicBlockBuilder(final CompilationContext ctxt, final BasicBlockBuilder delegate) {
+        this(ctxt, delegate, null, null);
+    }
+
+    private DevirtualizingBasicBlockBuilder(final CompilationContext ctxt, final BasicBlockBuilder delegate, final RTAInfo rtaInfo, final RTAInfo guardInfo) {
         super(delegate);
         this.ctxt = ctxt;
+        this.rtaInfo = rtaInfo;
+        this.guardInfo = guardInfo;
+    }
+
+    /**
+     * Create a builder which also binds calls using the complete reachability analysis of the {@code ADD} phase,
+     * because the analysis of the {@code ANALYZE} phase is still in progress while methods are being built.  Calls
+     * with only a few possible receiver classes are also guarded, so that the inliner can see their targets.
+     */
+    public static DevirtualizingBasicBlockBuilder createForAnalyzePhase(final CompilationContext ctxt, final BasicBlockBuilder delegate) {
+        RTAInfo info = RTAInfo.get(ctxt);
+        return new DevirtualizingBasicBlockBuilder(ctxt, delegate, info.getPrevious(), info);
+    }
+
+    /**
+     * Create a builder which also binds calls using the complete reachability analysis of the {@code ANALYZE} phase.
+     */
+    public static DevirtualizingBasicBlockBuilder createForLowerPhase(final CompilationContext ctxt, final BasicBlockBuilder delegate) {
+        return new DevirtualizingBasicBlockBuilder(ctxt, delegate, RTAInfo.get(ctxt), null);
     }
 
     @Override
     public ValueHandle interfaceMethodOf(Value instance, MethodElement target) {
         MethodElement virtualTarget = virtualizeInvokeInterface(instance, target);
-        return virtualTarget != null ? virtualMethodOf(instance, virtualTarget) : super.interfaceMethodOf(instance, target);
+        if (virtualTarget != null) {
+            return virtualMethodOf(instance, virtualTarget);
+        }
+        MethodElement exactTarget = bindBySingleImplementation(target.getEnclosingType().load(), target);
+        return exactTarget != null ? exactMethodOf(instance, exactTarget) : super.interfaceMethodOf(instance, target);
     }
 
     @Override
@@ -32,23 +72,98 @@ public class DevirtualizingBasicBlockBuilder extends DelegatingBasicBlockBuilder
         return exactTarget != null ? exactMethodOf(instance, exactTarget) : super.virtualMethodOf(instance, target);
     }
 
+    @Override
+    public Value call(ValueHandle target, List<Value> arguments) {
+        if (guardInfo != null && target instanceof InstanceMethodElementHandle && ! (target instanceof ExactMethodElementHandle)) {
+            Value result = guardedCall((InstanceMethodElementHandle) target, arguments);
+            if (result != null) {
+                return result;
+            }
+        }
+        return super.call(target, arguments);
+    }
+
+    /*
+     * Dispatch a call with a few possible receiver classes by comparing the type ID of the receiver with the classes
+     * of each distinct implementation in turn, calling the implementation directly if one of its classes matches.
+     * Classes which the analysis in progress has reached without instantiating them are left out.  The virtual or
+     * interface call remains as the final fallback, so it is safe if such a class is instantiated later on.
+     * Returns null if the call cannot be guarded.
+     */
+    private Value guardedCall(final InstanceMethodElementHandle target, final List<Value> arguments) {
+        if (rtaInfo == null) {
+            return null;
+        }
+        MethodElement method = target.getExecutable();
+        Value instance = target.getInstance();
+        LoadedTypeDefinition receiverType = method.getEnclosingType().load();
+        ClassObjectType classType = getReceiverClassType(instance);
+        if (classType != null && classType.isSubtypeOf(receiverType.getType())) {
+            receiverType = classType.getDefinition().load();
+        }
+        List<LoadedTypeDefinition> candidates = rtaInfo.getConcreteReceiverTypes(receiverType);
+        if (candidates.size() < 2) {
+            return null;
+        }
+        List<LoadedTypeDefinition> receiverTypes = new ArrayList<>(candidates.size());
+        for (LoadedTypeDefinition type : candidates) {
+            if (! guardInfo.isReachableClass(type) || guardInfo.isInstantiatedClass(type)) {
+                receiverTypes.add(type);
+            }
+        }
+        if (receiverTypes.isEmpty() || receiverTypes.size() > MAX_GUARDED_RECEIVERS) {
+            return null;
+        }
+        Map<MethodElement, List<LoadedTypeDefinition>> implementations = new LinkedHashMap<>();
+        for (LoadedTypeDefinition type : receiverTypes) {
+            MethodElement implementation = type.resolveMethodElementVirtual(method.getName(), method.getDescriptor());
+            if (implementation == null || implementation.isAbstract() || implementation.isNative() || ! rtaInfo.isInvokableMethod(implementation)) {
+                return null;
+            }
+            implementations.computeIfAbsent(implementation, m -> new ArrayList<>(2)).add(type);
+        }
+        log.debugf("Guarding call to %s::%s with %d receiver types and %d targets", method.getEnclosingType().getDescriptor().getClassName(), method.getName(), Integer.valueOf(receiverTypes.size()), Integer.valueOf(implementations.size()));
+        ValueType returnType = method.getType().getReturnType();
+        boolean isVoid = returnType instanceof VoidType;
+        BlockLabel resume = new BlockLabel();
+        PhiValue result = isVoid ? null : phi(returnType, resume);
+        Value typeId = typeIdOf(referenceHandle(instance));
+        for (Map.Entry<MethodElement, List<LoadedTypeDefinition>> entry : implementations.entrySet()) {
+            BlockLabel match = new BlockLabel();
+            BlockLabel next = new BlockLabel();
+            List<LoadedTypeDefinition> types = entry.getValue();
+            for (int i = 0; i < types.size(); i ++) {
+                BlockLabel miss = i == types.size() - 1 ? next : new BlockLabel();
+                if_(isEq(typeId, ctxt.getLiteralFactory().literalOfType(types.get(i).getType())), match, miss);
+                if (miss != next) {
+                    begin(miss);
+                }
+            }
+            begin(match);
+            Value value = super.call(exactMethodOf(instance, entry.getKey()), arguments);
+            BasicBlock from = goto_(resume);
+            if (! isVoid) {
+                result.setValueForBlock(ctxt, getCurrentElement(), from, value);
+            }
+            begin(next);
+        }
+        Value value = super.call(target, arguments);
+        BasicBlock from = goto_(resume);
+        if (! isVoid) {
+            result.setValueForBlock(ctxt, getCurrentElement(), from, value);
+        }
+        begin(resume);
+        // a void call has no value to merge, so any result of the right type will do
+        return isVoid ? value : result;
+    }
+
     /*
      * Determine if an interface call be converted to a virtual call based on the static
      * type of the receiver.
      */
     private MethodElement virtualizeInvokeInterface(final Value instance, final MethodElement target) {
-        ClassObjectType classType;
-        ValueType type = instance.getType();
-        if (type instanceof ReferenceType) {
-            PhysicalObjectType upperBound = ((ReferenceType) type).getUpperBound();
-            if (upperBound instanceof ClassObjectType) {
-                classType = (ClassObjectType) upperBound;
-            } else {
-                return null;
-            }
-        } else if (type instanceof ClassObjectType) {
-            classType = (ClassObjectType) type;
-        } else {
+        ClassObjectType classType = getReceiverClassType(instance);
+        if (classType == null) {
             return null;
         }
         // only select the class if it implements the interface; else we risk adding a more general method than we had before
@@ -75,7 +190,44 @@ public class DevirtualizingBasicBlockBuilder extends DelegatingBasicBlockBuilder
             return target;
         }
 
-        // Unable to statically bind
-        return null;
+        // Use the most specific static type of the receiver to narrow down the candidate implementations
+        LoadedTypeDefinition receiverType = target.getEnclosingType().load();
+        ClassObjectType classType = getReceiverClassType(instance);
+        if (classType != null && ! receiverType.isInterface() && classType.isSubtypeOf(receiverType.getClassType())) {
+            receiverType = classType.getDefinition().load();
+        }
+        if (receiverType.isInterface()) {
+            // a default method; the implementors of its interface may not be receivers of this call
+            return null;
+        }
+        return bindBySingleImplementation(receiverType, target);
+    }
+
+    /*
+     * Determine if only one implementation of a method is reachable from the receiver type among the classes
+     * which are instantiated according to the reachability analysis.  If yes, return that method.  If no, return null.
+     */
+    private MethodElement bindBySingleImplementation(final LoadedTypeDefinition receiverType, final MethodElement target) {
+        if (rtaInfo == null || target.isSignaturePolymorphic()) {
+            return null;
+        }
+        MethodElement implementation = rtaInfo.getSingleImplementation(receiverType, target);
+        if (implementation == null || implementation.isNative() || ! rtaInfo.isInvokableMethod(implementation)) {
+            return null;
+        }
+        log.debugf("Devirtualizing call to %s::%s using reachable implementation %s", target.getEnclosingType().getDescriptor().getClassName(), target.getName(), implementation);
+        return implementation;
+    }
+
+    private static ClassObjectType getReceiverClassType(final Value instance) {
+        ValueType type = instance.getType();
+        if (type instanceof ReferenceType) {
+            PhysicalObjectType upperBound = ((ReferenceType) type).getUpperBound();
+            return upperBound instanceof ClassObjectType ? (ClassObjectType) upperBound : null;
+        } else if (type instanceof ClassObjectType) {
+            return (ClassObjectType) type;
+        } else {
+            return null;
+        }
     }
 }
@@ -28,5 +28,9 @@ public class DispatchTableBuilder implements Consumer<CompilationContext>  {
 
         // Now build the interface dispatching structures for the reachable methods
         info.visitReachableInterfaces(tables::buildFilteredITableForInterface);
+
+        // Assign the interface method selectors to IMT slots and synthesize GlobalVariable for imts[]
+        tables.buildIMTSelectors();
+        tables.buildIMTsGlobal(jlo);
     }
 }
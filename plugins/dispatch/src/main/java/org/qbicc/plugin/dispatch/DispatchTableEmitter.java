@@ -22,12 +22,13 @@ public class DispatchTableEmitter implements Consumer<CompilationContext>  {
         tables.emitVTable(jlo);
         info.visitReachableSubclassesPreOrder(jlo, tables::emitVTable);
 
-        // Walk down the live class hierarchy and emit the itables for each class
+        // Walk down the live class hierarchy and emit the itables and IMT for each class
         tables.emitITables(jlo);
         info.visitReachableSubclassesPreOrder(jlo, tables::emitITables);
 
-        // Emit the root tables of all program vtables and itables in the object file for java.lang.Object
+        // Emit the root tables of all program vtables, itables and IMTs in the object file for java.lang.Object
         tables.emitVTableTable(jlo);
         tables.emitITableTable(jlo);
+        tables.emitIMTTable(jlo);
     }
 }
\ No newline at end of file
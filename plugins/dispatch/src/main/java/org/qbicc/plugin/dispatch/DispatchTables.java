@@ -7,6 +7,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import io.smallrye.common.constraint.Assert;
@@ -39,13 +40,28 @@ public class DispatchTables {
 
     private static final AttachmentKey<DispatchTables> KEY = new AttachmentKey<>();
 
+    /**
+     * The number of slots in each interface method table (IMT).
+     */
+    public static final int IMT_SIZE = 16;
+
+    /**
+     * The number of type IDs which are not assigned to reachable classes: the invalid type ID zero, the 8 primitive
+     * types, void, the 8 primitive array types and the reference array type.
+     */
+    private static final int NON_CLASS_TYPE_IDS = 19;
+
     private final CompilationContext ctxt;
     private final Map<LoadedTypeDefinition, VTableInfo> vtables = new ConcurrentHashMap<>();
     private final Map<LoadedTypeDefinition, ITableInfo> itables = new ConcurrentHashMap<>();
     private final Set<LoadedTypeDefinition> classesWithITables = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> imtSelectors = new ConcurrentHashMap<>();
     private GlobalVariableElement vtablesGlobal;
     private GlobalVariableElement itablesGlobal;
+    private GlobalVariableElement imtsGlobal;
     private CompoundType itableDictType;
+    private CompoundType imtEntryType;
+    private ArrayType imtType;
 
     // Used to accumulate statistics
     private int emittedVTableCount;
@@ -54,6 +70,8 @@ public class DispatchTables {
     private int emittedClassITableBytes;
     private int emittedClassITableDictBytes;
     private int emittedClassITableDictCount;
+    private int emittedIMTCount;
+    private int emittedIMTConflictCount;
 
     private DispatchTables(final CompilationContext ctxt) {
         this.ctxt = ctxt;
@@ -130,12 +148,19 @@ public class DispatchTables {
         itables.put(cls, new ITableInfo(itable, itableType, cls));
     }
 
+    /**
+     * Get the number of entries in each of the root tables (the vtables, itable dictionaries and IMTs globals), which
+     * are indexed by type ID.  Type IDs are assigned from 1...N, where N is the number of reachable classes as computed
+     * by RTA plus 18 for 8 primitive types, void, 8 primitive arrays and reference array.
+     */
+    private int getRootTableLength() {
+        return vtables.size() + NON_CLASS_TYPE_IDS;
+    }
+
     void buildVTablesGlobal(DefinedTypeDefinition containingType) {
         GlobalVariableElement.Builder builder = GlobalVariableElement.builder();
         builder.setName("qbicc_vtables_array");
-        // Invariant: typeIds are assigned from 1...N, where N is the number of reachable classes as computed by RTA 
-        // plus 18 for 8 primitive types, void, 8 primitive arrays and reference array.
-        builder.setType(ctxt.getTypeSystem().getArrayType(ctxt.getTypeSystem().getVoidType().getPointer().getPointer(), vtables.size()+19));  //TODO: communicate this +19 better
+        builder.setType(ctxt.getTypeSystem().getArrayType(ctxt.getTypeSystem().getVoidType().getPointer().getPointer(), getRootTableLength()));
         builder.setEnclosingType(containingType);
         // void for now, but this is cheating terribly
         builder.setDescriptor(BaseTypeDescriptor.V);
@@ -152,9 +177,7 @@ public class DispatchTables {
 
         GlobalVariableElement.Builder builder = GlobalVariableElement.builder();
         builder.setName("qbicc_itable_dicts_array");
-        // Invariant: typeIds are assigned from 1...N, where N is the number of reachable classes as computed by RTA
-        // plus 18 for 8 primitive types, void, 8 primitive arrays and reference array.
-        builder.setType(ts.getArrayType(ts.getArrayType(itableDictType, 0).getPointer(), vtables.size()+19));  //TODO: communicate this +19 better
+        builder.setType(ts.getArrayType(ts.getArrayType(itableDictType, 0).getPointer(), getRootTableLength()));
         builder.setEnclosingType(containingType);
         // void for now, but this is cheating terribly
         builder.setDescriptor(BaseTypeDescriptor.V);
@@ -162,6 +185,44 @@ public class DispatchTables {
         itablesGlobal = builder.build();
     }
 
+    /**
+     * Number the selectors of all the invokable interface methods.  Each selector is assigned a fixed IMT slot by
+     * hashing its number.  The numbers are assigned in a stable order, so that the layout of the tables does not depend
+     * on the order in which the interfaces were visited.
+     */
+    void buildIMTSelectors() {
+        TreeSet<String> selectors = new TreeSet<>();
+        for (ITableInfo info : itables.values()) {
+            for (MethodElement m : info.getItable()) {
+                selectors.add(getSelector(m));
+            }
+        }
+        // selector number zero marks an empty IMT slot
+        int next = 1;
+        for (String selector : selectors) {
+            imtSelectors.put(selector, Integer.valueOf(next++));
+        }
+        slog.debugf("Assigned %d interface method selectors to %d IMT slots", selectors.size(), IMT_SIZE);
+    }
+
+    void buildIMTsGlobal(DefinedTypeDefinition containingType) {
+        TypeSystem ts = ctxt.getTypeSystem();
+        CompoundType.Member targetMember = ts.getCompoundTypeMember("target", ts.getVoidType().getPointer(), 0,  ts.getPointerAlignment());
+        CompoundType.Member selectorMember = ts.getCompoundTypeMember("selector", ts.getSignedInteger32Type(), ts.getPointerSize(),  ts.getTypeIdAlignment());
+        imtEntryType = ts.getCompoundType(CompoundType.Tag.STRUCT, "qbicc_imt_entry", ts.getPointerSize() * 2,
+            ts.getPointerAlignment(), () -> List.of(targetMember, selectorMember));
+        imtType = ts.getArrayType(imtEntryType, IMT_SIZE);
+
+        GlobalVariableElement.Builder builder = GlobalVariableElement.builder();
+        builder.setName("qbicc_imts_array");
+        builder.setType(ts.getArrayType(imtType.getPointer(), getRootTableLength()));
+        builder.setEnclosingType(containingType);
+        // void for now, but this is cheating terribly
+        builder.setDescriptor(BaseTypeDescriptor.V);
+        builder.setSignature(BaseTypeSignature.V);
+        imtsGlobal = builder.build();
+    }
+
     void emitVTable(LoadedTypeDefinition cls) {
         if (cls.isAbstract()) {
             return;
@@ -172,8 +233,9 @@ public class DispatchTables {
         HashMap<CompoundType.Member, Literal> valueMap = new HashMap<>();
         for (int i = 0; i < vtable.length; i++) {
             FunctionType funType = ctxt.getFunctionTypeForElement(vtable[i]);
+            MethodElement nativeImpl = getNativeImplementation(vtable[i]);
             if (vtable[i].isAbstract() || vtable[i].hasAllModifiersOf(ClassFile.ACC_NATIVE)) {
-                MethodElement stub = ctxt.getVMHelperMethod(vtable[i].isAbstract() ? "raiseAbstractMethodError" : "raiseUnsatisfiedLinkError");
+                MethodElement stub = vtable[i].isAbstract() ? ctxt.getVMHelperMethod("raiseAbstractMethodError") : nativeImpl != null ? nativeImpl : ctxt.getVMHelperMethod("raiseUnsatisfiedLinkError");
                 Function stubImpl = ctxt.getExactFunction(stub);
                 SymbolLiteral literal = ctxt.getLiteralFactory().literalOfSymbol(stubImpl.getLiteral().getName(), stubImpl.getType().getPointer());
                 section.declareFunction(stub, stubImpl.getName(), stubImpl.getType());
@@ -241,6 +303,10 @@ public class DispatchTables {
         Section cSection = ctxt.getImplicitSection(cls);
 
         ArrayList<Literal> itableLiterals = new ArrayList<>(myITables.size() + 1);
+        // for each IMT slot, the lowest numbered selector of this class which hashes to it, and its implementation
+        int[] imtSelectorsOfClass = new int[IMT_SIZE];
+        Literal[] imtTargets = new Literal[IMT_SIZE];
+        int imtConflicts = 0;
         for (ITableInfo itableInfo : myITables) {
             MethodElement[] itable = itableInfo.getItable();
             LoadedTypeDefinition currentInterface = itableInfo.getInterface();
@@ -267,7 +333,8 @@ public class DispatchTables {
                         if (!methImpl.isNative() && RTAInfo.get(ctxt).isInvokableMethod(methImpl)) {
                             ctxt.error(methImpl, "Missing method implementation for vtable of %s", cls.getInternalName());
                         } else {
-                            MethodElement uleStub = ctxt.getVMHelperMethod("raiseUnsatisfiedLinkError");
+                            MethodElement nativeImpl = getNativeImplementation(methImpl);
+                            MethodElement uleStub = nativeImpl != null ? nativeImpl : ctxt.getVMHelperMethod("raiseUnsatisfiedLinkError");
                             Function uleImpl = ctxt.getExactFunction(uleStub);
                             SymbolLiteral uleLiteral = lf.literalOfSymbol(uleImpl.getLiteral().getName(), uleImpl.getLiteral().getType().getPointer());
                             cSection.declareFunction(uleStub, uleImpl.getName(), uleImpl.getType());
@@ -280,6 +347,21 @@ public class DispatchTables {
                         valueMap.put(itableInfo.getType().getMember(i), impl.getLiteral());
                     }
                 }
+                Literal target = valueMap.get(itableInfo.getType().getMember(i));
+                int selector = getIMTSelector(itable[i]);
+                if (target != null && selector != 0) {
+                    int slot = getIMTSlot(selector);
+                    int existing = imtSelectorsOfClass[slot];
+                    if (existing != selector) {
+                        if (existing != 0) {
+                            imtConflicts++;
+                        }
+                        if (existing == 0 || selector < existing) {
+                            imtSelectorsOfClass[slot] = selector;
+                            imtTargets[slot] = lf.bitcastLiteral(target, ts.getVoidType().getPointer());
+                        }
+                    }
+                }
             }
 
             String functionsName = "qbicc_itable_funcs_for_"+currentInterface.getInterfaceType().toFriendlyString();
@@ -297,6 +379,20 @@ public class DispatchTables {
             lf.literalOf(ts.getArrayType(itableDictType, myITables.size() + 1), itableLiterals));
         emittedClassITableDictCount += 1;
         emittedClassITableDictBytes += (myITables.size() + 1) * itableDictType.getSize();
+
+        // slots which are empty or hold another selector are resolved by searching the itables at the call site
+        Literal[] imtLiterals = new Literal[IMT_SIZE];
+        for (int slot = 0; slot < IMT_SIZE; slot++) {
+            if (imtSelectorsOfClass[slot] == 0) {
+                imtLiterals[slot] = lf.zeroInitializerLiteralOfType(imtEntryType);
+            } else {
+                imtLiterals[slot] = lf.literalOf(imtEntryType, Map.of(imtEntryType.getMember("selector"), lf.literalOf(imtSelectorsOfClass[slot]),
+                    imtEntryType.getMember("target"), imtTargets[slot]));
+            }
+        }
+        cSection.addData(null, "qbicc_imt_for_" + cls.getInternalName().replace('/', '.'), lf.literalOf(imtType, List.of(imtLiterals)));
+        emittedIMTCount += 1;
+        emittedIMTConflictCount += imtConflicts;
     }
 
     void emitITableTable(LoadedTypeDefinition jlo) {
@@ -323,6 +419,35 @@ public class DispatchTables {
         slog.debugf("Emitted %d class itable dictionaries with combined size of %d bytes", emittedClassITableDictCount, emittedClassITableDictBytes);
     }
 
+    void emitIMTTable(LoadedTypeDefinition jlo) {
+        ArrayType imtsGlobalType = ((ArrayType) imtsGlobal.getType());
+        Section section = ctxt.getImplicitSection(jlo);
+        LiteralFactory lf = ctxt.getLiteralFactory();
+
+        // classes which implement no interface methods share a table of empty slots
+        String emptyName = "qbicc_imt_empty";
+        section.addData(null, emptyName, lf.zeroInitializerLiteralOfType(imtType));
+        Literal emptyLiteral = lf.literalOfSymbol(emptyName, imtType.getPointer());
+        Literal zeroLiteral = lf.zeroInitializerLiteralOfType(imtsGlobalType.getElementType());
+        Literal[] imtLiterals = new Literal[(int) imtsGlobalType.getElementCount()];
+        Arrays.fill(imtLiterals, zeroLiteral);
+        for (LoadedTypeDefinition cls : vtables.keySet()) {
+            if (!cls.isAbstract()) {
+                imtLiterals[cls.getTypeId()] = emptyLiteral;
+            }
+        }
+        for (LoadedTypeDefinition cls : classesWithITables) {
+            String imtName = "qbicc_imt_for_" + cls.getInternalName().replace('/', '.');
+            SymbolLiteral symLit = lf.literalOfSymbol(imtName, imtType.getPointer());
+            imtLiterals[cls.getTypeId()] = symLit;
+            section.declareData(null, imtName, imtType);
+        }
+
+        section.addData(null, imtsGlobal.getName(), lf.literalOf(imtsGlobalType, List.of(imtLiterals)));
+        slog.debugf("Root imt[] has %d slots (%d bytes)", imtLiterals.length, imtLiterals.length * ctxt.getTypeSystem().getPointerSize());
+        slog.debugf("Emitted %d IMTs with combined size of %d bytes and %d slot conflicts", emittedIMTCount, emittedIMTCount * imtType.getSize(), emittedIMTConflictCount);
+    }
+
     public GlobalVariableElement getVTablesGlobal() {
         return vtablesGlobal;
     }
@@ -335,6 +460,56 @@ public class DispatchTables {
         return itableDictType;
     }
 
+    public GlobalVariableElement getIMTsGlobal() {
+        return imtsGlobal;
+    }
+
+    public CompoundType getIMTEntryType() {
+        return imtEntryType;
+    }
+
+    /**
+     * Get the number of the selector of the given interface method.
+     *
+     * @param target the interface method (must not be {@code null})
+     * @return the selector number, or 0 if the method has no itable entry
+     */
+    public int getIMTSelector(MethodElement target) {
+        Integer selector = imtSelectors.get(getSelector(target));
+        return selector == null ? 0 : selector.intValue();
+    }
+
+    /**
+     * Get the IMT slot of the given selector number.
+     *
+     * @param selector the selector number
+     * @return the slot index
+     */
+    public int getIMTSlot(int selector) {
+        // spread selectors which are numbered close together, e.g. the methods of a single interface
+        int h = selector * 0x9E3779B9;
+        return (h >>> 16) % IMT_SIZE;
+    }
+
+    /**
+     * Get the VM helper which implements the given native method, if any.  The helper is a static method which
+     * takes the receiver as its only parameter in place of the method's parameters, so that it has the same
+     * function type as the method.
+     *
+     * @param method the method (must not be {@code null})
+     * @return the helper method, or {@code null} if the method is not a native method which is implemented by a helper
+     */
+    public MethodElement getNativeImplementation(MethodElement method) {
+        if (method.isNative() && method.getParameters().isEmpty() && method.getEnclosingType().internalNameEquals("java/lang/Object") && method.nameEquals("hashCode")) {
+            return ctxt.getVMHelperMethod("identity_hash_code");
+        }
+        return null;
+    }
+
+    private static String getSelector(MethodElement m) {
+        return m.getName() + m.getDescriptor();
+    }
+
     public int getVTableIndex(MethodElement target) {
         LoadedTypeDefinition definingType = target.getEnclosingType().load();
         VTableInfo info = getVTableInfo(definingType);
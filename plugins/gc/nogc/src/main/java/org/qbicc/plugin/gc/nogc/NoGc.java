@@ -6,6 +6,8 @@ import org.qbicc.type.ClassObjectType;
 import org.qbicc.context.ClassContext;
 import org.qbicc.type.definition.DefinedTypeDefinition;
 import org.qbicc.type.definition.LoadedTypeDefinition;
+import org.qbicc.plugin.threadlocal.ThreadLocals;
+import org.qbicc.type.definition.element.FieldElement;
 import org.qbicc.type.definition.element.MethodElement;
 
 /**
@@ -14,9 +16,12 @@ import org.qbicc.type.definition.element.MethodElement;
 public final class NoGc {
     private final CompilationContext ctxt;
     private final MethodElement allocateMethod;
+    private final MethodElement allocateSlowMethod;
     private final MethodElement copyMethod;
     private final MethodElement zeroMethod;
     private final ClassObjectType stackObjectType;
+    private final FieldElement tlabTopField;
+    private final FieldElement tlabEndField;
 
     private NoGc(final CompilationContext ctxt) {
         this.ctxt = ctxt;
@@ -41,6 +46,18 @@ public final class NoGc {
             throw methodMissing();
         }
         zeroMethod = loaded.getMethod(index);
+        index = loaded.findMethodIndex(e -> e.getName().equals("allocateSlow"));
+        if (index == -1) {
+            throw methodMissing();
+        }
+        allocateSlowMethod = loaded.getMethod(index);
+        // the thread-local allocation buffer fields are injected into Thread when the helpers are loaded
+        ThreadLocals threadLocals = ThreadLocals.get(ctxt);
+        tlabTopField = threadLocals.getThreadLocalField(loaded.findField("tlabTop"));
+        tlabEndField = threadLocals.getThreadLocalField(loaded.findField("tlabEnd"));
+        if (tlabTopField == null || tlabEndField == null) {
+            throw new IllegalStateException("Required thread-local fields are missing from the NoGC helpers");
+        }
         defined = classContext.findDefinedType("org/qbicc/runtime/StackObject");
         if (defined == null) {
             throw runtimeMissing();
@@ -67,6 +84,28 @@ public final class NoGc {
         return allocateMethod;
     }
 
+    public MethodElement getAllocateSlowMethod() {
+        return allocateSlowMethod;
+    }
+
+    /**
+     * Get the field of {@code Thread} which holds the address of the next free byte of the thread's allocation buffer.
+     *
+     * @return the field (not {@code null})
+     */
+    public FieldElement getTlabTopField() {
+        return tlabTopField;
+    }
+
+    /**
+     * Get the field of {@code Thread} which holds the address of the end of the thread's allocation buffer.
+     *
+     * @return the field (not {@code null})
+     */
+    public FieldElement getTlabEndField() {
+        return tlabEndField;
+    }
+
     public MethodElement getCopyMethod() {
         return copyMethod;
     }
@@ -3,11 +3,15 @@ package org.qbicc.plugin.gc.nogc;
 import java.util.List;
 
 import org.qbicc.context.CompilationContext;
+import org.qbicc.graph.BasicBlock;
 import org.qbicc.graph.BasicBlockBuilder;
 import org.qbicc.graph.BlockEarlyTermination;
+import org.qbicc.graph.BlockLabel;
 import org.qbicc.graph.DelegatingBasicBlockBuilder;
 import org.qbicc.graph.MemoryAtomicityMode;
+import org.qbicc.graph.PhiValue;
 import org.qbicc.graph.Value;
+import org.qbicc.graph.ValueHandle;
 import org.qbicc.graph.literal.IntegerLiteral;
 import org.qbicc.graph.literal.LiteralFactory;
 import org.qbicc.plugin.coreclasses.CoreClasses;
@@ -17,21 +21,31 @@ import org.qbicc.type.ArrayObjectType;
 import org.qbicc.type.ClassObjectType;
 import org.qbicc.type.CompoundType;
 import org.qbicc.type.IntegerType;
+import org.qbicc.type.SignedIntegerType;
 import org.qbicc.type.ValueType;
 import org.qbicc.type.WordType;
+import org.qbicc.type.definition.element.ExecutableElement;
 import org.qbicc.type.definition.element.FieldElement;
+import org.qbicc.type.definition.element.FunctionElement;
 
 /**
- *
+ * A graph factory which lowers allocations for the no-GC heap.
+ * <p>
+ * Objects are allocated from a thread-local allocation buffer by bumping a pointer inline, and the allocation
+ * helper is only called when the buffer is exhausted.  The buffers are zeroed when they are obtained, so objects
+ * allocated from them need no further zeroing.  Functions (as opposed to methods) may run before the current thread
+ * is attached, so they always call the allocation helper.
  */
 public class NoGcBasicBlockBuilder extends DelegatingBasicBlockBuilder {
     private final CompilationContext ctxt;
     private final CoreClasses coreClasses;
+    private final ExecutableElement originalElement;
 
     public NoGcBasicBlockBuilder(final CompilationContext ctxt, final BasicBlockBuilder delegate) {
         super(delegate);
         this.ctxt = ctxt;
         this.coreClasses = CoreClasses.get(ctxt);
+        this.originalElement = delegate.getCurrentElement();
     }
 
     public Value new_(final ClassObjectType type) {
@@ -41,23 +55,19 @@ public class NoGcBasicBlockBuilder extends DelegatingBasicBlockBuilder {
         CompoundType compoundType = info.getCompoundType();
         LiteralFactory lf = ctxt.getLiteralFactory();
         IntegerLiteral align = lf.literalOf(compoundType.getAlign());
-        Value ptrVal;
         if (type.isSubtypeOf(noGc.getStackObjectType()) /*|| objectDoesNotEscape && objectIsSmallEnough */) {
-            ptrVal = stackAllocate(compoundType, lf.literalOf(1), align);
-        } else {
-            long size = compoundType.getSize();
-            ptrVal = notNull(call(staticMethod(noGc.getAllocateMethod()), List.of(lf.literalOf(size), align)));
-        }
-        Value oop = valueConvert(ptrVal, type.getReference());
+            Value ptrVal = stackAllocate(compoundType, lf.literalOf(1), align);
+            Value oop = valueConvert(ptrVal, type.getReference());
 
-        // zero initialize the object's instance fields
-        call(staticMethod(noGc.getZeroMethod()), List.of(ptrVal, lf.literalOf(info.getCompoundType().getSize())));
+            // zero initialize the object's instance fields
+            call(staticMethod(noGc.getZeroMethod()), List.of(ptrVal, lf.literalOf(info.getCompoundType().getSize())));
 
-        return oop;
+            return oop;
+        }
+        return valueConvert(allocate(lf.literalOf(compoundType.getSize()), align), type.getReference());
     }
 
     public Value newArray(final ArrayObjectType arrayType, Value size) {
-        NoGc noGc = NoGc.get(ctxt);
         Layout layout = Layout.get(ctxt);
         FieldElement arrayContentField = coreClasses.getArrayContentField(arrayType);
         LayoutInfo info = layout.getInstanceLayoutInfo(arrayContentField.getEnclosingType());
@@ -73,11 +83,52 @@ public class NoGcBasicBlockBuilder extends DelegatingBasicBlockBuilder {
         assert Long.bitCount(elementSize) == 1;
         int elementShift = Long.numberOfTrailingZeros(elementSize);
         Value realSize = add(baseSize, elementShift == 0 ? size : shl(size, lf.literalOf((IntegerType)size.getType(), elementShift)));
-        Value ptrVal = notNull(call(staticMethod(noGc.getAllocateMethod()), List.of(realSize, align)));
-
-        call(staticMethod(noGc.getZeroMethod()), List.of(ptrVal, realSize));
+        return valueConvert(allocate(realSize, align), arrayType.getReference());
+    }
 
-        return valueConvert(ptrVal, arrayType.getReference());
+    /**
+     * Allocate zeroed memory for an object.
+     *
+     * @param size the size in bytes, as a {@code long}
+     * @param align the alignment in bytes
+     * @return a reference to the allocated memory
+     */
+    private Value allocate(Value size, IntegerLiteral align) {
+        NoGc noGc = NoGc.get(ctxt);
+        if (originalElement instanceof FunctionElement) {
+            // the current thread may not be attached yet
+            Value ptrVal = notNull(call(staticMethod(noGc.getAllocateMethod()), List.of(size, align)));
+            call(staticMethod(noGc.getZeroMethod()), List.of(ptrVal, size));
+            return ptrVal;
+        }
+        BasicBlockBuilder fb = getFirstBuilder();
+        LiteralFactory lf = ctxt.getLiteralFactory();
+        SignedIntegerType s64 = ctxt.getTypeSystem().getSignedInteger64Type();
+        ValueHandle thread = fb.referenceHandle(fb.currentThread());
+        ValueHandle topHandle = fb.instanceFieldOf(thread, noGc.getTlabTopField());
+        // thread-local allocation buffer fields are never visible outside of the current thread
+        Value top = load(topHandle, MemoryAtomicityMode.NONE);
+        long alignMask = align.longValue() - 1;
+        Value start = alignMask == 0 ? top : and(add(top, lf.literalOf(s64, alignMask)), lf.literalOf(s64, ~alignMask));
+        Value end = add(start, size);
+        Value limit = load(fb.instanceFieldOf(thread, noGc.getTlabEndField()), MemoryAtomicityMode.NONE);
+        BlockLabel fast = new BlockLabel();
+        BlockLabel slow = new BlockLabel();
+        BlockLabel resume = new BlockLabel();
+        if_(isLe(end, limit), fast, slow);
+        begin(fast);
+        store(topHandle, end, MemoryAtomicityMode.NONE);
+        ValueType refType = noGc.getAllocateSlowMethod().getType().getReturnType();
+        Value fastPtr = valueConvert(start, (WordType) refType);
+        BasicBlock fastBlock = goto_(resume);
+        begin(slow);
+        Value slowPtr = call(staticMethod(noGc.getAllocateSlowMethod()), List.of(size, align));
+        BasicBlock slowBlock = goto_(resume);
+        begin(resume);
+        PhiValue ptrVal = phi(refType, resume);
+        ptrVal.setValueForBlock(ctxt, getCurrentElement(), fastBlock, fastPtr);
+        ptrVal.setValueForBlock(ctxt, getCurrentElement(), slowBlock, slowPtr);
+        return notNull(ptrVal);
     }
 
     public Value clone(final Value object) {
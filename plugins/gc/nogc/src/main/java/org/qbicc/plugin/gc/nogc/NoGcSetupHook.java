@@ -11,6 +11,7 @@ import org.qbicc.type.definition.element.InitializerElement;
 public class NoGcSetupHook implements Consumer<CompilationContext> {
     public void accept(final CompilationContext ctxt) {
         ctxt.registerEntryPoint(NoGc.get(ctxt).getAllocateMethod());
+        ctxt.registerEntryPoint(NoGc.get(ctxt).getAllocateSlowMethod());
         ctxt.registerEntryPoint(NoGc.get(ctxt).getCopyMethod());
         ctxt.registerEntryPoint(NoGc.get(ctxt).getZeroMethod());
 
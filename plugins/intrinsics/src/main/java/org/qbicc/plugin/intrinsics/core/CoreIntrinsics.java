@@ -44,7 +44,11 @@ import org.qbicc.plugin.instanceofcheckcast.SupersDisplayTables;
 import org.qbicc.plugin.intrinsics.InstanceIntrinsic;
 import org.qbicc.plugin.intrinsics.Intrinsics;
 import org.qbicc.plugin.intrinsics.StaticIntrinsic;
+import org.qbicc.plugin.metrics.Metrics;
+import org.qbicc.plugin.metrics.Timer;
+import org.qbicc.plugin.reachability.RTAInfo;
 import org.qbicc.plugin.serialization.BuildtimeHeap;
+import org.qbicc.type.ArrayObjectType;
 import org.qbicc.type.ArrayType;
 import org.qbicc.type.BooleanType;
 import org.qbicc.type.ClassObjectType;
@@ -53,6 +57,7 @@ import org.qbicc.type.CompoundType.Member;
 import org.qbicc.type.FloatType;
 import org.qbicc.type.IntegerType;
 import org.qbicc.type.InterfaceObjectType;
+import org.qbicc.type.ObjectType;
 import org.qbicc.type.PointerType;
 import org.qbicc.type.Primitive;
 import org.qbicc.type.ReferenceType;
@@ -301,8 +306,10 @@ public final class CoreIntrinsics {
         //    private static native boolean isBigEndian();
 
         CProbe probe = CProbe.builder().build();
-        try {
-            CProbe.Result result = probe.run(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), ctxt);
+        Metrics metrics = Metrics.get(ctxt);
+        metrics.getOrCreateRootCountMetric("c-probe").getOrAddChild("endianness").add(1);
+        try (Timer.StopWatch ignored = metrics.getOrCreateRootTimer("c-probe").getOrAddChild("endianness").startTimedTryBlock()) {
+            CProbe.Result result = probe.run(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), ctxt, ctxt.getAttachment(Driver.C_PROBE_CACHE_KEY));
             if (result == null) {
                 ctxt.error("Failed to probe target endianness (no exception)");
             } else {
@@ -376,9 +383,8 @@ public final class CoreIntrinsics {
 
         // identity hash code
 
-        // todo: obviously non-optimal; replace once we have object headers sorted out
         StaticIntrinsic identityHashCode = (builder, target, arguments) ->
-            ctxt.getLiteralFactory().literalOf(0);
+            builder.getFirstBuilder().call(builder.staticMethod(ctxt.getVMHelperMethod("identity_hash_code")), arguments);
 
         intrinsics.registerIntrinsic(systemDesc, "identityHashCode", objectToIntDesc, identityHashCode);
 
@@ -458,9 +464,12 @@ public final class CoreIntrinsics {
             VirtualMethodElementHandle runHandle = (VirtualMethodElementHandle)builder.virtualMethodOf(threadObject, jltDesc, "run", voidDesc);
             builder.call(runHandle, List.of());
 
-            /* set java.lang.Thread.threadStatus to terminated */
+            /* set java.lang.Thread.threadStatus to terminated, and wake the threads which join this thread */
+            builder.monitorEnter(threadObject);
             ValueHandle threadStatusHandle = builder.instanceFieldOf(threadObjectHandle, jltDesc, "threadStatus", BaseTypeDescriptor.I);
             builder.store(threadStatusHandle, ctxt.getLiteralFactory().literalOf(threadTerminated), MemoryAtomicityMode.NONE);
+            builder.getFirstBuilder().call(builder.staticMethod(ctxt.getVMHelperMethod("monitor_notify")), List.of(threadObject, ctxt.getLiteralFactory().literalOf(true)));
+            builder.monitorExit(threadObject);
 
             return ctxt.getLiteralFactory().zeroInitializerLiteralOfType(target.getType().getReturnType()); /* return null */
         };
@@ -513,6 +522,19 @@ public final class CoreIntrinsics {
 
         /* private native void setPriority0(int newPriority); */
         intrinsics.registerIntrinsic(jltDesc, "setPriority0", voidIntDesc, nopInstance);
+
+        /* private native void interrupt0(); */
+        MethodDescriptor JLT_interrupt0Desc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.V, List.of(jltDesc));
+        InstanceIntrinsic interrupt0 = (builder, instance, target, arguments) ->
+            builder.call(builder.staticMethod(vmHelpersDesc, "JLT_interrupt0", JLT_interrupt0Desc), List.of(instance));
+        intrinsics.registerIntrinsic(jltDesc, "interrupt0", voidDesc, interrupt0);
+
+        /* private native boolean isInterrupted(boolean ClearInterrupted); */
+        MethodDescriptor booleanBooleanDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.Z, List.of(BaseTypeDescriptor.Z));
+        MethodDescriptor JLT_isInterruptedDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.Z, List.of(jltDesc, BaseTypeDescriptor.Z));
+        InstanceIntrinsic isInterrupted = (builder, instance, target, arguments) ->
+            builder.call(builder.staticMethod(vmHelpersDesc, "JLT_isInterrupted", JLT_isInterruptedDesc), List.of(instance, arguments.get(0)));
+        intrinsics.registerIntrinsic(jltDesc, "isInterrupted", booleanBooleanDesc, isInterrupted);
     }
 
     public static void registerJavaLangThrowableIntrinsics(CompilationContext ctxt) {
@@ -650,17 +672,35 @@ public final class CoreIntrinsics {
 
         intrinsics.registerIntrinsic(Phase.ADD, objDesc, "getClass", getClassDesc, getClassIntrinsic);
 
-        // Object#hashCode TODO redo when object headers are set
+        // Object#hashCode --> identity hash code, if no possible receiver overrides it; otherwise the call is
+        // dispatched normally, and the dispatch tables and invocation lowering bind Object#hashCode to the helper
         MethodDescriptor hashCodeDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.I, List.of());
-        InstanceIntrinsic hashCodeIntrinsic = (builder, instance, target, arguments)->
-            ctxt.getLiteralFactory().literalOf(0);
-        intrinsics.registerIntrinsic(objDesc, "hashCode", hashCodeDesc, hashCodeIntrinsic);
+        InstanceIntrinsic hashCodeIntrinsic = (builder, instance, target, arguments) -> {
+            if (! (instance.getType() instanceof ReferenceType)) {
+                return null;
+            }
+            ObjectType receiverType = ((ReferenceType) instance.getType()).getUpperBound();
+            if (receiverType instanceof ClassObjectType) {
+                RTAInfo info = RTAInfo.get(ctxt);
+                if (info.getSingleImplementation(receiverType.getDefinition().load(), target) != target) {
+                    return null;
+                }
+            } else if (! (receiverType instanceof ArrayObjectType)) {
+                return null;
+            }
+            MethodElement helper = ctxt.getVMHelperMethod("identity_hash_code");
+            return builder.getFirstBuilder().call(builder.staticMethod(helper), List.of(instance));
+        };
+        intrinsics.registerIntrinsic(Phase.LOWER, objDesc, "hashCode", hashCodeDesc, hashCodeIntrinsic);
 
-        // TODO: replace this do nothing stub of notifyAll with real implementation
-        MethodDescriptor notifyAllDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.V, List.of());
-        InstanceIntrinsic notifyAllIntrinsic = (builder, instance, target, arguments) -> 
-            ctxt.getLiteralFactory().zeroInitializerLiteralOfType(ctxt.getTypeSystem().getVoidType()); // Do nothing
-        intrinsics.registerIntrinsic(objDesc, "notifyAll", notifyAllDesc, notifyAllIntrinsic);
+        MethodDescriptor notifyDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.V, List.of());
+        InstanceIntrinsic notifyIntrinsic = (builder, instance, target, arguments) ->
+            builder.getFirstBuilder().call(builder.staticMethod(ctxt.getVMHelperMethod("monitor_notify")), List.of(instance, ctxt.getLiteralFactory().literalOf(false)));
+        intrinsics.registerIntrinsic(objDesc, "notify", notifyDesc, notifyIntrinsic);
+
+        InstanceIntrinsic notifyAllIntrinsic = (builder, instance, target, arguments) ->
+            builder.getFirstBuilder().call(builder.staticMethod(ctxt.getVMHelperMethod("monitor_notify")), List.of(instance, ctxt.getLiteralFactory().literalOf(true)));
+        intrinsics.registerIntrinsic(objDesc, "notifyAll", notifyDesc, notifyAllIntrinsic);
 
         InstanceIntrinsic clone = (builder, instance, target, arguments) -> {
             ValueType instanceType = instance.getType();
@@ -689,9 +729,10 @@ public final class CoreIntrinsics {
 
         intrinsics.registerIntrinsic(objDesc, "clone", MethodDescriptor.synthesize(classContext, objDesc, List.of()), clone);
 
-        // stub - public final native void wait(long timeoutMillis)
+        // public final native void wait(long timeoutMillis)
         MethodDescriptor waitDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.V, List.of(BaseTypeDescriptor.J));
-        InstanceIntrinsic wait = (builder, instance, target, arguments) -> ctxt.getLiteralFactory().zeroInitializerLiteralOfType(target.getType().getReturnType());
+        InstanceIntrinsic wait = (builder, instance, target, arguments) ->
+            builder.getFirstBuilder().call(builder.staticMethod(ctxt.getVMHelperMethod("monitor_wait")), List.of(instance, arguments.get(0)));
         intrinsics.registerIntrinsic(objDesc, "wait", waitDesc, wait);
     }
 
@@ -1311,6 +1352,94 @@ public final class CoreIntrinsics {
             return builder.call(valuesCompareAndSwap, List.of(expr, expect, update));
         };
         intrinsics.registerIntrinsic(objModDesc, "set_nativeObjectMonitor", setNomDesc, setNom);
+
+        FieldElement headerField = coreClasses.getObjectHeaderField();
+        UnsignedIntegerType headerType = (UnsignedIntegerType) headerField.getType();
+        int hashShift = coreClasses.getIdentityHashCodeShift();
+        long hashMask = (1L << CoreClasses.IDENTITY_HASH_CODE_BITS) - 1;
+        long headerMask = headerType.getMinBits() == 64 ? -1L : (1L << headerType.getMinBits()) - 1;
+        UnsignedIntegerType u32 = ctxt.getTypeSystem().getUnsignedInteger32Type();
+        SignedIntegerType s32 = ctxt.getTypeSystem().getSignedInteger32Type();
+
+        // int identity_hash_code_of(Object reference);
+        MethodDescriptor objIntDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.I, List.of(objDesc));
+        StaticIntrinsic identityHashCodeOf = (builder, target, arguments) -> {
+            Value header = builder.load(builder.instanceFieldOf(builder.referenceHandle(arguments.get(0)), headerField), MemoryAtomicityMode.MONOTONIC);
+            Value hashCode = builder.and(builder.shr(header, lf.literalOf(headerType, hashShift)), lf.literalOf(headerType, hashMask));
+            if (headerType.getMinBits() > 32) {
+                hashCode = builder.truncate(hashCode, u32);
+            } else if (headerType.getMinBits() < 32) {
+                hashCode = builder.extend(hashCode, u32);
+            }
+            return builder.bitCast(hashCode, s32);
+        };
+        intrinsics.registerIntrinsic(objModDesc, "identity_hash_code_of", objIntDesc, identityHashCodeOf);
+
+        // boolean set_identity_hash_code(Object reference, int hashCode);
+        MethodDescriptor objIntBoolDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.Z, List.of(objDesc, BaseTypeDescriptor.I));
+        StaticIntrinsic setIdentityHashCode = (builder, target, arguments) -> {
+            ValueHandle handle = builder.instanceFieldOf(builder.referenceHandle(arguments.get(0)), headerField);
+            Value header = builder.load(handle, MemoryAtomicityMode.MONOTONIC);
+            // expect no hash code to be assigned, so that an assigned one is never overwritten
+            Value expect = builder.and(header, lf.literalOf(headerType, ~(hashMask << hashShift) & headerMask));
+            Value hashCode = builder.bitCast(arguments.get(1), u32);
+            if (headerType.getMinBits() > 32) {
+                hashCode = builder.extend(hashCode, headerType);
+            } else if (headerType.getMinBits() < 32) {
+                hashCode = builder.truncate(hashCode, headerType);
+            }
+            hashCode = builder.and(hashCode, lf.literalOf(headerType, hashMask));
+            Value update = builder.or(expect, builder.shl(hashCode, lf.literalOf(headerType, hashShift)));
+            Value result = builder.cmpAndSwap(handle, expect, update, MemoryAtomicityMode.MONOTONIC, MemoryAtomicityMode.MONOTONIC, CmpAndSwap.Strength.STRONG);
+            Value resultValue = builder.extractMember(result, ((CmpAndSwap) result).getResultValueType());
+            return builder.isEq(resultValue, expect);
+        };
+        intrinsics.registerIntrinsic(objModDesc, "set_identity_hash_code", objIntBoolDesc, setIdentityHashCode);
+
+        int lockShift = coreClasses.getThinLockShift();
+        long lockMask = (1L << CoreClasses.THIN_LOCK_BITS) - 1;
+
+        // int lock_word_of(Object reference);
+        StaticIntrinsic lockWordOf = (builder, target, arguments) -> {
+            Value header = builder.load(builder.instanceFieldOf(builder.referenceHandle(arguments.get(0)), headerField), MemoryAtomicityMode.ACQUIRE);
+            Value lockWord = builder.and(builder.shr(header, lf.literalOf(headerType, lockShift)), lf.literalOf(headerType, lockMask));
+            if (headerType.getMinBits() > 32) {
+                lockWord = builder.truncate(lockWord, u32);
+            } else if (headerType.getMinBits() < 32) {
+                lockWord = builder.extend(lockWord, u32);
+            }
+            return builder.bitCast(lockWord, s32);
+        };
+        intrinsics.registerIntrinsic(objModDesc, "lock_word_of", objIntDesc, lockWordOf);
+
+        // boolean set_lock_word(Object reference, int expect, int update);
+        MethodDescriptor objIntIntBoolDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.Z, List.of(objDesc, BaseTypeDescriptor.I, BaseTypeDescriptor.I));
+        StaticIntrinsic setLockWord = (builder, target, arguments) -> {
+            ValueHandle handle = builder.instanceFieldOf(builder.referenceHandle(arguments.get(0)), headerField);
+            Value header = builder.load(handle, MemoryAtomicityMode.MONOTONIC);
+            Value rest = builder.and(header, lf.literalOf(headerType, ~(lockMask << lockShift) & headerMask));
+            Value expectWord = builder.bitCast(arguments.get(1), u32);
+            Value updateWord = builder.bitCast(arguments.get(2), u32);
+            if (headerType.getMinBits() > 32) {
+                expectWord = builder.extend(expectWord, headerType);
+                updateWord = builder.extend(updateWord, headerType);
+            } else if (headerType.getMinBits() < 32) {
+                expectWord = builder.truncate(expectWord, headerType);
+                updateWord = builder.truncate(updateWord, headerType);
+            }
+            Value expect = builder.or(rest, builder.shl(expectWord, lf.literalOf(headerType, lockShift)));
+            Value update = builder.or(rest, builder.shl(updateWord, lf.literalOf(headerType, lockShift)));
+            Value result = builder.cmpAndSwap(handle, expect, update, MemoryAtomicityMode.ACQUIRE_RELEASE, MemoryAtomicityMode.MONOTONIC, CmpAndSwap.Strength.STRONG);
+            Value resultValue = builder.extractMember(result, ((CmpAndSwap) result).getResultValueType());
+            return builder.isEq(resultValue, expect);
+        };
+        intrinsics.registerIntrinsic(objModDesc, "set_lock_word", objIntIntBoolDesc, setLockWord);
+
+        // long thread_id_of(Thread thread);
+        MethodDescriptor jltLongDesc = MethodDescriptor.synthesize(classContext, BaseTypeDescriptor.J, List.of(jltDesc));
+        StaticIntrinsic threadIdOf = (builder, target, arguments) ->
+            builder.load(builder.instanceFieldOf(builder.referenceHandle(arguments.get(0)), jltDesc, "tid", BaseTypeDescriptor.J), MemoryAtomicityMode.NONE);
+        intrinsics.registerIntrinsic(objModDesc, "thread_id_of", jltLongDesc, threadIdOf);
     }
 
     static void registerOrgQbiccRuntimeValuesIntrinsics(final CompilationContext ctxt) {
@@ -0,0 +1,72 @@
+package org.qbicc.plugin.llvm;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.qbicc.context.CompilationContext;
+
+/**
+ * A bounded pool of threads which compile modules as soon as they are generated, so that IR generation and
+ * native compilation overlap.  When the pool's queue is full, the submitting thread compiles the module itself,
+ * which throttles generation to the speed of compilation.
+ */
+final class LLVMCompilePool {
+    private final CompilationContext context;
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<LLVMCompiler> compilers;
+
+    LLVMCompilePool(final CompilationContext context, final LLVMConfiguration config, final int threadCnt) {
+        this.context = context;
+        AtomicInteger threadIdx = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threadCnt, threadCnt, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threadCnt << 1), r -> {
+            Thread thread = new Thread(r, "qbicc LLVM compile thread " + threadIdx.incrementAndGet() + "/" + threadCnt);
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // do not leak idle threads if the build bails out before the pool is awaited
+        executor.allowCoreThreadTimeOut(true);
+        // the invokers are stateful, so each thread needs its own compiler
+        compilers = ThreadLocal.withInitial(() -> new LLVMCompiler(context, config));
+    }
+
+    /**
+     * Submit a generated module for compilation.
+     *
+     * @param modulePath the path of the generated module (must not be {@code null})
+     */
+    void submit(Path modulePath) {
+        executor.execute(() -> {
+            try {
+                compilers.get().compileModule(context, modulePath);
+            } catch (Throwable t) {
+                context.error(t, "Compilation of module \"%s\" failed: %s", modulePath, t);
+            }
+        });
+    }
+
+    /**
+     * Wait for all submitted modules to be compiled, and shut down the pool.
+     */
+    void awaitCompletion() {
+        executor.shutdown();
+        boolean intr = false;
+        try {
+            for (;;) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    intr = true;
+                }
+            }
+        } finally {
+            if (intr) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
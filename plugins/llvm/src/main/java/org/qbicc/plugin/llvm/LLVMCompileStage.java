@@ -7,10 +7,18 @@ import java.util.function.Consumer;
 import org.qbicc.context.CompilationContext;
 
 public class LLVMCompileStage implements Consumer<CompilationContext> {
-    private final boolean isPie;
+    private final LLVMConfiguration config;
 
     public LLVMCompileStage(final boolean isPie) {
-        this.isPie = isPie;
+        this(LLVMConfiguration.builder().setPie(isPie).build());
+    }
+
+    public LLVMCompileStage(final LLVMConfiguration config) {
+        this.config = config;
+    }
+
+    LLVMCompilePool createCompilePool(final CompilationContext context) {
+        return new LLVMCompilePool(context, config, Runtime.getRuntime().availableProcessors());
     }
 
     public void accept(final CompilationContext context) {
@@ -20,9 +28,16 @@ public class LLVMCompileStage implements Consumer<CompilationContext> {
             return;
         }
 
+        LLVMCompilePool compilePool = llvmState.getCompilePool();
+        if (compilePool != null) {
+            // modules were streamed to the pool as they were generated
+            compilePool.awaitCompletion();
+            llvmState.setCompilePool(null);
+        }
+
         Iterator<Path> iterator = llvmState.getModulePaths().iterator();
         context.runParallelTask(ctxt -> {
-            LLVMCompiler compiler = new LLVMCompiler(context, isPie);
+            LLVMCompiler compiler = new LLVMCompiler(context, config);
             for (;;) {
                 Path modulePath;
                 synchronized (iterator) {
@@ -9,6 +9,9 @@ import org.qbicc.machine.tool.ToolMessageHandler;
 import org.qbicc.machine.tool.process.InputSource;
 import org.qbicc.machine.tool.process.OutputDestination;
 import org.qbicc.plugin.linker.Linker;
+import org.qbicc.plugin.metrics.CountMetric;
+import org.qbicc.plugin.metrics.Metrics;
+import org.qbicc.plugin.metrics.Timer;
 import org.qbicc.tool.llvm.LlcInvoker;
 import org.qbicc.tool.llvm.LlvmToolChain;
 import org.qbicc.tool.llvm.OptInvoker;
@@ -18,16 +21,40 @@ import org.qbicc.tool.llvm.RelocationModel;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 public class LLVMCompiler {
+    private static final List<OptPass> OPT_PASSES = List.of(OptPass.RewriteStatepointsForGc, OptPass.AlwaysInline);
+
+    private final LLVMConfiguration config;
     private final LlcInvoker llcInvoker;
     private final OptInvoker optInvoker;
     private final CCompilerInvoker ccInvoker;
+    private final LLVMModuleCache cache;
+    private final Timer toolTimer;
+    private final CountMetric moduleCount;
 
     public LLVMCompiler(CompilationContext context, boolean isPie) {
-        llcInvoker = createLlcInvoker(context, isPie);
+        this(context, LLVMConfiguration.builder().setPie(isPie).build());
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param context the compilation context (must not be {@code null})
+     * @param config the LLVM configuration (must not be {@code null})
+     */
+    public LLVMCompiler(CompilationContext context, LLVMConfiguration config) {
+        this.config = config;
+        llcInvoker = createLlcInvoker(context, config);
         optInvoker = createOptInvoker(context);
-        ccInvoker = createCCompilerInvoker(context);
+        // the assembler is not needed when llc emits objects directly
+        ccInvoker = config.isEmitObjects() ? null : createCCompilerInvoker(context);
+        Path cacheDirectory = config.getCacheDirectory();
+        cache = cacheDirectory == null ? null : new LLVMModuleCache(cacheDirectory, describeConfiguration(context, config));
+        Metrics metrics = Metrics.get(context);
+        toolTimer = metrics.getOrCreateRootTimer("llvm-tools");
+        moduleCount = metrics.getOrCreateRootCountMetric("llvm-modules");
     }
 
     public void compileModule(final CompilationContext context, Path modulePath) {
@@ -36,55 +63,129 @@ public class LLVMCompiler {
         String moduleName = modulePath.getFileName().toString();
         if (moduleName.endsWith(".ll")) {
             String baseName = moduleName.substring(0, moduleName.length() - 3);
-            String optBitCodeName = baseName + "_opt.bc";
-            String assemblyName = baseName + ".s";
             String objectName = baseName + "." + cToolChain.getPlatform().getObjectType().objectSuffix();
 
-            Path optBitCodePath = modulePath.resolveSibling(optBitCodeName);
-            Path assemblyPath = modulePath.resolveSibling(assemblyName);
             Path objectPath = modulePath.resolveSibling(objectName);
 
-            optInvoker.setSource(InputSource.from(modulePath));
-            optInvoker.setDestination(OutputDestination.of(optBitCodePath));
-            int errCnt = context.errors();
-            try {
-                optInvoker.invoke();
-            } catch (IOException e) {
-                if (errCnt == context.errors()) {
-                    // whatever the problem was, it wasn't reported, so add an additional error here
-                    context.error(Location.builder().setSourceFilePath(modulePath.toString()).build(), "`opt` invocation has failed: %s", e.toString());
+            String cacheKey = null;
+            if (cache != null) {
+                try {
+                    cacheKey = cache.computeKey(modulePath);
+                } catch (IOException e) {
+                    context.warning(Location.builder().setSourceFilePath(modulePath.toString()).build(), "Failed to compute module cache key: %s", e.toString());
                 }
-                return;
-            }
-
-            llcInvoker.setSource(InputSource.from(optBitCodePath));
-            llcInvoker.setDestination(OutputDestination.of(assemblyPath));
-            errCnt = context.errors();
-            try {
-                llcInvoker.invoke();
-            } catch (IOException e) {
-                if (errCnt == context.errors()) {
-                    // whatever the problem was, it wasn't reported, so add an additional error here
-                    context.error(Location.builder().setSourceFilePath(modulePath.toString()).build(), "`llc` invocation has failed: %s", e.toString());
+                if (cacheKey != null && cache.restore(cacheKey, objectPath)) {
+                    moduleCount.getOrAddChild("cached").add(1);
+                    Linker.get(context).addObjectFilePath(objectPath);
+                    return;
                 }
-                return;
             }
 
-            // now compile it
-            ccInvoker.setSource(InputSource.from(assemblyPath));
-            ccInvoker.setOutputPath(objectPath);
-            try {
-                ccInvoker.invoke();
-            } catch (IOException e) {
-                context.error("Compiler invocation has failed for %s: %s", modulePath, e.toString());
+            boolean success;
+            if (config.isEmitObjects()) {
+                success = compileToObject(context, modulePath, objectPath);
+            } else {
+                success = compileViaAssembly(context, modulePath, baseName, objectPath);
+            }
+            if (! success) {
                 return;
             }
+            moduleCount.getOrAddChild("compiled").add(1);
+            if (cacheKey != null) {
+                cache.store(cacheKey, objectPath);
+            }
             Linker.get(context).addObjectFilePath(objectPath);
         } else {
             context.warning("Ignoring unknown module file name \"%s\"", modulePath);
         }
     }
 
+    private boolean compileToObject(final CompilationContext context, final Path modulePath, final Path objectPath) {
+        // opt | llc --filetype=obj, with no intermediate files
+        llcInvoker.setDestination(OutputDestination.of(objectPath));
+        optInvoker.setSource(InputSource.from(modulePath));
+        optInvoker.setDestination(llcInvoker.invokerAsDestination());
+        int errCnt = context.errors();
+        try (Timer.StopWatch ignored = toolTimer.getOrAddChild("opt-llc").startTimedTryBlock()) {
+            optInvoker.invoke();
+        } catch (IOException e) {
+            if (errCnt == context.errors()) {
+                // whatever the problem was, it wasn't reported, so add an additional error here
+                context.error(Location.builder().setSourceFilePath(modulePath.toString()).build(), "`opt` | `llc` invocation has failed: %s", e.toString());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean compileViaAssembly(final CompilationContext context, final Path modulePath, final String baseName, final Path objectPath) {
+        Path optBitCodePath = modulePath.resolveSibling(baseName + "_opt.bc");
+        Path assemblyPath = modulePath.resolveSibling(baseName + ".s");
+
+        optInvoker.setSource(InputSource.from(modulePath));
+        optInvoker.setDestination(OutputDestination.of(optBitCodePath));
+        int errCnt = context.errors();
+        try (Timer.StopWatch ignored = toolTimer.getOrAddChild("opt").startTimedTryBlock()) {
+            optInvoker.invoke();
+        } catch (IOException e) {
+            if (errCnt == context.errors()) {
+                // whatever the problem was, it wasn't reported, so add an additional error here
+                context.error(Location.builder().setSourceFilePath(modulePath.toString()).build(), "`opt` invocation has failed: %s", e.toString());
+            }
+            return false;
+        }
+
+        llcInvoker.setSource(InputSource.from(optBitCodePath));
+        llcInvoker.setDestination(OutputDestination.of(assemblyPath));
+        errCnt = context.errors();
+        try (Timer.StopWatch ignored = toolTimer.getOrAddChild("llc").startTimedTryBlock()) {
+            llcInvoker.invoke();
+        } catch (IOException e) {
+            if (errCnt == context.errors()) {
+                // whatever the problem was, it wasn't reported, so add an additional error here
+                context.error(Location.builder().setSourceFilePath(modulePath.toString()).build(), "`llc` invocation has failed: %s", e.toString());
+            }
+            return false;
+        }
+
+        // now compile it
+        ccInvoker.setSource(InputSource.from(assemblyPath));
+        ccInvoker.setOutputPath(objectPath);
+        try (Timer.StopWatch ignored = toolTimer.getOrAddChild("cc").startTimedTryBlock()) {
+            ccInvoker.invoke();
+        } catch (IOException e) {
+            context.error("Compiler invocation has failed for %s: %s", modulePath, e.toString());
+            return false;
+        }
+        return true;
+    }
+
+    private static String describeConfiguration(CompilationContext context, LLVMConfiguration config) {
+        // everything besides the module content which can affect the generated object file
+        StringBuilder b = new StringBuilder();
+        LlvmToolChain llvmToolChain = context.getAttachment(Driver.LLVM_TOOL_KEY);
+        if (llvmToolChain != null) {
+            b.append(llvmToolChain.getImplementationName()).append(' ').append(llvmToolChain.getVersion()).append(';');
+        }
+        CToolChain cToolChain = context.getAttachment(Driver.C_TOOL_CHAIN_KEY);
+        if (cToolChain != null) {
+            b.append(cToolChain.getImplementationName()).append(' ').append(cToolChain.getVersion()).append(';');
+        }
+        b.append(context.getPlatform()).append(';');
+        b.append("pie=").append(config.isPie()).append(';');
+        b.append("opt=");
+        for (OptPass pass : OPT_PASSES) {
+            b.append(pass.name).append(',');
+        }
+        b.append(';');
+        b.append("llc=").append(getLlcOutputFormat(config).toOptionString());
+        return b.toString();
+    }
+
+    private static OutputFormat getLlcOutputFormat(LLVMConfiguration config) {
+        return config.isEmitObjects() ? OutputFormat.OBJ : OutputFormat.ASM;
+    }
+
     private static CCompilerInvoker createCCompilerInvoker(CompilationContext context) {
         CToolChain cToolChain = context.getAttachment(Driver.C_TOOL_CHAIN_KEY);
         if (cToolChain == null) {
@@ -104,12 +205,13 @@ public class LLVMCompiler {
             return null;
         }
         OptInvoker optInvoker = llvmToolChain.newOptInvoker();
-        optInvoker.addOptimizationPass(OptPass.RewriteStatepointsForGc);
-        optInvoker.addOptimizationPass(OptPass.AlwaysInline);
+        for (OptPass pass : OPT_PASSES) {
+            optInvoker.addOptimizationPass(pass);
+        }
         return optInvoker;
     }
 
-    private static LlcInvoker createLlcInvoker(CompilationContext context, boolean isPie) {
+    private static LlcInvoker createLlcInvoker(CompilationContext context, LLVMConfiguration config) {
         LlvmToolChain llvmToolChain = context.getAttachment(Driver.LLVM_TOOL_KEY);
         if (llvmToolChain == null) {
             context.error("No LLVM tool chain is available");
@@ -117,8 +219,8 @@ public class LLVMCompiler {
         }
         LlcInvoker llcInvoker = llvmToolChain.newLlcInvoker();
         llcInvoker.setMessageHandler(ToolMessageHandler.reporting(context));
-        llcInvoker.setOutputFormat(OutputFormat.ASM);
-        llcInvoker.setRelocationModel(isPie ? RelocationModel.Pic : RelocationModel.Static);
+        llcInvoker.setOutputFormat(getLlcOutputFormat(config));
+        llcInvoker.setRelocationModel(config.isPie() ? RelocationModel.Pic : RelocationModel.Static);
         return llcInvoker;
     }
 }
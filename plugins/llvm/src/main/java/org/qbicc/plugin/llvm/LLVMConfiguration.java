@@ -0,0 +1,77 @@
+package org.qbicc.plugin.llvm;
+
+import java.nio.file.Path;
+
+/**
+ * The configuration of the LLVM back end compilation stages.
+ */
+public final class LLVMConfiguration {
+    private final boolean pie;
+    private final Path cacheDirectory;
+    private final boolean emitObjects;
+
+    LLVMConfiguration(final Builder builder) {
+        pie = builder.pie;
+        cacheDirectory = builder.cacheDirectory;
+        emitObjects = builder.emitObjects;
+    }
+
+    /**
+     * Determine whether position-independent code should be generated.
+     *
+     * @return {@code true} to generate position-independent code
+     */
+    public boolean isPie() {
+        return pie;
+    }
+
+    /**
+     * Get the directory of the compiled module cache.
+     *
+     * @return the cache directory, or {@code null} if compiled modules are not cached
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Determine whether object files should be emitted directly by {@code llc}, with the output of {@code opt}
+     * piped into it, rather than by assembling the output of {@code llc} in separate steps.
+     *
+     * @return {@code true} to emit object files directly
+     */
+    public boolean isEmitObjects() {
+        return emitObjects;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private boolean pie;
+        private Path cacheDirectory;
+        private boolean emitObjects;
+
+        Builder() {}
+
+        public Builder setPie(boolean pie) {
+            this.pie = pie;
+            return this;
+        }
+
+        public Builder setCacheDirectory(Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        public Builder setEmitObjects(boolean emitObjects) {
+            this.emitObjects = emitObjects;
+            return this;
+        }
+
+        public LLVMConfiguration build() {
+            return new LLVMConfiguration(this);
+        }
+    }
+}
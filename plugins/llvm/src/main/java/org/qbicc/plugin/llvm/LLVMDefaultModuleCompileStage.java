@@ -6,17 +6,21 @@ import java.nio.file.Path;
 import java.util.function.Consumer;
 
 public class LLVMDefaultModuleCompileStage implements Consumer<CompilationContext> {
-    private final boolean isPie;
+    private final LLVMConfiguration config;
 
     public LLVMDefaultModuleCompileStage(boolean isPie) {
-        this.isPie = isPie;
+        this(LLVMConfiguration.builder().setPie(isPie).build());
+    }
+
+    public LLVMDefaultModuleCompileStage(LLVMConfiguration config) {
+        this.config = config;
     }
 
     @Override
     public void accept(CompilationContext context) {
-        LLVMModuleGenerator generator = new LLVMModuleGenerator(context, isPie ? 2 : 0, isPie ? 2 : 0);
+        LLVMModuleGenerator generator = new LLVMModuleGenerator(context, config.isPie() ? 2 : 0, config.isPie() ? 2 : 0);
         Path modulePath = generator.processProgramModule(context.getProgramModule(context.getDefaultTypeDefinition()));
-        LLVMCompiler compiler = new LLVMCompiler(context, isPie);
+        LLVMCompiler compiler = new LLVMCompiler(context, config);
         compiler.compileModule(context, modulePath);
     }
 }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Consumer;
@@ -47,29 +48,110 @@ import io.smallrye.common.constraint.Assert;
 public class LLVMGenerator implements Consumer<CompilationContext>, ValueVisitor<CompilationContext, LLValue> {
     private final int picLevel;
     private final int pieLevel;
+    private final int partitionCount;
+    private final LLVMCompileStage streamingCompileStage;
 
     public LLVMGenerator(final int picLevel, final int pieLevel) {
+        this(picLevel, pieLevel, null);
+    }
+
+    /**
+     * Construct a new instance.  If a compile stage is given, then each module is submitted to that stage's
+     * compile pool as soon as it is generated, rather than waiting for the stage to run.
+     *
+     * @param picLevel the PIC level
+     * @param pieLevel the PIE level
+     * @param streamingCompileStage the compile stage to stream modules to, or {@code null} to only generate modules
+     */
+    public LLVMGenerator(final int picLevel, final int pieLevel, final LLVMCompileStage streamingCompileStage) {
+        this(picLevel, pieLevel, 0, streamingCompileStage);
+    }
+
+    /**
+     * Construct a new instance.  If a partition count is given, then the program modules are grouped into that
+     * many LLVM modules of roughly equal size, instead of generating one LLVM module for each program module.
+     *
+     * @param picLevel the PIC level
+     * @param pieLevel the PIE level
+     * @param partitionCount the number of partitions, or {@code 0} to generate one LLVM module per program module
+     * @param streamingCompileStage the compile stage to stream modules to, or {@code null} to only generate modules
+     */
+    public LLVMGenerator(final int picLevel, final int pieLevel, final int partitionCount, final LLVMCompileStage streamingCompileStage) {
         this.picLevel = picLevel;
         this.pieLevel = pieLevel;
+        Assert.checkMinimumParameter("partitionCount", 0, partitionCount);
+        this.partitionCount = partitionCount;
+        this.streamingCompileStage = streamingCompileStage;
     }
 
     public void accept(final CompilationContext compilationContext) {
         LLVMModuleGenerator generator = new LLVMModuleGenerator(compilationContext, picLevel, pieLevel);
         List<ProgramModule> allProgramModules = compilationContext.getAllProgramModules();
-        Iterator<ProgramModule> iterator = allProgramModules.iterator();
+        List<GenerationUnit> units;
+        if (partitionCount == 0) {
+            units = new ArrayList<>(allProgramModules.size());
+            for (ProgramModule programModule : allProgramModules) {
+                units.add(new GenerationUnit(List.of(programModule), null));
+            }
+        } else {
+            // the default module is regenerated and compiled separately after the other post-hooks have run
+            DefinedTypeDefinition defaultTypeDefinition = compilationContext.getDefaultTypeDefinition();
+            List<ProgramModule> partitioned = new ArrayList<>(allProgramModules.size());
+            units = new ArrayList<>(partitionCount + 1);
+            for (ProgramModule programModule : allProgramModules) {
+                if (programModule.getTypeDefinition() == defaultTypeDefinition) {
+                    units.add(new GenerationUnit(List.of(programModule), null));
+                } else {
+                    partitioned.add(programModule);
+                }
+            }
+            List<List<ProgramModule>> partitions = LLVMModulePartitioner.partition(partitioned, partitionCount);
+            Path outputDirectory = compilationContext.getOutputDirectory();
+            for (int i = 0; i < partitions.size(); i ++) {
+                units.add(new GenerationUnit(partitions.get(i), outputDirectory.resolve("partition" + i + ".ll")));
+            }
+        }
+        Iterator<GenerationUnit> iterator = units.iterator();
+        LLVMCompilePool compilePool;
+        if (streamingCompileStage != null) {
+            compilePool = streamingCompileStage.createCompilePool(compilationContext);
+            compilationContext.computeAttachmentIfAbsent(LLVMState.KEY, LLVMState::new).setCompilePool(compilePool);
+        } else {
+            compilePool = null;
+        }
         compilationContext.runParallelTask(ctxt -> {
             for (;;) {
-                ProgramModule programModule;
+                GenerationUnit unit;
                 synchronized (iterator) {
                     if (! iterator.hasNext()) {
                         return;
                     }
-                    programModule = iterator.next();
+                    unit = iterator.next();
+                }
+                Path outputFile;
+                if (unit.outputFile == null) {
+                    outputFile = generator.processProgramModule(unit.programModules.get(0));
+                } else {
+                    outputFile = unit.outputFile;
+                    generator.processProgramModules(unit.programModules, outputFile);
+                }
+                if (compilePool != null) {
+                    compilePool.submit(outputFile);
+                } else {
+                    LLVMState llvmState = ctxt.computeAttachmentIfAbsent(LLVMState.KEY, LLVMState::new);
+                    llvmState.addModulePath(outputFile);
                 }
-                Path outputFile = generator.processProgramModule(programModule);
-                LLVMState llvmState = ctxt.computeAttachmentIfAbsent(LLVMState.KEY, LLVMState::new);
-                llvmState.addModulePath(outputFile);
             }
         });
     }
+
+    static final class GenerationUnit {
+        final List<ProgramModule> programModules;
+        final Path outputFile;
+
+        GenerationUnit(List<ProgramModule> programModules, Path outputFile) {
+            this.programModules = programModules;
+            this.outputFile = outputFile;
+        }
+    }
 }
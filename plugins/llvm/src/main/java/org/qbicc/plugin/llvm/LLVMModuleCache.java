@@ -0,0 +1,133 @@
+package org.qbicc.plugin.llvm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import io.smallrye.common.constraint.Assert;
+import org.jboss.logging.Logger;
+
+/**
+ * A content-addressed on-disk cache of compiled module object files.  Entries are keyed by a hash of the module
+ * IR along with a description of the tool chain versions and options which were used to compile it, so that
+ * a module whose IR has not changed since a previous build can reuse the object file produced by that build
+ * without invoking any external tool.
+ */
+final class LLVMModuleCache {
+    private static final Logger log = Logger.getLogger("org.qbicc.plugin.llvm.cache");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path cacheDirectory;
+    private final String configuration;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param cacheDirectory the directory in which cache entries are stored (must not be {@code null})
+     * @param configuration a string describing everything other than the module content that can affect the
+     *      compiled output, such as tool versions and options (must not be {@code null})
+     */
+    LLVMModuleCache(final Path cacheDirectory, final String configuration) {
+        this.cacheDirectory = Assert.checkNotNullParam("cacheDirectory", cacheDirectory);
+        this.configuration = Assert.checkNotNullParam("configuration", configuration);
+    }
+
+    /**
+     * Compute the cache key of the given module file.
+     *
+     * @param modulePath the module file path (must not be {@code null})
+     * @return the cache key (not {@code null})
+     * @throws IOException if reading the module file failed
+     */
+    String computeKey(Path modulePath) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] buf = new byte[16384];
+        try (InputStream is = Files.newInputStream(modulePath)) {
+            int res;
+            while ((res = is.read(buf)) != -1) {
+                digest.update(buf, 0, res);
+            }
+        }
+        byte[] hash = digest.digest();
+        char[] chars = new char[hash.length << 1];
+        for (int i = 0; i < hash.length; i ++) {
+            chars[i << 1] = HEX[(hash[i] >> 4) & 0xf];
+            chars[(i << 1) + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Copy a cached object file to the given path, if one exists.
+     *
+     * @param key the cache key (must not be {@code null})
+     * @param objectPath the path to copy the object file to (must not be {@code null})
+     * @return {@code true} if the object was restored from the cache, or {@code false} if there was no cached entry
+     */
+    boolean restore(String key, Path objectPath) {
+        Path entryPath = getEntryPath(key);
+        if (! Files.isRegularFile(entryPath)) {
+            log.debugf("Cache miss for %s", objectPath);
+            return false;
+        }
+        try {
+            Files.copy(entryPath, objectPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.debugf(e, "Failed to restore cache entry %s to %s", entryPath, objectPath);
+            return false;
+        }
+        log.debugf("Cache hit for %s", objectPath);
+        return true;
+    }
+
+    /**
+     * Store the given object file into the cache.  Failures are logged and otherwise ignored.
+     *
+     * @param key the cache key (must not be {@code null})
+     * @param objectPath the path of the compiled object file (must not be {@code null})
+     */
+    void store(String key, Path objectPath) {
+        Path entryPath = getEntryPath(key);
+        Path tmpPath = null;
+        try {
+            Path parent = entryPath.getParent();
+            Files.createDirectories(parent);
+            // copy to a temporary file first so that concurrent builds never observe a partial entry
+            tmpPath = Files.createTempFile(parent, key, ".tmp");
+            Files.copy(objectPath, tmpPath, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmpPath, entryPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmpPath = null;
+        } catch (IOException e) {
+            log.debugf(e, "Failed to store %s in cache", objectPath);
+        } finally {
+            if (tmpPath != null) {
+                try {
+                    Files.deleteIfExists(tmpPath);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Path getEntryPath(String key) {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key + ".o");
+    }
+}
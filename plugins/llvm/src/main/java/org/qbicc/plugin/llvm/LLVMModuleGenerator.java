@@ -36,6 +36,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 final class LLVMModuleGenerator {
     private final CompilationContext context;
@@ -51,6 +54,18 @@ final class LLVMModuleGenerator {
     public Path processProgramModule(final ProgramModule programModule) {
         DefinedTypeDefinition def = programModule.getTypeDefinition();
         Path outputFile = context.getOutputFile(def, "ll");
+        processProgramModules(List.of(programModule), outputFile);
+        return outputFile;
+    }
+
+    /**
+     * Generate a single LLVM module containing the contents of all of the given program modules.  Declarations
+     * of objects which are defined by any of the given program modules are omitted, as are duplicate declarations.
+     *
+     * @param programModules the program modules to generate (must not be {@code null})
+     * @param outputFile the file to write the LLVM module to (must not be {@code null})
+     */
+    public void processProgramModules(final List<ProgramModule> programModules, final Path outputFile) {
         final Module module = Module.newModule();
         final LLVMModuleNodeVisitor moduleVisitor = new LLVMModuleNodeVisitor(module, context);
         final LLVMModuleDebugInfo debugInfo = new LLVMModuleDebugInfo(module, context);
@@ -69,11 +84,36 @@ final class LLVMModuleGenerator {
         decl.returns(Types.void_);
         decl.param(Types.metadata).param(Types.metadata).param(Types.metadata);
 
-        for (Section section : programModule.sections()) {
+        Set<String> defined = new HashSet<>();
+        if (programModules.size() > 1) {
+            for (ProgramModule programModule : programModules) {
+                for (Section section : programModule.sections()) {
+                    for (ProgramObject item : section.contents()) {
+                        if (item instanceof Function || item instanceof Data) {
+                            defined.add(item.getName());
+                        }
+                    }
+                }
+            }
+        }
+        Set<String> emitted = new HashSet<>();
+
+        for (ProgramModule programModule : programModules) for (Section section : programModule.sections()) {
             String sectionName = section.getName();
             for (ProgramObject item : section.contents()) {
                 String name = item.getName();
                 Linkage linkage = map(item.getLinkage());
+                if (item instanceof FunctionDeclaration || item instanceof DataDeclaration) {
+                    if (defined.contains(name) || ! emitted.add(name)) {
+                        // defined or already declared by another program module in this LLVM module
+                        continue;
+                    }
+                } else if (item instanceof Data && item.getLinkage() == org.qbicc.object.Linkage.COMMON) {
+                    if (! emitted.add(name)) {
+                        // common symbols may be defined by more than one program module
+                        continue;
+                    }
+                }
                 if (item instanceof Function) {
                     ExecutableElement element = ((Function) item).getOriginalElement();
                     MethodBody body = ((Function) item).getBody();
@@ -190,7 +230,6 @@ final class LLVMModuleGenerator {
                 context.warning("Failed to clean \"%s\": %s", outputFile, e.getMessage());
             }
         }
-        return outputFile;
     }
 
     Linkage map(org.qbicc.object.Linkage linkage) {
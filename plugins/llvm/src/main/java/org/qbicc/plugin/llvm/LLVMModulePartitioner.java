@@ -0,0 +1,149 @@
+package org.qbicc.plugin.llvm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.qbicc.graph.BasicBlock;
+import org.qbicc.graph.Terminator;
+import org.qbicc.graph.schedule.Schedule;
+import org.qbicc.object.Function;
+import org.qbicc.object.ProgramModule;
+import org.qbicc.object.ProgramObject;
+import org.qbicc.object.Section;
+import org.qbicc.type.definition.MethodBody;
+
+/**
+ * A partitioner which groups program modules into a fixed number of compilation units of roughly equal size, so
+ * that the work of compiling each unit is evenly balanced and the fixed cost of each compilation is amortized
+ * over many small classes.
+ * <p>
+ * The size of each program module is estimated from the number of scheduled nodes in its lowered function bodies.
+ * Modules are assigned in decreasing order of size to the currently smallest unit.
+ */
+final class LLVMModulePartitioner {
+    // the estimated cost of a program object which has no body, relative to a single node
+    private static final long OBJECT_COST = 1;
+
+    private LLVMModulePartitioner() {}
+
+    /**
+     * Partition the given program modules.
+     *
+     * @param programModules the program modules to partition (must not be {@code null})
+     * @param partitionCount the maximum number of partitions (must be greater than zero)
+     * @return the list of non-empty partitions (not {@code null})
+     */
+    static List<List<ProgramModule>> partition(List<ProgramModule> programModules, int partitionCount) {
+        int cnt = Math.min(partitionCount, programModules.size());
+        if (cnt == 0) {
+            return List.of();
+        }
+        List<Sized> sized = new ArrayList<>(programModules.size());
+        for (ProgramModule programModule : programModules) {
+            sized.add(new Sized(programModule, estimateSize(programModule)));
+        }
+        // largest first, then by name so that the partitioning is stable from build to build
+        sized.sort(Comparator.comparingLong(Sized::getSize).reversed().thenComparing(Sized::getName));
+        PriorityQueue<Partition> queue = new PriorityQueue<>(cnt, Comparator.comparingLong(Partition::getSize).thenComparingInt(Partition::getIndex));
+        List<Partition> partitions = new ArrayList<>(cnt);
+        for (int i = 0; i < cnt; i ++) {
+            Partition partition = new Partition(i);
+            partitions.add(partition);
+            queue.add(partition);
+        }
+        for (Sized item : sized) {
+            Partition smallest = queue.remove();
+            smallest.add(item);
+            queue.add(smallest);
+        }
+        List<List<ProgramModule>> result = new ArrayList<>(cnt);
+        for (Partition partition : partitions) {
+            result.add(List.copyOf(partition.modules));
+        }
+        return result;
+    }
+
+    static long estimateSize(ProgramModule programModule) {
+        long size = 0;
+        for (Section section : programModule.sections()) {
+            for (ProgramObject item : section.contents()) {
+                if (item instanceof Function) {
+                    MethodBody body = ((Function) item).getBody();
+                    size += body == null ? OBJECT_COST : estimateSize(body);
+                } else {
+                    size += OBJECT_COST;
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(MethodBody body) {
+        Schedule schedule = body.getSchedule();
+        Set<BasicBlock> visited = new HashSet<>();
+        ArrayDeque<BasicBlock> queue = new ArrayDeque<>();
+        BasicBlock entryBlock = body.getEntryBlock();
+        visited.add(entryBlock);
+        queue.add(entryBlock);
+        long size = 0;
+        BasicBlock block;
+        while ((block = queue.poll()) != null) {
+            size += schedule.getNodesForBlock(block).size();
+            Terminator terminator = block.getTerminator();
+            int cnt = terminator.getSuccessorCount();
+            for (int i = 0; i < cnt; i ++) {
+                BasicBlock successor = terminator.getSuccessor(i);
+                if (visited.add(successor)) {
+                    queue.add(successor);
+                }
+            }
+        }
+        return size;
+    }
+
+    static final class Sized {
+        private final ProgramModule programModule;
+        private final long size;
+
+        Sized(ProgramModule programModule, long size) {
+            this.programModule = programModule;
+            this.size = size;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        String getName() {
+            return programModule.getTypeDefinition().getInternalName();
+        }
+    }
+
+    static final class Partition {
+        private final int index;
+        private final List<ProgramModule> modules = new ArrayList<>();
+        private long size;
+
+        Partition(int index) {
+            this.index = index;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        void add(Sized item) {
+            modules.add(item.programModule);
+            size += item.size;
+        }
+    }
+}
@@ -15,6 +15,7 @@ final class LLVMState {
 
     private final List<Path> modulePaths = Collections.synchronizedList(new ArrayList<>());
     private Path defaultModulePath;
+    private volatile LLVMCompilePool compilePool;
 
     LLVMState() {}
 
@@ -33,4 +34,12 @@ final class LLVMState {
     Path getDefaultModulePath() {
         return defaultModulePath;
     }
+
+    void setCompilePool(LLVMCompilePool compilePool) {
+        this.compilePool = compilePool;
+    }
+
+    LLVMCompilePool getCompilePool() {
+        return compilePool;
+    }
 }
@@ -27,8 +27,10 @@ import org.qbicc.object.Section;
 import org.qbicc.object.ThreadLocalMode;
 import org.qbicc.plugin.dispatch.DispatchTables;
 import org.qbicc.plugin.reachability.RTAInfo;
+import org.qbicc.type.CompoundType;
 import org.qbicc.type.PointerType;
 import org.qbicc.type.ReferenceType;
+import org.qbicc.type.WordType;
 import org.qbicc.type.definition.element.ExecutableElement;
 import org.qbicc.type.definition.element.FunctionElement;
 import org.qbicc.type.definition.element.GlobalVariableElement;
@@ -124,9 +126,15 @@ public class InvocationLoweringBasicBlockBuilder extends DelegatingBasicBlockBui
         final BasicBlockBuilder fb = getFirstBuilder();
         // insert "this" and current thread
         args.addAll(0, List.of(fb.currentThread(), node.getInstance()));
-        ctxt.enqueue(node.getExecutable());
-        Function function = ctxt.getExactFunction(node.getExecutable());
-        ctxt.declareForeignFunction(node.getExecutable(), function, originalElement);
+        MethodElement target = node.getExecutable();
+        MethodElement nativeImpl = DispatchTables.get(ctxt).getNativeImplementation(target);
+        if (nativeImpl != null) {
+            // the helper takes the receiver in place of "this"
+            target = nativeImpl;
+        }
+        ctxt.enqueue(target);
+        Function function = ctxt.getExactFunction(target);
+        ctxt.declareForeignFunction(target, function, originalElement);
         return functionOf(function);
     }
 
@@ -155,7 +163,10 @@ public class InvocationLoweringBasicBlockBuilder extends DelegatingBasicBlockBui
         return pointerHandle(ptr);
     }
 
-    // Current implementation strategy is "searched itables" in the terminology of [Alpern et al 2001].
+    // Current implementation strategy is a selector-indexed interface method table (IMT) which is checked before
+    // falling back to "searched itables", in the terminology of [Alpern et al 2001]. The IMT slot of the selector holds
+    // the target if no other selector of the receiver's class hashes to the same slot; conflicting and missing
+    // selectors are resolved by the search, which also detects IncompatibleClassChangeErrors.
     @Override
     public ValueHandle visit(ArrayList<Value> args, InterfaceMethodElementHandle node) {
         final BasicBlockBuilder fb = getFirstBuilder();
@@ -169,6 +180,46 @@ public class InvocationLoweringBasicBlockBuilder extends DelegatingBasicBlockBui
             throw new BlockEarlyTermination(fb.callNoReturn(staticMethod(ctxt.getVMHelperMethod("raiseIncompatibleClassChangeError")), List.of()));
         }
 
+        CompoundType.Member member = info.getType().getMember(dt.getITableIndex(target));
+        Value typeId = fb.typeIdOf(fb.referenceHandle(node.getInstance()));
+        int selector = dt.getIMTSelector(target);
+        if (selector == 0) {
+            // the selector has no IMT slot
+            return pointerHandle(searchITables(dt, info, member, typeId));
+        }
+
+        Section section = ctxt.getImplicitSection(originalElement.getEnclosingType());
+        GlobalVariableElement rootIMTs = dt.getIMTsGlobal();
+        if (!rootIMTs.getEnclosingType().equals(originalElement.getEnclosingType())) {
+            section.declareData(null, rootIMTs.getName(), rootIMTs.getType());
+        }
+
+        // Use the receiver's typeId to get the IMT for its class, and check that the slot holds our selector
+        Value imt = fb.load(elementOf(globalVariable(rootIMTs), typeId), MemoryAtomicityMode.UNORDERED);
+        ValueHandle entry = fb.elementOf(fb.pointerHandle(imt), ctxt.getLiteralFactory().literalOf(dt.getIMTSlot(selector)));
+        Value candidateSelector = fb.load(fb.memberOf(entry, dt.getIMTEntryType().getMember("selector")), MemoryAtomicityMode.UNORDERED);
+        BlockLabel imtHit = new BlockLabel();
+        BlockLabel imtMiss = new BlockLabel();
+        BlockLabel resolved = new BlockLabel();
+        if_(isEq(candidateSelector, ctxt.getLiteralFactory().literalOf(selector)), imtHit, imtMiss);
+
+        begin(imtHit);
+        Value imtPtr = fb.bitCast(fb.load(fb.memberOf(entry, dt.getIMTEntryType().getMember("target")), MemoryAtomicityMode.UNORDERED), (WordType) member.getType());
+        BasicBlock hitBlock = goto_(resolved);
+
+        begin(imtMiss);
+        Value searchedPtr = searchITables(dt, info, member, typeId);
+        BasicBlock searchedBlock = goto_(resolved);
+
+        begin(resolved);
+        PhiValue ptr = phi(member.getType(), resolved);
+        ptr.setValueForBlock(ctxt, getCurrentElement(), hitBlock, imtPtr);
+        ptr.setValueForBlock(ctxt, getCurrentElement(), searchedBlock, searchedPtr);
+        return pointerHandle(ptr);
+    }
+
+    private Value searchITables(DispatchTables dt, DispatchTables.ITableInfo info, CompoundType.Member member, Value typeId) {
+        final BasicBlockBuilder fb = getFirstBuilder();
         Section section = ctxt.getImplicitSection(originalElement.getEnclosingType());
         GlobalVariableElement rootITables = dt.getITablesGlobal();
         if (!rootITables.getEnclosingType().equals(originalElement.getEnclosingType())) {
@@ -176,7 +227,6 @@ public class InvocationLoweringBasicBlockBuilder extends DelegatingBasicBlockBui
         }
 
         // Use the receiver's typeId to get the itable dictionary for its class
-        Value typeId = fb.typeIdOf(fb.referenceHandle(node.getInstance()));
         Value itableDict = fb.load(elementOf(globalVariable(rootITables), typeId), MemoryAtomicityMode.UNORDERED);
         ValueHandle zeroElementHandle = fb.elementOf(fb.pointerHandle(itableDict), ctxt.getLiteralFactory().literalOf(0));
 
@@ -205,8 +255,7 @@ public class InvocationLoweringBasicBlockBuilder extends DelegatingBasicBlockBui
         }
         begin(exitMatched);
         Value itable = fb.bitCast(fb.load(fb.memberOf(fb.elementOf(zeroElementHandle, phi), dt.getItableDictType().getMember("itable")), MemoryAtomicityMode.UNORDERED), info.getType().getPointer());
-        final Value ptr = fb.load(memberOf(fb.pointerHandle(itable), info.getType().getMember(dt.getITableIndex(target))), MemoryAtomicityMode.UNORDERED);
-        return pointerHandle(ptr);
+        return fb.load(memberOf(fb.pointerHandle(itable), member), MemoryAtomicityMode.UNORDERED);
     }
 
     @Override
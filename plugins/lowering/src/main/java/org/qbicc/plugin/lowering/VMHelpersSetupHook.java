@@ -33,6 +33,11 @@ public class VMHelpersSetupHook implements Consumer<CompilationContext> {
         // Object monitors
         ctxt.registerEntryPoint(ctxt.getVMHelperMethod("monitor_enter"));
         ctxt.registerEntryPoint(ctxt.getVMHelperMethod("monitor_exit"));
+        ctxt.registerEntryPoint(ctxt.getVMHelperMethod("monitor_wait"));
+        ctxt.registerEntryPoint(ctxt.getVMHelperMethod("monitor_notify"));
+
+        // Identity hash codes
+        ctxt.registerEntryPoint(ctxt.getVMHelperMethod("identity_hash_code"));
 
         // class initialization
         ctxt.registerEntryPoint(ctxt.getVMHelperMethod("initialize_class"));
@@ -42,6 +47,8 @@ public class VMHelpersSetupHook implements Consumer<CompilationContext> {
 
         // java.lang.Thread
         ctxt.registerEntryPoint(ctxt.getVMHelperMethod("JLT_start0"));
+        ctxt.registerEntryPoint(ctxt.getVMHelperMethod("JLT_interrupt0"));
+        ctxt.registerEntryPoint(ctxt.getVMHelperMethod("JLT_isInterrupted"));
         ctxt.registerEntryPoint(ctxt.getVMHelperMethod("threadWrapper"));
     }
 }
@@ -1,5 +1,6 @@
 package org.qbicc.plugin.metrics;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -79,6 +80,73 @@ public final class Metrics {
         return target;
     }
 
+    /**
+     * Format all metrics as a JSON object whose {@code timers}, {@code memorySizes}, and {@code counts} members each
+     * hold an array of root metrics.  Each metric is an object with a {@code name}, a raw unsigned {@code value},
+     * the readably {@code formatted} value, and an array of {@code children}.
+     *
+     * @param target the string builder (must not be {@code null})
+     * @return the same string builder
+     */
+    public StringBuilder formatAllAsJson(StringBuilder target) {
+        target.append('{');
+        formatAllOfAsJson(target, "timers", timers);
+        target.append(',');
+        formatAllOfAsJson(target, "memorySizes", memorySizes);
+        target.append(',');
+        formatAllOfAsJson(target, "counts", counts);
+        return target.append('}');
+    }
+
+    private void formatAllOfAsJson(StringBuilder target, String name, Map<String, ? extends Metric<?>> map) {
+        jsonString(target, name).append(':');
+        formatMetricsAsJson(target, map.values());
+    }
+
+    private void formatMetricsAsJson(StringBuilder target, Collection<? extends Metric<?>> metrics) {
+        target.append('[');
+        boolean first = true;
+        for (Metric<?> metric : metrics) {
+            if (! first) {
+                target.append(',');
+            }
+            first = false;
+            target.append('{');
+            jsonString(target, "name").append(':');
+            jsonString(target, metric.getName()).append(',');
+            jsonString(target, "value").append(':').append(Long.toUnsignedString(metric.getRawValue())).append(',');
+            jsonString(target, "formatted").append(':');
+            jsonString(target, metric.getFormattedValue()).append(',');
+            jsonString(target, "children").append(':');
+            formatMetricsAsJson(target, metric.getChildren());
+            target.append('}');
+        }
+        target.append(']');
+    }
+
+    private static StringBuilder jsonString(StringBuilder target, String str) {
+        target.append('"');
+        int len = str.length();
+        for (int i = 0; i < len; i ++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"': target.append("\\\""); break;
+                case '\\': target.append("\\\\"); break;
+                case '\n': target.append("\\n"); break;
+                case '\r': target.append("\\r"); break;
+                case '\t': target.append("\\t"); break;
+                default: {
+                    if (c < 0x20) {
+                        target.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        target.append(c);
+                    }
+                }
+            }
+        }
+        return target.append('"');
+    }
+
     private void formatAllOf(StringBuilder target, Map<String, ? extends Metric<?>> map) {
         for (Metric<?> metric : map.values()) {
             formatMetric(target, metric, 0);
@@ -17,6 +17,8 @@ import org.qbicc.graph.literal.ConstantLiteral;
 import org.qbicc.graph.literal.LiteralFactory;
 import org.qbicc.machine.probe.CProbe;
 import org.qbicc.plugin.constants.Constants;
+import org.qbicc.plugin.metrics.Metrics;
+import org.qbicc.plugin.metrics.Timer;
 import org.qbicc.runtime.CNative;
 import org.qbicc.type.annotation.Annotation;
 import org.qbicc.type.annotation.StringAnnotationValue;
@@ -97,8 +99,10 @@ public class ConstantDefiningBasicBlockBuilder extends DelegatingBasicBlockBuild
             CProbe probe = builder.build();
             LiteralFactory lf = ctxt.getLiteralFactory();
             CProbe.Result result;
-            try {
-                result = probe.run(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), null);
+            Metrics metrics = Metrics.get(ctxt);
+            metrics.getOrCreateRootCountMetric("c-probe").getOrAddChild("constants").add(1);
+            try (Timer.StopWatch ignored = metrics.getOrCreateRootTimer("c-probe").getOrAddChild("constants").startTimedTryBlock()) {
+                result = probe.run(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), null, ctxt.getAttachment(Driver.C_PROBE_CACHE_KEY));
                 if (result == null) {
                     // constant is undefined
                     return lf.undefinedLiteralOfType(fieldElement.getType());
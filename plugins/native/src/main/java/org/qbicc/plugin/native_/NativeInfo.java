@@ -18,11 +18,14 @@ import org.qbicc.context.AttachmentKey;
 import org.qbicc.context.CompilationContext;
 import org.qbicc.driver.Driver;
 import org.qbicc.machine.probe.CProbe;
+import org.qbicc.machine.probe.CProbeBatcher;
 import org.qbicc.machine.probe.Qualifier;
 import org.qbicc.plugin.layout.Layout;
 import org.qbicc.plugin.layout.LayoutInfo;
 import org.qbicc.plugin.layout.NativeLayout;
 import org.qbicc.plugin.linker.Linker;
+import org.qbicc.plugin.metrics.Metrics;
+import org.qbicc.plugin.metrics.Timer;
 import org.qbicc.type.CompoundType;
 import org.qbicc.type.TypeSystem;
 import org.qbicc.type.ValueType;
@@ -61,6 +64,7 @@ final class NativeInfo {
     static final AttachmentKey<NativeInfo> KEY = new AttachmentKey<>();
 
     private final CompilationContext ctxt;
+    private final CProbeBatcher probeBatcher;
 
     final ClassTypeDescriptor cNativeDesc;
     final ClassTypeDescriptor ptrDesc;
@@ -78,6 +82,7 @@ final class NativeInfo {
 
     private NativeInfo(final CompilationContext ctxt) {
         this.ctxt = ctxt;
+        probeBatcher = new CProbeBatcher(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), ctxt, ctxt.getAttachment(Driver.C_PROBE_CACHE_KEY));
         ClassContext classContext = ctxt.getBootstrapClassContext();
         cNativeDesc = ClassTypeDescriptor.parseClassConstant(classContext, ByteBuffer.wrap(Native.C_NATIVE_INT_NAME.getBytes(StandardCharsets.UTF_8)));
         ptrDesc = ClassTypeDescriptor.parseClassConstant(classContext, ByteBuffer.wrap(Native.PTR_INT_NAME.getBytes(StandardCharsets.UTF_8)));
@@ -197,10 +202,11 @@ final class NativeInfo {
                             resolved = ts.getIncompleteCompoundType(tag, simpleName);
                         } else {
                             CProbe.Type probeType = tb.build();
-                            pb.probeType(probeType);
-                            CProbe probe = pb.build();
-                            try {
-                                CProbe.Result result = probe.run(ctxt.getAttachment(Driver.C_TOOL_CHAIN_KEY), ctxt.getAttachment(Driver.OBJ_PROVIDER_TOOL_KEY), ctxt);
+                            Metrics metrics = Metrics.get(ctxt);
+                            metrics.getOrCreateRootCountMetric("c-probe").getOrAddChild("types").add(1);
+                            try (Timer.StopWatch ignored = metrics.getOrCreateRootTimer("c-probe").getOrAddChild("types").startTimedTryBlock()) {
+                                // the builder only has the includes and defines, so it is the header of the probe
+                                CProbe.Result result = probeBatcher.probeType(pb.build(), probeType);
                                 if (result != null) {
                                     CProbe.Type.Info typeInfo = result.getTypeInfo(probeType);
                                     long size = typeInfo.getSize();
@@ -1,36 +1,123 @@
 package org.qbicc.plugin.objectmonitor;
 import java.util.List;
 
+import org.qbicc.context.ClassContext;
 import org.qbicc.context.CompilationContext;
 import org.qbicc.graph.BasicBlockBuilder;
+import org.qbicc.graph.BlockLabel;
+import org.qbicc.graph.CmpAndSwap;
 import org.qbicc.graph.DelegatingBasicBlockBuilder;
+import org.qbicc.graph.MemoryAtomicityMode;
 import org.qbicc.graph.Node;
 import org.qbicc.graph.Value;
+import org.qbicc.graph.ValueHandle;
+import org.qbicc.graph.literal.LiteralFactory;
+import org.qbicc.plugin.coreclasses.CoreClasses;
+import org.qbicc.type.UnsignedIntegerType;
+import org.qbicc.type.definition.element.FieldElement;
 import org.qbicc.type.definition.element.MethodElement;
 
 /**
- * A graph factory which generates calls to runtime helpers for object monitor
- * bytecodes: monitorenter and monitorexit
+ * A graph factory which generates thin lock acquisition and release inline for object monitor
+ * bytecodes: monitorenter and monitorexit.
+ * <p>
+ * The thin lock word is held in the object header.  Bit 0 is set while the lock is inflated, in which case the
+ * remaining bits identify the inflated monitor.  Otherwise, bits 1 to 8 hold the recursion count, and the remaining
+ * bits hold the ID of the owning thread.  An unlocked object is locked by the
+ * current thread with a single CAS; everything else (recursion, contention, inflated locks, and threads whose ID
+ * does not fit) is handled by runtime helpers.
  */
 public class ObjectMonitorBasicBlockBuilder extends DelegatingBasicBlockBuilder {
+    // must match VMHelpers
+    static final int LOCK_OWNER_SHIFT = 9;
+    static final long LOCK_MAX_OWNER = (1L << (CoreClasses.THIN_LOCK_BITS - LOCK_OWNER_SHIFT)) - 1;
+
     private final CompilationContext ctxt;
 
     private final String monitorEnterFunctionName = "monitor_enter";
     private final String monitorExitFunctionName = "monitor_exit";
 
+    private final FieldElement headerField;
+    private final FieldElement tidField;
+    private final UnsignedIntegerType headerType;
+    private final long lockMask;
+    private final int ownerShift;
+
     public ObjectMonitorBasicBlockBuilder(CompilationContext ctxt, BasicBlockBuilder delegate) {
         super(delegate);
         this.ctxt = ctxt;
+        CoreClasses coreClasses = CoreClasses.get(ctxt);
+        ClassContext classContext = ctxt.getBootstrapClassContext();
+        headerField = coreClasses.getObjectHeaderField();
+        tidField = classContext.findDefinedType("java/lang/Thread").load().findField("tid");
+        headerType = (UnsignedIntegerType) headerField.getType();
+        lockMask = ((1L << CoreClasses.THIN_LOCK_BITS) - 1) << coreClasses.getThinLockShift();
+        ownerShift = coreClasses.getThinLockShift() + LOCK_OWNER_SHIFT;
     }
 
     public Node monitorEnter(final Value object) {
-        return generateObjectMonitorFunctionCall(object, monitorEnterFunctionName);
+        BasicBlockBuilder fb = getFirstBuilder();
+        LiteralFactory lf = ctxt.getLiteralFactory();
+        BlockLabel slow = new BlockLabel();
+        BlockLabel done = new BlockLabel();
+        Value owner = loadOwner(object, slow);
+        ValueHandle handle = fb.instanceFieldOf(fb.referenceHandle(object), headerField);
+        Value header = load(handle, MemoryAtomicityMode.MONOTONIC);
+        BlockLabel unlocked = new BlockLabel();
+        if_(isEq(and(header, lf.literalOf(headerType, lockMask)), lf.literalOf(headerType, 0)), unlocked, slow);
+        begin(unlocked);
+        Value result = cmpAndSwap(handle, header, or(header, owner), MemoryAtomicityMode.ACQUIRE, MemoryAtomicityMode.MONOTONIC, CmpAndSwap.Strength.STRONG);
+        if_(extractMember(result, ((CmpAndSwap) result).getResultFlagType()), done, slow);
+        begin(slow);
+        generateObjectMonitorFunctionCall(object, monitorEnterFunctionName);
+        goto_(done);
+        begin(done);
+        return nop();
     }
 
     public Node monitorExit(final Value object) {
-        return generateObjectMonitorFunctionCall(object, monitorExitFunctionName);
+        BasicBlockBuilder fb = getFirstBuilder();
+        LiteralFactory lf = ctxt.getLiteralFactory();
+        BlockLabel slow = new BlockLabel();
+        BlockLabel done = new BlockLabel();
+        Value owner = loadOwner(object, slow);
+        ValueHandle handle = fb.instanceFieldOf(fb.referenceHandle(object), headerField);
+        Value header = load(handle, MemoryAtomicityMode.MONOTONIC);
+        BlockLabel owned = new BlockLabel();
+        // held once by this thread, and not inflated
+        if_(isEq(and(header, lf.literalOf(headerType, lockMask)), owner), owned, slow);
+        begin(owned);
+        Value update = and(header, lf.literalOf(headerType, ~lockMask));
+        Value result = cmpAndSwap(handle, header, update, MemoryAtomicityMode.RELEASE, MemoryAtomicityMode.MONOTONIC, CmpAndSwap.Strength.STRONG);
+        if_(extractMember(result, ((CmpAndSwap) result).getResultFlagType()), done, slow);
+        begin(slow);
+        generateObjectMonitorFunctionCall(object, monitorExitFunctionName);
+        goto_(done);
+        begin(done);
+        return nop();
     }
-    
+
+    /**
+     * Get the thin lock owner bits of the current thread, positioned in the header.  Null objects and threads whose
+     * ID does not fit in the lock word branch to the slow path.
+     */
+    private Value loadOwner(Value object, BlockLabel slow) {
+        BasicBlockBuilder fb = getFirstBuilder();
+        LiteralFactory lf = ctxt.getLiteralFactory();
+        BlockLabel notNull = new BlockLabel();
+        if_(isEq(object, lf.zeroInitializerLiteralOfType(object.getType())), slow, notNull);
+        begin(notNull);
+        Value tid = load(fb.instanceFieldOf(fb.referenceHandle(fb.currentThread()), tidField), MemoryAtomicityMode.NONE);
+        UnsignedIntegerType u64 = ctxt.getTypeSystem().getUnsignedInteger64Type();
+        Value unsignedTid = bitCast(tid, u64);
+        BlockLabel fits = new BlockLabel();
+        // 0 < tid <= LOCK_MAX_OWNER
+        if_(isLt(sub(unsignedTid, lf.literalOf(u64, 1)), lf.literalOf(u64, LOCK_MAX_OWNER)), fits, slow);
+        begin(fits);
+        Value owner = headerType.getMinBits() < 64 ? truncate(unsignedTid, headerType) : unsignedTid;
+        return shl(owner, lf.literalOf(headerType, ownerShift));
+    }
+
     private Value generateObjectMonitorFunctionCall(final Value object, String functionName) {
         MethodElement methodElement = ctxt.getVMHelperMethod(functionName);
         List<Value> args = List.of(object);
@@ -0,0 +1,236 @@
+package org.qbicc.plugin.opt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.qbicc.context.CompilationContext;
+import org.qbicc.graph.BasicBlockBuilder;
+import org.qbicc.graph.DelegatingBasicBlockBuilder;
+import org.qbicc.graph.OrderedNode;
+import org.qbicc.graph.PinnedNode;
+import org.qbicc.graph.Unschedulable;
+import org.qbicc.graph.Value;
+import org.qbicc.graph.ValueHandle;
+import org.qbicc.type.CompoundType;
+import org.qbicc.type.WordType;
+import org.qbicc.type.definition.element.FieldElement;
+
+/**
+ * A graph factory which replaces each pure value with a structurally equal value that was already built for the
+ * same method, if any.
+ * <p>
+ * Pure values are not attached to any block; the schedule places each one in a block which dominates all of its
+ * uses.  Therefore a single table for the whole method is sufficient, and a value which is found again on another
+ * path is simply scheduled to the common dominator.  Division and remainder are not numbered, because moving them
+ * above the checks which guard them could introduce a trap.
+ */
+public class GlobalValueNumberingBasicBlockBuilder extends DelegatingBasicBlockBuilder {
+    private final Map<Value, Value> values = new HashMap<>();
+
+    public GlobalValueNumberingBasicBlockBuilder(final CompilationContext ctxt, final BasicBlockBuilder delegate) {
+        super(delegate);
+    }
+
+    private Value unique(Value value) {
+        if (value instanceof OrderedNode || value instanceof PinnedNode || value instanceof Unschedulable) {
+            return value;
+        }
+        Value existing = values.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    @Override
+    public Value offsetOfField(FieldElement fieldElement) {
+        return unique(super.offsetOfField(fieldElement));
+    }
+
+    @Override
+    public Value extractElement(Value array, Value index) {
+        return unique(super.extractElement(array, index));
+    }
+
+    @Override
+    public Value extractMember(Value compound, CompoundType.Member member) {
+        return unique(super.extractMember(compound, member));
+    }
+
+    @Override
+    public Value select(Value condition, Value trueValue, Value falseValue) {
+        return unique(super.select(condition, trueValue, falseValue));
+    }
+
+    @Override
+    public Value add(Value v1, Value v2) {
+        return unique(super.add(v1, v2));
+    }
+
+    @Override
+    public Value multiply(Value v1, Value v2) {
+        return unique(super.multiply(v1, v2));
+    }
+
+    @Override
+    public Value and(Value v1, Value v2) {
+        return unique(super.and(v1, v2));
+    }
+
+    @Override
+    public Value or(Value v1, Value v2) {
+        return unique(super.or(v1, v2));
+    }
+
+    @Override
+    public Value xor(Value v1, Value v2) {
+        return unique(super.xor(v1, v2));
+    }
+
+    @Override
+    public Value isEq(Value v1, Value v2) {
+        return unique(super.isEq(v1, v2));
+    }
+
+    @Override
+    public Value isNe(Value v1, Value v2) {
+        return unique(super.isNe(v1, v2));
+    }
+
+    @Override
+    public Value shr(Value v1, Value v2) {
+        return unique(super.shr(v1, v2));
+    }
+
+    @Override
+    public Value shl(Value v1, Value v2) {
+        return unique(super.shl(v1, v2));
+    }
+
+    @Override
+    public Value sub(Value v1, Value v2) {
+        return unique(super.sub(v1, v2));
+    }
+
+    @Override
+    public Value min(Value v1, Value v2) {
+        return unique(super.min(v1, v2));
+    }
+
+    @Override
+    public Value max(Value v1, Value v2) {
+        return unique(super.max(v1, v2));
+    }
+
+    @Override
+    public Value isLt(Value v1, Value v2) {
+        return unique(super.isLt(v1, v2));
+    }
+
+    @Override
+    public Value isGt(Value v1, Value v2) {
+        return unique(super.isGt(v1, v2));
+    }
+
+    @Override
+    public Value isLe(Value v1, Value v2) {
+        return unique(super.isLe(v1, v2));
+    }
+
+    @Override
+    public Value isGe(Value v1, Value v2) {
+        return unique(super.isGe(v1, v2));
+    }
+
+    @Override
+    public Value rol(Value v1, Value v2) {
+        return unique(super.rol(v1, v2));
+    }
+
+    @Override
+    public Value ror(Value v1, Value v2) {
+        return unique(super.ror(v1, v2));
+    }
+
+    @Override
+    public Value cmp(Value v1, Value v2) {
+        return unique(super.cmp(v1, v2));
+    }
+
+    @Override
+    public Value cmpG(Value v1, Value v2) {
+        return unique(super.cmpG(v1, v2));
+    }
+
+    @Override
+    public Value cmpL(Value v1, Value v2) {
+        return unique(super.cmpL(v1, v2));
+    }
+
+    @Override
+    public Value negate(Value v) {
+        return unique(super.negate(v));
+    }
+
+    @Override
+    public Value byteSwap(Value v) {
+        return unique(super.byteSwap(v));
+    }
+
+    @Override
+    public Value bitReverse(Value v) {
+        return unique(super.bitReverse(v));
+    }
+
+    @Override
+    public Value countLeadingZeros(Value v) {
+        return unique(super.countLeadingZeros(v));
+    }
+
+    @Override
+    public Value countTrailingZeros(Value v) {
+        return unique(super.countTrailingZeros(v));
+    }
+
+    @Override
+    public Value populationCount(Value v) {
+        return unique(super.populationCount(v));
+    }
+
+    @Override
+    public Value typeIdOf(ValueHandle valueHandle) {
+        return unique(super.typeIdOf(valueHandle));
+    }
+
+    @Override
+    public Value classOf(Value typeId, Value dims) {
+        return unique(super.classOf(typeId, dims));
+    }
+
+    @Override
+    public Value truncate(Value value, WordType toType) {
+        return unique(super.truncate(value, toType));
+    }
+
+    @Override
+    public Value extend(Value value, WordType toType) {
+        return unique(super.extend(value, toType));
+    }
+
+    @Override
+    public Value bitCast(Value value, WordType toType) {
+        return unique(super.bitCast(value, toType));
+    }
+
+    @Override
+    public Value valueConvert(Value value, WordType toType) {
+        return unique(super.valueConvert(value, toType));
+    }
+
+    @Override
+    public Value addressOf(ValueHandle handle) {
+        return unique(super.addressOf(handle));
+    }
+
+    @Override
+    public Value referenceTo(ValueHandle handle) throws IllegalArgumentException {
+        return unique(super.referenceTo(handle));
+    }
+}
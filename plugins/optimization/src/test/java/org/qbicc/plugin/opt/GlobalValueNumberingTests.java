@@ -0,0 +1,147 @@
+package org.qbicc.plugin.opt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.qbicc.graph.BasicBlock;
+import org.qbicc.graph.BasicBlockBuilder;
+import org.qbicc.graph.BlockLabel;
+import org.qbicc.graph.MemoryAtomicityMode;
+import org.qbicc.graph.ParameterValue;
+import org.qbicc.graph.PhiValue;
+import org.qbicc.graph.Value;
+import org.qbicc.graph.ValueHandle;
+import org.qbicc.graph.literal.LiteralFactory;
+import org.qbicc.type.SignedIntegerType;
+import org.qbicc.type.TypeSystem;
+
+/**
+ * Tests for the replacement of equal values by {@link GlobalValueNumberingBasicBlockBuilder}.
+ */
+public class GlobalValueNumberingTests {
+
+    private LiteralFactory lf;
+    private SignedIntegerType s32;
+    private BasicBlockBuilder bbb;
+    private ParameterValue p;
+    private ParameterValue q;
+    private ParameterValue ptr;
+
+    @BeforeEach
+    public void setUp() {
+        TypeSystem ts = TypeSystem.builder().build();
+        lf = LiteralFactory.create(ts);
+        s32 = ts.getSignedInteger32Type();
+        bbb = new GlobalValueNumberingBasicBlockBuilder(null, BasicBlockBuilder.simpleBuilder(ts, null));
+        bbb.setFirstBuilder(bbb);
+        p = bbb.parameter(s32, "p", 0);
+        q = bbb.parameter(s32, "q", 1);
+        ptr = bbb.parameter(s32.getPointer(), "ptr", 2);
+        bbb.startMethod(List.of(p, q, ptr));
+    }
+
+    @Test
+    public void testEqualValuesMerge() {
+        bbb.begin(new BlockLabel());
+        Value first = bbb.multiply(bbb.add(p, q), q);
+        Value second = bbb.multiply(bbb.add(p, q), q);
+        bbb.return_(bbb.sub(first, second));
+        bbb.finish();
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testEqualValuesMergeAcrossBlocks() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel arm1 = new BlockLabel();
+        BlockLabel arm2 = new BlockLabel();
+        bbb.begin(entry);
+        bbb.if_(bbb.isLt(p, q), arm1, arm2);
+        // neither arm dominates the other, but the schedule places the merged value in the entry block
+        bbb.begin(arm1);
+        Value first = bbb.shl(p, q);
+        bbb.return_(first);
+        bbb.begin(arm2);
+        Value second = bbb.shl(p, q);
+        bbb.return_(second);
+        bbb.finish();
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testDifferentValuesDoNotMerge() {
+        bbb.begin(new BlockLabel());
+        Value sum = bbb.add(p, q);
+        Value difference = bbb.sub(p, q);
+        Value otherSum = bbb.add(p, lf.literalOf(s32, 1));
+        bbb.return_(bbb.xor(bbb.xor(sum, difference), otherSum));
+        bbb.finish();
+
+        assertNotSame(sum, difference);
+        assertNotSame(sum, otherSum);
+    }
+
+    @Test
+    public void testOrderedNodesDoNotMerge() {
+        bbb.begin(new BlockLabel());
+        ValueHandle handle = bbb.pointerHandle(ptr);
+        Value before = bbb.load(handle, MemoryAtomicityMode.NONE);
+        bbb.store(handle, p, MemoryAtomicityMode.NONE);
+        Value after = bbb.load(handle, MemoryAtomicityMode.NONE);
+        // equal operations on the results of different loads are not equal either
+        Value first = bbb.add(before, q);
+        Value second = bbb.add(after, q);
+        bbb.return_(bbb.sub(first, second));
+        bbb.finish();
+
+        assertNotSame(before, after);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testPinnedNodesDoNotMerge() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel join = new BlockLabel();
+        bbb.begin(entry);
+        BasicBlock entryBlock = bbb.goto_(join);
+        bbb.begin(join);
+        PhiValue phi1 = bbb.phi(s32, join);
+        PhiValue phi2 = bbb.phi(s32, join);
+        Value first = bbb.add(phi1, q);
+        Value second = bbb.add(phi2, q);
+        bbb.return_(bbb.sub(first, second));
+        phi1.setValueForBlock(null, null, entryBlock, p);
+        phi2.setValueForBlock(null, null, entryBlock, p);
+        bbb.finish();
+
+        assertNotSame(phi1, phi2);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testDivisionAndRemainderDoNotMerge() {
+        BlockLabel entry = new BlockLabel();
+        BlockLabel arm1 = new BlockLabel();
+        BlockLabel arm2 = new BlockLabel();
+        bbb.begin(entry);
+        bbb.if_(bbb.isLt(p, q), arm1, arm2);
+        // a merged value would be scheduled in the entry block, above any check which guards the arms
+        bbb.begin(arm1);
+        Value quotient1 = bbb.divide(p, q);
+        Value remainder1 = bbb.remainder(p, q);
+        bbb.return_(bbb.add(quotient1, remainder1));
+        bbb.begin(arm2);
+        Value quotient2 = bbb.divide(p, q);
+        Value remainder2 = bbb.remainder(p, q);
+        bbb.return_(bbb.add(quotient2, remainder2));
+        bbb.finish();
+
+        assertNotSame(quotient1, quotient2);
+        assertNotSame(remainder1, remainder2);
+    }
+}
@@ -1,9 +1,12 @@
 package org.qbicc.plugin.reachability;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
@@ -89,6 +92,14 @@ public class RTAInfo {
 
     private final BuildtimeHeapAnalyzer heapAnalyzer = new BuildtimeHeapAnalyzer();
 
+    // Memoized results of getConcreteReceiverTypes, keyed by static receiver type
+    private final Map<LoadedTypeDefinition, List<LoadedTypeDefinition>> concreteReceiverTypes = new ConcurrentHashMap<>();
+    // Memoized results of getSingleImplementation, keyed by receiver type and method
+    private final Map<LoadedTypeDefinition, Map<MethodElement, Optional<MethodElement>>> singleImplementations = new ConcurrentHashMap<>();
+
+    // The complete results of the previous analysis, if any
+    private volatile RTAInfo previous;
+
     private final CompilationContext ctxt;
 
     private RTAInfo(final CompilationContext ctxt) {
@@ -109,6 +120,15 @@ public class RTAInfo {
 
     public static void clear(CompilationContext ctxt) {
         RTAInfo info = get(ctxt);
+        // keep the hierarchy of the finished analysis for consumers which must not see the next one while it is incomplete
+        RTAInfo previous = new RTAInfo(ctxt);
+        previous.classHierarchy.putAll(info.classHierarchy);
+        previous.interfaceHierarchy.putAll(info.interfaceHierarchy);
+        previous.instantiatedClasses.addAll(info.instantiatedClasses);
+        previous.invokableMethods.addAll(info.invokableMethods);
+        info.previous = previous;
+        info.concreteReceiverTypes.clear();
+        info.singleImplementations.clear();
         info.classHierarchy.clear();
         info.interfaceHierarchy.clear();
         info.instantiatedClasses.clear();
@@ -118,6 +138,18 @@ public class RTAInfo {
         info.heapAnalyzer.clear();
     }
 
+    /**
+     * Get the type hierarchy which was found by the previous analysis, before it was cleared.  Since every phase
+     * only reaches a subset of what the previous phase reached, this is a conservative, complete view while the
+     * current analysis is still in progress.  Only the hierarchy, instantiation, and invokable method queries are
+     * supported.
+     *
+     * @return the previous results, or {@code null} if the analysis was never cleared
+     */
+    public RTAInfo getPrevious() {
+        return previous;
+    }
+
     public static void reportStats(CompilationContext ctxt) {
         RTAInfo info = get(ctxt);
         rtaLog.debug("RTA Reachability Statistics");
@@ -246,6 +278,64 @@ public class RTAInfo {
         }
     }
 
+    /**
+     * Find the only method which can be the target of a virtual or interface call of the given method on a receiver
+     * of the given type, considering only the instantiated, concrete classes which are the type or its reachable
+     * subclasses or implementors.  The result is only valid once the analysis is complete.
+     *
+     * @param receiverType the static type of the receiver (must not be {@code null})
+     * @param target the invoked method (must not be {@code null})
+     * @return the single implementation, or {@code null} if there is none or there is more than one
+     */
+    public MethodElement getSingleImplementation(LoadedTypeDefinition receiverType, MethodElement target) {
+        return singleImplementations.computeIfAbsent(receiverType, t -> new ConcurrentHashMap<>())
+            .computeIfAbsent(target, m -> Optional.ofNullable(findSingleImplementation(receiverType, m)))
+            .orElse(null);
+    }
+
+    private MethodElement findSingleImplementation(LoadedTypeDefinition receiverType, MethodElement target) {
+        Set<MethodElement> implementations = new HashSet<>();
+        for (LoadedTypeDefinition c : getConcreteReceiverTypes(receiverType)) {
+            implementations.add(c.resolveMethodElementVirtual(target.getName(), target.getDescriptor()));
+        }
+        if (implementations.size() != 1) {
+            return null;
+        }
+        MethodElement implementation = implementations.iterator().next();
+        return implementation == null || implementation.isAbstract() ? null : implementation;
+    }
+
+    /**
+     * Get the instantiated, concrete classes which are the given type or its reachable subclasses or implementors;
+     * these are the classes which an object whose static type is the given type can have at run time.  The list is
+     * sorted by name.  The result is only valid once the analysis is complete.
+     *
+     * @param receiverType the static type (must not be {@code null})
+     * @return the list of concrete classes (not {@code null})
+     */
+    public List<LoadedTypeDefinition> getConcreteReceiverTypes(LoadedTypeDefinition receiverType) {
+        return concreteReceiverTypes.computeIfAbsent(receiverType, this::findConcreteReceiverTypes);
+    }
+
+    private List<LoadedTypeDefinition> findConcreteReceiverTypes(LoadedTypeDefinition receiverType) {
+        Set<LoadedTypeDefinition> receiverTypes = new HashSet<>();
+        Consumer<LoadedTypeDefinition> collector = c -> {
+            if (! c.isInterface() && ! c.isAbstract() && isInstantiatedClass(c)) {
+                receiverTypes.add(c);
+            }
+        };
+        if (receiverType.isInterface()) {
+            visitReachableImplementors(receiverType, collector);
+        } else {
+            collector.accept(receiverType);
+            visitReachableSubclassesPreOrder(receiverType, collector);
+        }
+        // sort so that code generated from the result does not depend on hash order
+        List<LoadedTypeDefinition> list = new ArrayList<>(receiverTypes);
+        list.sort(Comparator.comparing(LoadedTypeDefinition::getInternalName));
+        return List.copyOf(list);
+    }
+
     public void visitInitializedTypes(Consumer<LoadedTypeDefinition> function) {
         for (LoadedTypeDefinition t: initializedTypes) {
             function.accept(t);
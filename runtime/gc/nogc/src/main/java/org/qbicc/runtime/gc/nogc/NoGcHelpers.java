@@ -2,16 +2,39 @@ package org.qbicc.runtime.gc.nogc;
 
 import static org.qbicc.runtime.CNative.*;
 import static org.qbicc.runtime.posix.Stdlib.*;
+import static org.qbicc.runtime.posix.SysMman.*;
 import static org.qbicc.runtime.stdc.Stddef.*;
 import static org.qbicc.runtime.stdc.Stdlib.*;
 import static org.qbicc.runtime.stdc.String.*;
 
 import org.qbicc.runtime.Build;
+import org.qbicc.runtime.ThreadScoped;
 
 /**
  *
  */
 public final class NoGcHelpers {
+    /**
+     * The size of each thread-local allocation buffer.
+     */
+    private static final long TLAB_SIZE = 1L << 20;
+    /**
+     * Objects larger than this are mapped on their own, so that they do not waste the rest of a buffer.
+     */
+    private static final long MAX_TLAB_OBJECT_SIZE = TLAB_SIZE >>> 3;
+
+    /**
+     * The address of the next free byte of the current thread's allocation buffer.  The inline allocation fast path
+     * bumps this pointer.
+     */
+    @ThreadScoped
+    private static long tlabTop;
+    /**
+     * The address of the end of the current thread's allocation buffer, or zero if there is none.
+     */
+    @ThreadScoped
+    private static long tlabEnd;
+
     private NoGcHelpers() {}
 
     public static Object allocate(long size, int align) {
@@ -38,6 +61,35 @@ public final class NoGcHelpers {
         }
     }
 
+    /**
+     * Allocate zeroed memory when the inline allocation fails because the current thread's allocation buffer is
+     * exhausted.  Small objects are allocated from a new buffer, and the rest of the old buffer is abandoned.  Memory
+     * is obtained with {@code mmap}, so it is already zeroed, and it is aligned to a page, which satisfies every
+     * object alignment.
+     *
+     * @param size the object size in bytes
+     * @param align the object alignment in bytes
+     * @return the zeroed object memory
+     */
+    public static Object allocateSlow(long size, int align) {
+        if (size > MAX_TLAB_OBJECT_SIZE) {
+            return ptrToRef(map(size));
+        }
+        char_ptr base = map(TLAB_SIZE);
+        tlabTop = base.longValue() + size;
+        tlabEnd = base.longValue() + TLAB_SIZE;
+        return ptrToRef(base);
+    }
+
+    private static char_ptr map(long size) {
+        void_ptr ptr = mmap(zero(), word(size), word(PROT_READ.intValue() | PROT_WRITE.intValue()), word(MAP_PRIVATE.intValue() | MAP_ANONYMOUS.intValue()), word(-1), word(0));
+        // MAP_FAILED
+        if (ptr.longValue() == -1) {
+            throw new OutOfMemoryError(/*"Allocation failed"*/);
+        }
+        return ptr.cast();
+    }
+
     public static void clear(Object ptr, long size) { memset(refToPtr(ptr), word(0), word(size)); }
 
     public static void copy(Object to, Object from, long size) {
@@ -0,0 +1,19 @@
+package org.qbicc.runtime.linux;
+
+import static org.qbicc.runtime.CNative.*;
+
+/**
+ *
+ */
+@include("<linux/futex.h>")
+@include("<sys/syscall.h>")
+@include("<unistd.h>")
+@define(value = "_GNU_SOURCE")
+public final class Futex {
+    public static native c_long syscall(c_long number, object... args);
+
+    public static final c_long SYS_futex = constant();
+
+    public static final c_int FUTEX_WAIT_PRIVATE = constant();
+    public static final c_int FUTEX_WAKE_PRIVATE = constant();
+}
@@ -0,0 +1,284 @@
+package org.qbicc.runtime.linux;
+
+import static org.qbicc.runtime.CNative.*;
+import static org.qbicc.runtime.linux.Futex.*;
+import static org.qbicc.runtime.stdc.Stdint.*;
+import static org.qbicc.runtime.stdc.Time.*;
+
+import org.qbicc.runtime.Values;
+
+/**
+ * An inflated object monitor which is based on {@code futex(2)}.
+ * <p>
+ * Monitor records are kept in a side table and are identified by their index, so that an object header only needs
+ * to hold the index of its monitor.  Records are allocated from a pool and are returned to it when the monitor is
+ * deflated.  A record which is deflated while another thread is about to enter it may be reused, so callers must
+ * check {@link #getObject()} and the object header after entering the monitor, and retry if either has changed.
+ * <p>
+ * The owner of a monitor is identified by its thread ID, so that a thread which contends for a thin lock can inflate
+ * it on behalf of the thread which holds it, and then park in the monitor.
+ * <p>
+ * Entering a contended monitor spins for a while before parking the thread in the kernel.  The spin limit adapts
+ * to whether spinning succeeded recently.  The lock state is {@code 0} if unlocked, {@code 1} if locked, and
+ * {@code 2} if locked with threads parked on it.
+ */
+public final class FutexMonitor {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = 1 << 12;
+    private static final int MIN_SPINS = 16;
+    private static final int MAX_SPINS = 1 << 12;
+
+    private static final FutexMonitor[][] table = new FutexMonitor[MAX_CHUNKS][];
+    /**
+     * The monitor which guards the pool.  It is never entered, only locked.
+     */
+    private static final FutexMonitor poolMonitor = new FutexMonitor(-1);
+    // guarded by poolMonitor
+    private static int nextIndex = 1;
+    private static FutexMonitor freeList;
+
+    private final int index;
+    // futex words
+    private int state;
+    private int notifications;
+    // a heuristic, so races are harmless
+    private int spinLimit = MIN_SPINS;
+    // guarded by this monitor; the ID of the owning thread, or 0
+    private long owner;
+    private int recursions;
+    private int waiters;
+    private Object object;
+    // guarded by poolMonitor
+    private FutexMonitor nextFree;
+
+    private FutexMonitor(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Allocate a monitor record for the given object.
+     *
+     * @param object the object (must not be {@code null})
+     * @return the monitor record (not {@code null})
+     */
+    public static FutexMonitor allocate(Object object) {
+        FutexMonitor monitor;
+        poolMonitor.lock();
+        try {
+            monitor = freeList;
+            if (monitor != null) {
+                freeList = monitor.nextFree;
+                monitor.nextFree = null;
+            } else {
+                int index = nextIndex;
+                FutexMonitor[] chunk = table[index >>> CHUNK_SHIFT];
+                if (chunk == null) {
+                    chunk = table[index >>> CHUNK_SHIFT] = new FutexMonitor[CHUNK_SIZE];
+                }
+                monitor = chunk[index & (CHUNK_SIZE - 1)] = new FutexMonitor(index);
+                nextIndex = index + 1;
+            }
+        } finally {
+            poolMonitor.unlock();
+        }
+        monitor.object = object;
+        return monitor;
+    }
+
+    /**
+     * Get the monitor record with the given index.  The record must have been published to the calling thread.
+     *
+     * @param index the index
+     * @return the monitor record (not {@code null})
+     */
+    public static FutexMonitor get(int index) {
+        return table[index >>> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Return this record to the pool.  The caller must have exited the monitor.
+     */
+    public void free() {
+        object = null;
+        poolMonitor.lock();
+        try {
+            nextFree = freeList;
+            freeList = this;
+        } finally {
+            poolMonitor.unlock();
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the object of this monitor.  The result is only stable while the monitor is held.
+     *
+     * @return the object, or {@code null} if the record is free
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    /**
+     * Determine whether this monitor is held by the given thread.
+     *
+     * @param thread the thread ID
+     * @return {@code true} if the thread holds this monitor
+     */
+    public boolean isHeldBy(long thread) {
+        return owner == thread;
+    }
+
+    /**
+     * Determine whether this monitor may be deflated when it is exited.  The caller must hold the monitor.
+     *
+     * @return {@code true} if the monitor is held once, and no thread is parked on or waiting in it
+     */
+    public boolean isIdle() {
+        return recursions == 0 && waiters == 0 && Values.getVolatile(state) == 1;
+    }
+
+    /**
+     * Enter the monitor.
+     *
+     * @param thread the ID of the current thread
+     */
+    public void enter(long thread) {
+        if (owner == thread) {
+            recursions ++;
+            return;
+        }
+        lock();
+        owner = thread;
+    }
+
+    /**
+     * Enter a new monitor on behalf of a thread which already holds the object's lock the given number of times.  The
+     * thread need not be the current thread, so that a contending thread can inflate a thin lock which another
+     * thread holds; that thread then exits the monitor instead of the thin lock.
+     *
+     * @param thread the ID of the thread which holds the lock
+     * @param holds the number of times to enter
+     */
+    public void enter(long thread, int holds) {
+        enter(thread);
+        recursions += holds - 1;
+    }
+
+    /**
+     * Exit the monitor once.
+     *
+     * @return {@code true} if the monitor is still held by the current thread, or {@code false} if it was released
+     */
+    public boolean exit() {
+        if (recursions > 0) {
+            recursions --;
+            return true;
+        }
+        owner = 0;
+        unlock();
+        return false;
+    }
+
+    /**
+     * Wait for a notification, or for the current thread to be interrupted.  The caller must hold the monitor.
+     * Spurious wake-ups are possible.  The interrupt status of the thread is checked and cleared both before the
+     * monitor is released and after it is re-entered; a thread which is interrupted while it waits is woken by
+     * {@link FutexWaiter#interrupt()}.
+     *
+     * @param millis the timeout in milliseconds, or {@code 0} to wait indefinitely
+     * @return {@code true} if the thread was interrupted, in which case its interrupt status is cleared
+     */
+    public boolean await(long millis) {
+        long thread = owner;
+        FutexWaiter waiter = FutexWaiter.of(thread);
+        if (waiter.isInterrupted(true)) {
+            return true;
+        }
+        int savedRecursions = recursions;
+        int seq = Values.getVolatile(notifications);
+        waiters ++;
+        recursions = 0;
+        owner = 0;
+        waiter.setMonitor(this);
+        unlock();
+        if (! waiter.isInterrupted(false)) {
+            if (millis == 0) {
+                futex(addr_of(notifications), FUTEX_WAIT_PRIVATE, seq, zero());
+            } else {
+                struct_timespec timeout = auto();
+                timeout.tv_sec = word(millis / 1000);
+                timeout.tv_nsec = word(millis % 1000 * 1_000_000L);
+                futex(addr_of(notifications), FUTEX_WAIT_PRIVATE, seq, addr_of(timeout).cast());
+            }
+        }
+        waiter.setMonitor(null);
+        lock();
+        owner = thread;
+        recursions = savedRecursions;
+        waiters --;
+        return waiter.isInterrupted(true);
+    }
+
+    /**
+     * Wake up waiting threads.  The caller must hold the monitor.
+     *
+     * @param all {@code true} to wake up all waiting threads, or {@code false} to wake up one
+     */
+    public void signal(boolean all) {
+        if (waiters > 0) {
+            advanceNotifications();
+            futex(addr_of(notifications), FUTEX_WAKE_PRIVATE, all ? Integer.MAX_VALUE : 1, zero());
+        }
+    }
+
+    /**
+     * Wake up all waiting threads, without holding the monitor.  This is used to wake an interrupted thread.
+     */
+    void wakeAll() {
+        advanceNotifications();
+        futex(addr_of(notifications), FUTEX_WAKE_PRIVATE, Integer.MAX_VALUE, zero());
+    }
+
+    private void advanceNotifications() {
+        // atomic, because interrupting threads do not hold the monitor
+        int seq;
+        do {
+            seq = Values.getVolatile(notifications);
+        } while (! Values.compareAndSwapVolatile(notifications, seq, seq + 1));
+    }
+
+    private void lock() {
+        int spins = spinLimit;
+        for (int i = 0; i < spins; i ++) {
+            if (Values.getRelaxed(state) == 0 && Values.compareAndSwapAcquire(state, 0, 1)) {
+                if (spins < MAX_SPINS) {
+                    spinLimit = spins << 1;
+                }
+                return;
+            }
+        }
+        if (spins > MIN_SPINS) {
+            spinLimit = spins >>> 1;
+        }
+        // park until the state is observed as unlocked, leaving it marked as having parked threads
+        while (Values.getAndSetVolatile(state, 2) != 0) {
+            futex(addr_of(state), FUTEX_WAIT_PRIVATE, 2, zero());
+        }
+    }
+
+    private void unlock() {
+        if (Values.getAndSetVolatile(state, 0) == 2) {
+            futex(addr_of(state), FUTEX_WAKE_PRIVATE, 1, zero());
+        }
+    }
+
+    private static void futex(int32_t_ptr address, c_int op, int value, const_struct_timespec_ptr timeout) {
+        // failures (EAGAIN, EINTR, ETIMEDOUT) are all handled by the caller rechecking its condition
+        syscall(SYS_futex, address, op, word(value), timeout);
+    }
+}
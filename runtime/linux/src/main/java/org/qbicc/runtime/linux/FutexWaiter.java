@@ -0,0 +1,86 @@
+package org.qbicc.runtime.linux;
+
+import org.qbicc.runtime.Values;
+
+/**
+ * The wait state of a thread, which holds the interrupt status of the thread and the {@link FutexMonitor} which it
+ * waits in, so that interrupting the thread can wake it.
+ * <p>
+ * Records are kept in a side table and are identified by the ID of their thread.  A record is created when its thread
+ * first waits or is first interrupted; since thread IDs are never reused, records are never freed.
+ */
+public final class FutexWaiter {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = 1 << 12;
+
+    private static final FutexWaiter[][] table = new FutexWaiter[MAX_CHUNKS][];
+
+    // 1 if the thread was interrupted, otherwise 0
+    private int interrupted;
+    // the monitor which the thread waits in, or null
+    private FutexMonitor monitor;
+
+    private FutexWaiter() {}
+
+    /**
+     * Get the wait state record of the given thread, creating it if needed.
+     *
+     * @param thread the thread ID
+     * @return the wait state record (not {@code null})
+     */
+    public static FutexWaiter of(long thread) {
+        if (thread < 1 || thread >= (long) MAX_CHUNKS << CHUNK_SHIFT) {
+            throw new InternalError("Thread ID is out of range");
+        }
+        int index = (int) thread;
+        FutexWaiter[] chunk = Values.getVolatile(table[index >>> CHUNK_SHIFT]);
+        if (chunk == null) {
+            chunk = new FutexWaiter[CHUNK_SIZE];
+            if (! Values.compareAndSwapVolatile(table[index >>> CHUNK_SHIFT], null, chunk)) {
+                chunk = Values.getVolatile(table[index >>> CHUNK_SHIFT]);
+            }
+        }
+        FutexWaiter waiter = Values.getVolatile(chunk[index & (CHUNK_SIZE - 1)]);
+        if (waiter == null) {
+            waiter = new FutexWaiter();
+            if (! Values.compareAndSwapVolatile(chunk[index & (CHUNK_SIZE - 1)], null, waiter)) {
+                waiter = Values.getVolatile(chunk[index & (CHUNK_SIZE - 1)]);
+            }
+        }
+        return waiter;
+    }
+
+    /**
+     * Set the interrupt status of the thread, and wake it if it waits in a monitor.  The other threads which wait in
+     * that monitor observe a spurious wake-up.
+     */
+    public void interrupt() {
+        Values.setVolatile(interrupted, 1);
+        FutexMonitor waitingIn = Values.getVolatile(monitor);
+        if (waitingIn != null) {
+            // the record may have been reused by another monitor since, which only causes spurious wake-ups
+            waitingIn.wakeAll();
+        }
+    }
+
+    /**
+     * Determine whether the thread was interrupted.
+     *
+     * @param clear {@code true} to clear the interrupt status
+     * @return {@code true} if the thread was interrupted
+     */
+    public boolean isInterrupted(boolean clear) {
+        return (clear ? Values.getAndSetVolatile(interrupted, 0) : Values.getVolatile(interrupted)) != 0;
+    }
+
+    /**
+     * Record the monitor which the thread waits in.  The thread must publish the monitor before it checks its
+     * interrupt status and parks, so that an interrupt is either seen by the thread or wakes it.
+     *
+     * @param monitor the monitor, or {@code null} when the thread stops waiting
+     */
+    void setMonitor(FutexMonitor monitor) {
+        Values.setVolatile(this.monitor, monitor);
+    }
+}
@@ -300,4 +300,52 @@ public class ObjectModel {
      * @return true if successful
      */
     public static native boolean set_nativeObjectMonitor(Object reference, pthread_mutex_t_ptr nom);
+
+    /**
+     * Get the identity hash code which is stored in the header of the referenced object.
+     *
+     * @param reference the object reference (must not be {@code null})
+     * @return the identity hash code, or 0 if none has been assigned yet
+     */
+    public static native int identity_hash_code_of(Object reference);
+
+    /**
+     * Atomically store the identity hash code in the header of the referenced object, if none has been assigned yet.
+     * The hash code must be positive.  This method will return false if the header was concurrently modified or a
+     * hash code was already assigned, in which case the caller should check for an assigned hash code and retry.
+     *
+     * @param reference the object reference (must not be {@code null})
+     * @param hashCode the identity hash code
+     * @return true if successful
+     */
+    public static native boolean set_identity_hash_code(Object reference, int hashCode);
+
+    /**
+     * Get the thin lock word which is stored in the header of the referenced object.
+     *
+     * @param reference the object reference (must not be {@code null})
+     * @return the thin lock word, or 0 if the object is not locked
+     */
+    public static native int lock_word_of(Object reference);
+
+    /**
+     * Atomically replace the thin lock word in the header of the referenced object.  This method will return false
+     * if the lock word is not equal to {@code expect}, or if the header was concurrently modified, in which case the
+     * caller should reload the lock word and retry.
+     *
+     * @param reference the object reference (must not be {@code null})
+     * @param expect the expected lock word
+     * @param update the new lock word
+     * @return true if successful
+     */
+    public static native boolean set_lock_word(Object reference, int expect, int update);
+
+    /**
+     * Get the thread ID of the given thread, which is used to identify the owner of a thin lock.  Unlike
+     * {@link Thread#getId()}, this method cannot be overridden.
+     *
+     * @param thread the thread (must not be {@code null})
+     * @return the thread ID
+     */
+    public static native long thread_id_of(Thread thread);
 }
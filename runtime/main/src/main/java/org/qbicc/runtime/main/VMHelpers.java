@@ -1,7 +1,11 @@
 package org.qbicc.runtime.main;
 
+import org.qbicc.runtime.Build;
 import org.qbicc.runtime.CNative;
 import org.qbicc.runtime.NoSideEffects;
+import org.qbicc.runtime.ThreadScoped;
+import org.qbicc.runtime.linux.FutexMonitor;
+import org.qbicc.runtime.linux.FutexWaiter;
 import org.qbicc.runtime.stdc.Stddef;
 import org.qbicc.runtime.stdc.Stdint;
 
@@ -9,6 +13,7 @@ import java.util.function.UnaryOperator;
 
 import static org.qbicc.runtime.CNative.*;
 import static org.qbicc.runtime.posix.PThread.*;
+import static org.qbicc.runtime.posix.Sched.*;
 import static org.qbicc.runtime.stdc.Stdint.*;
 import static org.qbicc.runtime.stdc.Stdlib.*;
 
@@ -113,14 +118,78 @@ public final class VMHelpers {
         return ObjectModel.get_class_from_type_id(typeId, dimensions);
     }
 
+    /**
+     * The state of the identity hash code generator of the current thread.
+     */
+    @ThreadScoped
+    private static int identityHashCodeState;
+
+    /**
+     * The seed of the next thread's identity hash code generator.  This is updated without synchronization; a lost
+     * update only means that two threads generate the same sequence of hash codes.
+     */
+    private static int identityHashCodeSeed;
+
     // TODO: mark this with a "NoInline" annotation
-    static void monitor_enter(Object object) throws IllegalMonitorStateException {
-        int result;
+    static int identity_hash_code(Object object) {
         if (object == null) {
-            /* TODO skip for now. Object should never be null except that
-                classof_from_typeid is not currently implemented. */
-            return;
+            return 0;
+        }
+        int hashCode = ObjectModel.identity_hash_code_of(object);
+        while (hashCode == 0) {
+            int candidate = next_identity_hash_code();
+            if (ObjectModel.set_identity_hash_code(object, candidate)) {
+                return candidate;
+            }
+            // another thread assigned a hash code or changed other header bits; check again
+            hashCode = ObjectModel.identity_hash_code_of(object);
         }
+        return hashCode;
+    }
+
+    private static int next_identity_hash_code() {
+        int x = identityHashCodeState;
+        if (x == 0) {
+            x = (identityHashCodeSeed += 0x9E3779B9) | 1;
+        }
+        int hashCode;
+        do {
+            // xorshift32
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            hashCode = x & 0x7FFF_FFFF;
+        } while (hashCode == 0);
+        identityHashCodeState = x;
+        return hashCode;
+    }
+
+    // Thin lock word layout; this must match ObjectMonitorBasicBlockBuilder
+    private static final int LOCK_INFLATED = 1;
+    private static final int LOCK_COUNT_ONE = 1 << 1;
+    private static final int LOCK_COUNT_MASK = 0xFF << 1;
+    private static final int LOCK_OWNER_SHIFT = 9;
+    private static final long LOCK_MAX_OWNER = (1L << (32 - LOCK_OWNER_SHIFT)) - 1;
+
+    /**
+     * Get the thin lock owner bits of the current thread, or 0 if the thread ID is too large to fit in the lock word,
+     * in which case the thread can only acquire inflated monitors.
+     */
+    private static int thin_lock_owner() {
+        long tid = ObjectModel.thread_id_of(Thread.currentThread());
+        return tid < 1 || tid > LOCK_MAX_OWNER ? 0 : (int) tid << LOCK_OWNER_SHIFT;
+    }
+
+    private static long current_thread_id() {
+        return ObjectModel.thread_id_of(Thread.currentThread());
+    }
+
+    /**
+     * Get the native monitor of the given object, creating it if needed.  Once created, the native monitor
+     * remains attached to the object.
+     */
+    private static pthread_mutex_t_ptr native_monitor_of(Object object) {
+        int result;
         pthread_mutex_t_ptr nom = ObjectModel.get_nativeObjectMonitor(object);
         if (nom == null) {
             ptr<?> attrVoid = malloc(sizeof(pthread_mutexattr_t.class));
@@ -170,12 +239,158 @@ public final class VMHelpers {
                 free(attrVoid);
             }
         }
-        result = pthread_mutex_lock(nom).intValue();
+        return nom;
+    }
+
+    private static void lock_native_monitor(pthread_mutex_t_ptr nom) {
+        int result = pthread_mutex_lock(nom).intValue();
         if (0 != result) {
             throw new IllegalMonitorStateException("error code: " + result);
         }
     }
 
+    private static void unlock_native_monitor(pthread_mutex_t_ptr nom) {
+        int result = pthread_mutex_unlock(nom).intValue();
+        if (0 != result) {
+            throw new IllegalMonitorStateException("error code: " + result);
+        }
+    }
+
+    /**
+     * Inflate the lock of the given object, entering the inflated monitor the given number of times on behalf of the
+     * given thread.  On Linux, the inflated lock word holds the index of a {@link FutexMonitor}, and the thread may be
+     * another thread which holds the thin lock; otherwise the lock word only holds the inflated flag, the thread must
+     * be the current thread, and the native monitor is never deflated.
+     *
+     * @param object the object
+     * @param lock the expected current lock word
+     * @param holds the number of times to enter the inflated monitor
+     * @param thread the ID of the thread which holds the inflated monitor
+     * @return {@code true} if the lock was inflated, or {@code false} if the lock word has changed
+     */
+    private static boolean inflate(Object object, int lock, int holds, long thread) {
+        if (Build.Target.isLinux()) {
+            FutexMonitor monitor = FutexMonitor.allocate(object);
+            monitor.enter(thread, holds);
+            if (ObjectModel.set_lock_word(object, lock, monitor.getIndex() << 1 | LOCK_INFLATED)) {
+                return true;
+            }
+            while (monitor.exit()) {}
+            monitor.free();
+            return false;
+        } else {
+            pthread_mutex_t_ptr nom = native_monitor_of(object);
+            for (int i = 0; i < holds; i ++) {
+                lock_native_monitor(nom);
+            }
+            if (ObjectModel.set_lock_word(object, lock, LOCK_INFLATED)) {
+                return true;
+            }
+            for (int i = 0; i < holds; i ++) {
+                unlock_native_monitor(nom);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Enter the inflated monitor of the given object.
+     *
+     * @param object the object
+     * @param lock the inflated lock word
+     * @return {@code true} if the monitor was entered, or {@code false} if it was deflated in the meantime
+     */
+    private static boolean enter_inflated(Object object, int lock) {
+        if (Build.Target.isLinux()) {
+            FutexMonitor monitor = FutexMonitor.get(lock >>> 1);
+            monitor.enter(current_thread_id());
+            if (monitor.getObject() == object && ObjectModel.lock_word_of(object) == lock) {
+                return true;
+            }
+            monitor.exit();
+            return false;
+        } else {
+            lock_native_monitor(native_monitor_of(object));
+            return true;
+        }
+    }
+
+    /**
+     * Get the inflated monitor of the given object, which must be locked by the current thread.  A thin lock is
+     * inflated.
+     */
+    private static FutexMonitor owned_monitor(Object object) {
+        int owner = thin_lock_owner();
+        for (;;) {
+            int lock = ObjectModel.lock_word_of(object);
+            if ((lock & LOCK_INFLATED) != 0) {
+                FutexMonitor monitor = FutexMonitor.get(lock >>> 1);
+                if (! monitor.isHeldBy(current_thread_id())) {
+                    throw new IllegalMonitorStateException();
+                }
+                return monitor;
+            } else if (owner == 0 || (lock & ~LOCK_COUNT_MASK) != owner) {
+                throw new IllegalMonitorStateException();
+            }
+            inflate(object, lock, ((lock & LOCK_COUNT_MASK) >>> 1) + 1, current_thread_id());
+        }
+    }
+
+    /**
+     * The slow path of {@code monitorenter}, which is called when the inline thin lock acquisition fails.  A
+     * recursive enter increments the count in the lock word.  On Linux, a thread which finds the thin lock held by
+     * another thread inflates it on behalf of that thread, moving its holds to the monitor, and then parks in the
+     * monitor; the owner's inline exit fails because the lock word has changed, and its slow path exits the monitor,
+     * which wakes the parked thread.  Elsewhere, the thread yields until the lock is released and then inflates it.
+     */
+    // TODO: mark this with a "NoInline" annotation
+    static void monitor_enter(Object object) throws IllegalMonitorStateException {
+        if (object == null) {
+            /* TODO skip for now. Object should never be null except that
+                classof_from_typeid is not currently implemented. */
+            return;
+        }
+        int owner = thin_lock_owner();
+        boolean contended = owner == 0;
+        for (;;) {
+            int lock = ObjectModel.lock_word_of(object);
+            if ((lock & LOCK_INFLATED) != 0) {
+                if (enter_inflated(object, lock)) {
+                    return;
+                }
+            } else if (lock == 0) {
+                if (contended) {
+                    if (inflate(object, 0, 1, current_thread_id())) {
+                        return;
+                    }
+                } else if (ObjectModel.set_lock_word(object, 0, owner)) {
+                    return;
+                }
+            } else if ((lock & ~LOCK_COUNT_MASK) == owner) {
+                if ((lock & LOCK_COUNT_MASK) != LOCK_COUNT_MASK) {
+                    if (ObjectModel.set_lock_word(object, lock, lock + LOCK_COUNT_ONE)) {
+                        return;
+                    }
+                } else {
+                    // the recursion count would overflow; move our holds (including this one) to an inflated monitor
+                    if (inflate(object, lock, ((lock & LOCK_COUNT_MASK) >>> 1) + 2, current_thread_id())) {
+                        return;
+                    }
+                }
+            } else if (Build.Target.isLinux()) {
+                // held by another thread; on success, the next iteration parks in the inflated monitor
+                inflate(object, lock, ((lock & LOCK_COUNT_MASK) >>> 1) + 1, (lock & 0xFFFF_FFFFL) >>> LOCK_OWNER_SHIFT);
+            } else {
+                contended = true;
+                sched_yield();
+            }
+        }
+    }
+
+    /**
+     * The slow path of {@code monitorexit}, which is called when the inline thin lock release fails.  On Linux, an
+     * inflated monitor which has no other threads parked on or waiting in it is deflated.
+     */
     // TODO: mark this with a "NoInline" annotation
     static void monitor_exit(Object object) throws IllegalMonitorStateException {
         if (object == null) {
@@ -183,13 +398,71 @@ public final class VMHelpers {
                 classof_from_typeid is not currently implemented. */
             return;
         }
-        pthread_mutex_t_ptr nom = ObjectModel.get_nativeObjectMonitor(object);
-        if (nom == null) {
-            throw new IllegalMonitorStateException("native monitor could not be found for monitor_exit");
+        int owner = thin_lock_owner();
+        for (;;) {
+            int lock = ObjectModel.lock_word_of(object);
+            if ((lock & LOCK_INFLATED) != 0) {
+                if (Build.Target.isLinux()) {
+                    FutexMonitor monitor = FutexMonitor.get(lock >>> 1);
+                    if (! monitor.isHeldBy(current_thread_id())) {
+                        throw new IllegalMonitorStateException();
+                    }
+                    if (monitor.isIdle()) {
+                        // only the owner changes an inflated lock word, so this only fails if the header changed otherwise
+                        while (! ObjectModel.set_lock_word(object, lock, 0)) {}
+                        monitor.exit();
+                        monitor.free();
+                    } else {
+                        monitor.exit();
+                    }
+                } else {
+                    unlock_native_monitor(ObjectModel.get_nativeObjectMonitor(object));
+                }
+                return;
+            }
+            if (owner == 0 || (lock & ~LOCK_COUNT_MASK) != owner) {
+                throw new IllegalMonitorStateException();
+            }
+            int update = (lock & LOCK_COUNT_MASK) == 0 ? 0 : lock - LOCK_COUNT_ONE;
+            if (ObjectModel.set_lock_word(object, lock, update)) {
+                return;
+            }
+            // a contending thread inflated the lock, or the header changed otherwise; try again
         }
-        int result = pthread_mutex_unlock(nom).intValue();
-        if (0 != result) {
-            throw new IllegalMonitorStateException("error code: " + result);
+    }
+
+    // TODO: mark this with a "NoInline" annotation
+    static void monitor_wait(Object object, long millis) throws IllegalMonitorStateException, InterruptedException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("timeout value is negative");
+        }
+        if (Build.Target.isLinux()) {
+            if (owned_monitor(object).await(millis)) {
+                throw new InterruptedException();
+            }
+        } else {
+            // not supported; behave as a spurious wake-up
+            sched_yield();
+        }
+    }
+
+    // TODO: mark this with a "NoInline" annotation
+    static void monitor_notify(Object object, boolean all) throws IllegalMonitorStateException {
+        if (Build.Target.isLinux()) {
+            int lock = ObjectModel.lock_word_of(object);
+            if ((lock & LOCK_INFLATED) != 0) {
+                FutexMonitor monitor = FutexMonitor.get(lock >>> 1);
+                if (! monitor.isHeldBy(current_thread_id())) {
+                    throw new IllegalMonitorStateException();
+                }
+                monitor.signal(all);
+            } else {
+                // a thin lock has no waiters
+                int owner = thin_lock_owner();
+                if (owner == 0 || (lock & ~LOCK_COUNT_MASK) != owner) {
+                    throw new IllegalMonitorStateException();
+                }
+            }
         }
     }
 
@@ -573,6 +846,32 @@ public final class VMHelpers {
      */
     public static native boolean saveNativeThread(void_ptr thread, pthread_t_ptr pthreadPtr);
 
+    /**
+     * Helper for java.lang.Thread.interrupt0 sets the interrupt status of the thread, and wakes it if it waits in an
+     * object monitor.  Interrupts are only supported on Linux.
+     * @param thread - the thread to interrupt
+     */
+    // TODO: mark this with a "NoInline" annotation
+    public static void JLT_interrupt0(Thread thread) {
+        if (Build.Target.isLinux()) {
+            FutexWaiter.of(ObjectModel.thread_id_of(thread)).interrupt();
+        }
+    }
+
+    /**
+     * Helper for java.lang.Thread.isInterrupted determines whether the thread was interrupted.
+     * @param thread - the thread
+     * @param clear - {@code true} to clear the interrupt status
+     * @return {@code true} if the thread was interrupted
+     */
+    // TODO: mark this with a "NoInline" annotation
+    public static boolean JLT_isInterrupted(Thread thread, boolean clear) {
+        if (Build.Target.isLinux()) {
+            return FutexWaiter.of(ObjectModel.thread_id_of(thread)).isInterrupted(clear);
+        }
+        return false;
+    }
+
     /**
      * Helper for java.lang.Thread.start0 allocates a pthread and creates/runs the thread.
      * @param runFuncPtr - pointer to threadWrapper